@@ -18,6 +18,7 @@ public class CorsConfig implements WebMvcConfigurer {
                 )
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS", "HEAD", "PATCH")
                 .allowedHeaders("*")
+                .exposedHeaders("X-Total-Count", "X-Results-Truncated")
                 .allowCredentials(true)
                 .maxAge(3600);
     }
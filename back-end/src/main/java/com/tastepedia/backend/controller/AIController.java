@@ -2,12 +2,28 @@ package com.tastepedia.backend.controller;
 
 import com.tastepedia.backend.model.Recipe;
 import com.tastepedia.backend.payload.MealPlanRequest;
-import com.tastepedia.backend.repository.RecipeRepository;
+import com.tastepedia.backend.service.HedgedMealPlanner;
+import com.tastepedia.backend.service.LlmRequestCoalescer;
+import com.tastepedia.backend.service.MealPlanCache;
+import com.tastepedia.backend.service.MealPlanJobService;
+import com.tastepedia.backend.service.MealPlanStreamer;
+import com.tastepedia.backend.service.RecipeIndexService;
+import com.tastepedia.backend.service.index.KeywordMatcher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @RestController
@@ -15,43 +31,115 @@ import java.util.stream.Collectors;
 public class AIController {
 
     @Autowired
-    private com.tastepedia.backend.service.GeminiService geminiService;
+    private RecipeIndexService recipeIndexService;
 
     @Autowired
-    private RecipeRepository recipeRepository;
+    private MealPlanCache mealPlanCache;
 
+    @Autowired
+    private LlmRequestCoalescer llmRequestCoalescer;
+
+    @Autowired
+    private HedgedMealPlanner hedgedMealPlanner;
+
+    @Autowired
+    private MealPlanStreamer mealPlanStreamer;
+
+    @Autowired
+    private MealPlanJobService mealPlanJobService;
+
+    /** reshuffle=true: khi trúng cache, xáo lại món giữa các ngày để mỗi người nhận một thực đơn khác nhau. */
     @PostMapping("/meal-plan")
-    public ResponseEntity<?> generateMealPlan(@RequestBody MealPlanRequest request) {
-        // 1. Fetch available recipes
-        List<Recipe> allRecipes = recipeRepository.findAll();
+    public ResponseEntity<?> generateMealPlan(@RequestBody MealPlanRequest request,
+                                              @RequestParam(defaultValue = "false") boolean reshuffle) {
+        return ResponseEntity.ok()
+                .header("Content-Type", "application/json")
+                .body(planFor(request, reshuffle));
+    }
+
+    // Chế độ job: trả jobId ngay (202), kết quả đẩy qua STOMP /topic/ai/{jobId} hoặc lấy bằng poll
+    @PostMapping("/meal-plan/jobs")
+    public ResponseEntity<?> submitMealPlanJob(@RequestBody MealPlanRequest request,
+                                               @RequestParam(defaultValue = "false") boolean reshuffle) {
+        String jobId;
+        try {
+            jobId = mealPlanJobService.submit(() -> planFor(request, reshuffle));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(503).body("Hệ thống đang bận, vui lòng thử lại sau ít phút.");
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("jobId", jobId);
+        body.put("status", MealPlanJobService.QUEUED);
+        body.put("topic", MealPlanJobService.topicOf(jobId));
+        return ResponseEntity.accepted().body(body);
+    }
+
+    @GetMapping("/meal-plan/jobs/{jobId}")
+    public ResponseEntity<?> getMealPlanJob(@PathVariable String jobId) {
+        Map<String, Object> status = mealPlanJobService.status(jobId);
+        if (status == null) return ResponseEntity.status(404).body("Không tìm thấy job hoặc job đã hết hạn");
+        return ResponseEntity.ok(status);
+    }
+
+    private String planFor(MealPlanRequest request, boolean reshuffle) {
+        // Cache theo yêu cầu đã chuẩn hoá + phiên bản danh mục: trúng thì trả ngay, không gọi AI
+        MealPlanCache.Key cacheKey = mealPlanCache.keyOf(request);
+        String cachedPlan = mealPlanCache.get(cacheKey);
+        if (cachedPlan != null) {
+            return reshuffle ? mealPlanCache.reshuffle(cachedPlan) : cachedPlan;
+        }
+
+        // Các yêu cầu giống hệt đến cùng lúc (cache chưa kịp có) dùng chung một lần gọi AI
+        String flightKey = cacheKey.requestHash() + "@" + cacheKey.catalogVersion();
+        return llmRequestCoalescer.execute("meal-plan", flightKey, () -> {
+            // Gemini trước, quá p95 độ trễ thì hỏi thêm Grok (xem HedgedMealPlanner)
+            String plan = hedgedMealPlanner.generateMealPlan(request, buildBuffetPool(request));
+            mealPlanCache.put(cacheKey, plan);
+            return plan;
+        });
+    }
+
+    // Cùng thực đơn nhưng trả dần từng ngày qua Server-Sent Events (analysis -> day x7 -> done)
+    @PostMapping(value = "/meal-plan/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMealPlan(@RequestBody MealPlanRequest request) {
+        return mealPlanStreamer.stream(request, () -> buildBuffetPool(request));
+    }
 
-        // 2. LAYER 1: HARD FILTER (Backend)
-        // 2. LAYER 1: HARD FILTER (Backend)
+    // EventSource của trình duyệt chỉ gửi được GET: các trường lấy từ query string (danh sách phân tách bằng dấu phẩy)
+    @GetMapping(value = "/meal-plan/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMealPlanGet(@ModelAttribute MealPlanRequest request) {
+        return mealPlanStreamer.stream(request, () -> buildBuffetPool(request));
+    }
+
+    // Lọc cứng + nới lỏng + chọn pool ngẫu nhiên, chỉ load các công thức trong pool từ Mongo
+    private List<Recipe> buildBuffetPool(MealPlanRequest request) {
+        // 1. Tập công thức hiện có (bitmap theo ordinal trong RecipeIndexService)
+        BitSet allRecipes = recipeIndexService.liveRecipes();
+
+        // 2. LAYER 1: HARD FILTER (Backend) - mỗi điều kiện là một phép AND / ANDNOT trên bitset
         // A. Base Safety Filter (Always applied)
-        List<Recipe> baseSafeRecipes = allRecipes.stream()
-                .filter(r -> isSafeToEat(r, request.getAllergies()))
-                .filter(r -> !containsDislikedIngredients(r, request.getDislikedIngredients()))
-                .collect(Collectors.toList());
+        BitSet baseSafeRecipes = (BitSet) allRecipes.clone();
+        baseSafeRecipes.andNot(unsafeOrDisliked(request.getAllergies(), request.getDislikedIngredients()));
+
+        BitSet toolsOk = recipesWithAvailableTools(allRecipes, request.getKitchenTools());
 
         // B. Apply Preference Filters (Tools & Cuisine)
-        List<Recipe> strictFiltered = baseSafeRecipes.stream()
-                .filter(r -> hasRequiredTools(r, request.getKitchenTools()))
-                .filter(r -> matchesCuisine(r, request.getPreferredCuisine()))
-                .collect(Collectors.toList());
+        BitSet strictFiltered = (BitSet) baseSafeRecipes.clone();
+        strictFiltered.and(toolsOk);
+        strictFiltered.and(recipesMatchingCuisine(allRecipes, request.getPreferredCuisine()));
 
-        List<Recipe> finalSafeRecipes;
+        BitSet finalSafeRecipes;
 
         // --- RESCUE STRATEGY: If strict filters leave too few recipes (< 5), RELAX constraints ---
-        if (strictFiltered.size() < 5) {
-            System.out.println("Warning: Strict filter found only " + strictFiltered.size() + " recipes. Relaxing Cuisine...");
+        if (strictFiltered.cardinality() < 5) {
+            System.out.println("Warning: Strict filter found only " + strictFiltered.cardinality() + " recipes. Relaxing Cuisine...");
             
             // Relax 1: Keep Tools, Ignore Cuisine
-            List<Recipe> relaxedCuisine = baseSafeRecipes.stream()
-                .filter(r -> hasRequiredTools(r, request.getKitchenTools()))
-                .collect(Collectors.toList());
+            BitSet relaxedCuisine = (BitSet) baseSafeRecipes.clone();
+            relaxedCuisine.and(toolsOk);
                 
-            if (relaxedCuisine.size() < 5) {
-                System.out.println("Warning: Still low (" + relaxedCuisine.size() + "). Relaxing Tools...");
+            if (relaxedCuisine.cardinality() < 5) {
+                System.out.println("Warning: Still low (" + relaxedCuisine.cardinality() + "). Relaxing Tools...");
                 // Relax 2: Return all Base Safe Recipes (Ignore Tools & Cuisine)
                 finalSafeRecipes = baseSafeRecipes;
             } else {
@@ -61,78 +149,66 @@ public class AIController {
             finalSafeRecipes = strictFiltered;
         }
 
-        System.out.println("Recipes after Filter (Strict/Relaxed): " + finalSafeRecipes.size());
+        System.out.println("Recipes after Filter (Strict/Relaxed): " + finalSafeRecipes.cardinality());
 
         // 3. LAYER 2: BUFFET POOL (Randomize & Limit)
-        List<Recipe> buffetPool = createBuffetPool(finalSafeRecipes, request.getMealSchedule());
+        // Chỉ đọc từ Mongo các công thức được chọn vào pool
+        List<Recipe> buffetPool = recipeIndexService.loadInOrder(
+                recipeIndexService.idsOf(createBuffetPool(finalSafeRecipes, request.getMealSchedule())));
         
         System.out.println("Final Buffet Pool Size: " + buffetPool.size());
         System.out.println("--- BUFFET POOL CONTENT ---");
         buffetPool.forEach(r -> System.out.println("- " + r.getTitle() + " (" + r.getId() + ")"));
         System.out.println("---------------------------");
-
-        // 4. Call AI with the pool
-        String planJson = geminiService.generateMealPlan(request, buffetPool);
-
-        return ResponseEntity.ok()
-                .header("Content-Type", "application/json")
-                .body(planJson);
+        return buffetPool;
     }
 
     // --- HELPER METHODS ---
+    // Các predicate bên dưới chạy trên từ điển giá trị của bitmap index
+    // (mỗi giá trị phân biệt một lần), không phải trên từng công thức; riêng tên nguyên liệu
+    // được quét bằng KeywordMatcher dựng một lần cho mỗi yêu cầu.
 
-    private boolean isSafeToEat(Recipe recipe, List<String> userAllergies) {
-        if (userAllergies == null || userAllergies.isEmpty()) return true;
-        // Check ingredients
-        if (recipe.getIngredients() != null) {
-            for (Recipe.Ingredient ing : recipe.getIngredients()) {
-                String ingName = ing.getName().toLowerCase();
-                for (String allergy : userAllergies) {
-                     if (ingName.contains(allergy.toLowerCase())) { return false; }
-                }
-            }
-        }
-        // Check allergens metadata
-        if (recipe.getAllergens() != null) {
-             if (recipe.getAllergens().stream().anyMatch(a -> 
-                 userAllergies.stream().anyMatch(ua -> ua.equalsIgnoreCase(a)))) return false;
-        }
-        return true;
-    }
+    // Nguyên liệu chứa chất gây dị ứng / món không thích, hoặc allergens khai báo trùng (không phân biệt hoa thường)
+    private BitSet unsafeOrDisliked(List<String> userAllergies, String dislikes) {
+        List<String> allergies = userAllergies == null ? List.of() : userAllergies;
+        List<String> dislikedItems = dislikes == null ? List.of() : Arrays.stream(dislikes.split(","))
+                .map(String::trim)
+                .filter(d -> !d.isEmpty())
+                .collect(Collectors.toList());
 
-    private boolean containsDislikedIngredients(Recipe recipe, String dislikes) {
-        if (dislikes == null || dislikes.trim().isEmpty()) return false;
-        String[] dislikedItems = dislikes.toLowerCase().split(",");
-        if (recipe.getIngredients() != null) {
-            for (Recipe.Ingredient ing : recipe.getIngredients()) {
-                String ingName = ing.getName().toLowerCase();
-                for (String dislike : dislikedItems) {
-                    if (ingName.contains(dislike.trim())) { return true; }
-                }
-            }
+        // Dị ứng + món không thích dựng thành một automaton, quét tên nguyên liệu đã fold sẵn của từng công thức
+        List<String> keywords = new ArrayList<>(allergies);
+        keywords.addAll(dislikedItems);
+        BitSet unsafe = recipeIndexService.withIngredientMatching(KeywordMatcher.compile(keywords));
+
+        if (!allergies.isEmpty()) {
+            unsafe.or(recipeIndexService.withAnyValue(RecipeIndexService.ALLERGENS,
+                    a -> allergies.stream().anyMatch(ua -> ua.equalsIgnoreCase(a))));
         }
-        return false;
+        // "Peanut" / "Đậu phộng" / "lạc" cùng về mã peanut; "Seafood" bắt cả món tôm, cá (index kèm nhóm cha)
+        Set<String> avoidedIds = RecipeIndexService.mentionedIngredientIds(keywords);
+        if (!avoidedIds.isEmpty()) {
+            unsafe.or(recipeIndexService.withAnyValue(RecipeIndexService.INGREDIENT_ID, avoidedIds::contains));
+        }
+        return unsafe;
     }
 
-    private boolean hasRequiredTools(Recipe recipe, List<String> userTools) {
-        if (recipe.getKitchenTools() == null || recipe.getKitchenTools().isEmpty()) return true;
-        if (userTools == null || userTools.isEmpty()) return false;
-
+    // Công thức không yêu cầu dụng cụ nào, hoặc mọi dụng cụ yêu cầu đều có trong bếp của user
+    private BitSet recipesWithAvailableTools(BitSet allRecipes, List<String> userTools) {
         // Normalize User Tools to a standard set (Lower English)
-        List<String> userToolsStd = userTools.stream()
+        List<String> userToolsStd = userTools == null ? List.of() : userTools.stream()
             .map(this::normalizeToolName)
             .collect(Collectors.toList());
-        
-        for (String required : recipe.getKitchenTools()) {
+
+        BitSet missingTool = recipeIndexService.withAnyValue(RecipeIndexService.KITCHEN_TOOLS, required -> {
             String reqStd = normalizeToolName(required);
-            
-            // Check if user has this tool
             // We use simple containment
-            boolean hasTool = userToolsStd.stream().anyMatch(ut -> ut.contains(reqStd) || reqStd.contains(ut));
-            
-            if (!hasTool) return false; 
-        }
-        return true;
+            return userToolsStd.stream().noneMatch(ut -> ut.contains(reqStd) || reqStd.contains(ut));
+        });
+
+        BitSet result = (BitSet) allRecipes.clone();
+        result.andNot(missingTool);
+        return result;
     }
 
     // Helper to map Vietnamese/Variations to standard English keys
@@ -151,55 +227,71 @@ public class AIController {
         return s;
     }
 
-    private boolean matchesCuisine(Recipe recipe, String preferredCuisine) {
-        if (preferredCuisine == null || preferredCuisine.equals("All")) return true;
-        if (recipe.getCuisine() == null) return false;
+    private BitSet recipesMatchingCuisine(BitSet allRecipes, String preferredCuisine) {
+        if (preferredCuisine == null || preferredCuisine.equals("All")) return allRecipes;
         
         if (preferredCuisine.equals("Asian")) {
             // Group Asian cuisines
-            return List.of("Vietnamese", "Korean", "Japanese", "Thai", "Chinese")
-                   .contains(recipe.getCuisine());
+            List<String> asian = List.of("Vietnamese", "Korean", "Japanese", "Thai", "Chinese");
+            return recipeIndexService.withAnyValue(RecipeIndexService.CUISINE, asian::contains);
         }
         
-        return recipe.getCuisine().equalsIgnoreCase(preferredCuisine);
+        return recipeIndexService.withAnyValue(RecipeIndexService.CUISINE, c -> c.equalsIgnoreCase(preferredCuisine));
     }
 
-    private List<Recipe> createBuffetPool(List<Recipe> safeRecipes, List<String> mealSchedule) {
+    // Trả về danh sách ordinal của pool (đã xáo trộn); caller chỉ load các công thức này từ Mongo
+    private List<Integer> createBuffetPool(BitSet safeRecipes, List<String> mealSchedule) {
         boolean includeBreakfast = mealSchedule != null && mealSchedule.contains("Breakfast");
         
         // Split into groups
-        List<Recipe> breakfastRecipes = safeRecipes.stream()
-            .filter(r -> r.getMealCourse() != null && r.getMealCourse().contains("Breakfast"))
-            .collect(Collectors.toList());
-            
-        List<Recipe> mainRecipes = safeRecipes.stream()
-            .filter(r -> r.getMealCourse() != null && (r.getMealCourse().contains("Lunch") || r.getMealCourse().contains("Dinner")))
-            .collect(Collectors.toList());
+        BitSet breakfastSet = recipeIndexService.withValue(RecipeIndexService.MEAL_COURSE, "Breakfast");
+        breakfastSet.and(safeRecipes);
+
+        BitSet mainSet = recipeIndexService.withValue(RecipeIndexService.MEAL_COURSE, "Lunch");
+        mainSet.or(recipeIndexService.withValue(RecipeIndexService.MEAL_COURSE, "Dinner"));
+        mainSet.and(safeRecipes);
+
+        List<Integer> breakfastRecipes = toList(breakfastSet);
+        List<Integer> mainRecipes = toList(mainSet);
 
         // Shuffle
-        java.util.Collections.shuffle(breakfastRecipes);
-        java.util.Collections.shuffle(mainRecipes);
+        Collections.shuffle(breakfastRecipes);
+        Collections.shuffle(mainRecipes);
 
         // Limit strategy: 
         // If Breakfast is required -> take 10 breakfast + 20 main
         // If no Breakfast -> take 30 main
         
-        List<Recipe> finalPool = new java.util.ArrayList<>();
+        List<Integer> finalPool = new ArrayList<>();
         
         int breakfastLimit = includeBreakfast ? 10 : 0;
         int mainLimit = includeBreakfast ? 20 : 30;
 
-        finalPool.addAll(breakfastRecipes.stream().limit(breakfastLimit).collect(Collectors.toList()));
-        finalPool.addAll(mainRecipes.stream().limit(mainLimit).collect(Collectors.toList()));
+        finalPool.addAll(breakfastRecipes.subList(0, Math.min(breakfastLimit, breakfastRecipes.size())));
+        int mainAdded = 0;
+        for (int ord : mainRecipes) {
+            if (mainAdded >= mainLimit) break;
+            if (!finalPool.contains(ord)) {
+                finalPool.add(ord);
+                mainAdded++;
+            }
+        }
         
         // If we don't have enough, fill with whatever is left from safeRecipes (unique)
         if (finalPool.size() < 20) {
-             safeRecipes.stream()
-                 .filter(r -> !finalPool.contains(r))
-                 .limit(30 - finalPool.size())
-                 .forEach(finalPool::add);
+            for (int ord = safeRecipes.nextSetBit(0); ord >= 0 && finalPool.size() < 30; ord = safeRecipes.nextSetBit(ord + 1)) {
+                if (!finalPool.contains(ord)) finalPool.add(ord);
+            }
         }
 
         return finalPool;
     }
+
+    private static List<Integer> toList(BitSet set) {
+        List<Integer> list = new ArrayList<>(set.cardinality());
+        for (int ord = set.nextSetBit(0); ord >= 0; ord = set.nextSetBit(ord + 1)) {
+            list.add(ord);
+        }
+        return list;
+    }
 }
@@ -10,6 +10,16 @@ import com.tastepedia.backend.repository.CommentRepository;
 import com.tastepedia.backend.repository.CommunityPostRepository;
 import com.tastepedia.backend.repository.RecipeRepository;
 import com.tastepedia.backend.repository.UserRepository;
+import com.tastepedia.backend.service.HedgedMealPlanner;
+import com.tastepedia.backend.service.MealPlanJobService;
+import com.tastepedia.backend.service.MealPlanSolver;
+import com.tastepedia.backend.service.MealPlanStreamer;
+import com.tastepedia.backend.service.LlmGateway;
+import com.tastepedia.backend.service.LlmRequestCoalescer;
+import com.tastepedia.backend.service.MealPlanCache;
+import com.tastepedia.backend.service.RecipeIndexService;
+import com.tastepedia.backend.service.RecommendationService;
+import com.tastepedia.backend.service.SearchResultCache;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -39,6 +49,36 @@ public class AdminController {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private RecipeIndexService recipeIndexService;
+
+    @Autowired
+    private SearchResultCache searchResultCache;
+
+    @Autowired
+    private RecommendationService recommendationService;
+
+    @Autowired
+    private MealPlanCache mealPlanCache;
+
+    @Autowired
+    private LlmRequestCoalescer llmRequestCoalescer;
+
+    @Autowired
+    private LlmGateway llmGateway;
+
+    @Autowired
+    private HedgedMealPlanner hedgedMealPlanner;
+
+    @Autowired
+    private MealPlanStreamer mealPlanStreamer;
+
+    @Autowired
+    private MealPlanJobService mealPlanJobService;
+
+    @Autowired
+    private MealPlanSolver mealPlanSolver;
+
     // --- HELPER: Kiểm tra quyền ADMIN ---
     private boolean isAdmin(HttpSession session) {
         User currentUser = (User) session.getAttribute("MY_SESSION_USER");
@@ -261,7 +301,14 @@ public class AdminController {
     @GetMapping("/recipes")
     public ResponseEntity<?> getAllRecipes(HttpSession session) {
         if (!isAdmin(session)) return ResponseEntity.status(403).body("Forbidden");
-        return ResponseEntity.ok(recipeRepository.findAll());
+        return ResponseEntity.ok(recipeRepository.findAllBy());
+    }
+
+    // Bản gần trùng chờ duyệt: approve -> vào danh mục, xoá -> bỏ bản trùng
+    @GetMapping("/recipes/duplicates")
+    public ResponseEntity<?> getDuplicateRecipes(HttpSession session) {
+        if (!isAdmin(session)) return ResponseEntity.status(403).body("Forbidden");
+        return ResponseEntity.ok(recipeRepository.findByDuplicateOfIdIsNotNullAndIsApprovedFalseOrderByCreatedAtDesc());
     }
 
     @PutMapping("/recipes/{recipeId}/approve")
@@ -273,7 +320,10 @@ public class AdminController {
         if (recipeOpt.isPresent()) {
             Recipe recipe = recipeOpt.get();
             recipe.setApproved(isApproved);
-            recipeRepository.save(recipe);
+            if (isApproved) {
+                recipe.setDuplicateOfId(null); // Admin xác nhận không phải bản trùng
+            }
+            recipeIndexService.index(recipeRepository.save(recipe));
             return ResponseEntity.ok(Map.of("message", "Recipe approval status updated"));
         }
         return ResponseEntity.notFound().build();
@@ -284,6 +334,7 @@ public class AdminController {
         if (!isAdmin(session)) return ResponseEntity.status(403).body("Forbidden");
         if (recipeRepository.existsById(recipeId)) {
             recipeRepository.deleteById(recipeId);
+            recipeIndexService.remove(recipeId);
             return ResponseEntity.ok(Map.of("message", "Recipe deleted successfully"));
         }
         return ResponseEntity.notFound().build();
@@ -311,4 +362,34 @@ public class AdminController {
         }
         return ResponseEntity.notFound().build();
     }
+
+    // --- 5. SYSTEM METRICS ---
+    // Toàn bộ số liệu trong một lần gọi; /metrics/{name} lấy riêng một mục (vd. /metrics/llm)
+    @GetMapping("/metrics")
+    public ResponseEntity<?> getMetrics(HttpSession session) {
+        if (!isAdmin(session)) return ResponseEntity.status(403).body("Forbidden");
+        return ResponseEntity.ok(metrics());
+    }
+
+    @GetMapping("/metrics/{name}")
+    public ResponseEntity<?> getMetric(@PathVariable String name, HttpSession session) {
+        if (!isAdmin(session)) return ResponseEntity.status(403).body("Forbidden");
+        Map<String, Object> stats = metrics().get(name);
+        if (stats == null) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(stats);
+    }
+
+    private Map<String, Map<String, Object>> metrics() {
+        Map<String, Map<String, Object>> metrics = new LinkedHashMap<>();
+        metrics.put("search-cache", searchResultCache.stats());
+        metrics.put("recommendations", recommendationService.stats());
+        metrics.put("meal-plans", mealPlanCache.stats());
+        metrics.put("llm-coalescing", llmRequestCoalescer.stats());
+        metrics.put("llm", llmGateway.stats());
+        metrics.put("llm-hedging", hedgedMealPlanner.stats());
+        metrics.put("meal-plan-stream", mealPlanStreamer.stats());
+        metrics.put("meal-plan-jobs", mealPlanJobService.stats());
+        metrics.put("meal-plan-solver", mealPlanSolver.stats());
+        return metrics;
+    }
 }
@@ -1,9 +1,11 @@
 package com.tastepedia.backend.controller;
 
-import com.tastepedia.backend.model.Recipe;
 import com.tastepedia.backend.model.User;
+import com.tastepedia.backend.payload.RecipeCard;
 import com.tastepedia.backend.repository.RecipeRepository;
 import com.tastepedia.backend.repository.UserRepository;
+import com.tastepedia.backend.service.CoFavoriteService;
+import com.tastepedia.backend.service.RecipeIndexService;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -22,6 +24,9 @@ public class FavoriteController {
     @Autowired
     private RecipeRepository recipeRepository;
 
+    @Autowired
+    private CoFavoriteService coFavoriteService;
+
     // Thêm công thức vào danh sách yêu thích
     @PostMapping("/{recipeId}")
     public ResponseEntity<?> addFavorite(@PathVariable String recipeId, HttpSession session) {
@@ -42,8 +47,10 @@ public class FavoriteController {
         }
 
         // Thêm vào danh sách
+        List<String> previousFavorites = new ArrayList<>(user.getFavoriteRecipeIds());
         user.getFavoriteRecipeIds().add(recipeId);
         userRepository.save(user);
+        coFavoriteService.favoriteAdded(previousFavorites, recipeId);
 
         // Cập nhật session
         session.setAttribute("MY_SESSION_USER", user);
@@ -65,8 +72,11 @@ public class FavoriteController {
         }
 
         // Xóa khỏi danh sách
-        user.getFavoriteRecipeIds().remove(recipeId);
+        boolean removed = user.getFavoriteRecipeIds().remove(recipeId);
         userRepository.save(user);
+        if (removed) {
+            coFavoriteService.favoriteRemoved(user.getFavoriteRecipeIds(), recipeId);
+        }
 
         // Cập nhật session
         session.setAttribute("MY_SESSION_USER", user);
@@ -87,11 +97,9 @@ public class FavoriteController {
             return ResponseEntity.status(404).body("Không tìm thấy user!");
         }
 
-        // Lấy danh sách recipes từ IDs
-        List<Recipe> favoriteRecipes = new ArrayList<>();
-        for (String recipeId : user.getFavoriteRecipeIds()) {
-            recipeRepository.findById(recipeId).ifPresent(favoriteRecipes::add);
-        }
+        // Lấy danh sách recipes (dạng thẻ) từ IDs trong một query, giữ thứ tự đã thêm
+        List<String> ids = user.getFavoriteRecipeIds();
+        List<RecipeCard> favoriteRecipes = RecipeIndexService.inOrder(ids, recipeRepository.findByIdIn(ids), RecipeCard::getId);
 
         return ResponseEntity.ok(favoriteRecipes);
     }
@@ -3,9 +3,17 @@ package com.tastepedia.backend.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tastepedia.backend.model.Recipe;
 import com.tastepedia.backend.model.User;
+import com.tastepedia.backend.payload.PantryRequest;
+import com.tastepedia.backend.payload.RecipeCard;
+import com.tastepedia.backend.payload.RecipeSearchFilter;
+import com.tastepedia.backend.payload.RecipeSuggestions;
 import com.tastepedia.backend.repository.RecipeRepository;
 import com.tastepedia.backend.service.CloudinaryService;
-import com.tastepedia.backend.utils.StringUtils;
+import com.tastepedia.backend.service.CoFavoriteService;
+import com.tastepedia.backend.service.RecipeIndexService;
+import com.tastepedia.backend.service.RecipeSearchService;
+import com.tastepedia.backend.service.RecommendationService;
+import com.tastepedia.backend.utils.AccentFolder;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
@@ -15,6 +23,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/recipes")
@@ -27,11 +36,20 @@ public class RecipeController {
     private RecipeRepository recipeRepository;
 
     @Autowired
-    private com.tastepedia.backend.service.RecipeSearchService recipeSearchService;
+    private RecipeSearchService recipeSearchService;
+
+    @Autowired
+    private RecipeIndexService recipeIndexService;
+
+    @Autowired
+    private RecommendationService recommendationService;
+
+    @Autowired
+    private CoFavoriteService coFavoriteService;
 
     // --- TÌM KIẾM & LỌC CÔNG THỨC ---
     @GetMapping("/search")
-    public ResponseEntity<List<Recipe>> searchRecipes(
+    public ResponseEntity<List<RecipeCard>> searchRecipes(
             @RequestParam(required = false) String keyword,
             @RequestParam(required = false) List<String> cuisines,
             @RequestParam(required = false) List<String> dietaryTypes,
@@ -41,10 +59,51 @@ public class RecipeController {
             @RequestParam(required = false) Integer fatMax,
             @RequestParam(required = false) Integer proteinMax,
             @RequestParam(required = false) Double minPrice,
-            @RequestParam(required = false) Double maxPrice
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(defaultValue = "false") boolean fuzzy
+    ) {
+        RecipeSearchService.SearchResults results = recipeSearchService.searchRecipes(keyword, cuisines, dietaryTypes, cookTimeMax, caloriesMax, carbMax, fatMax, proteinMax, minPrice, maxPrice, fuzzy);
+        // Có keyword thì chỉ trả top-K theo độ liên quan: báo tổng số khớp và cờ bị cắt qua header (body vẫn là mảng)
+        return ResponseEntity.ok()
+                .header("X-Total-Count", String.valueOf(results.totalMatches()))
+                .header("X-Results-Truncated", String.valueOf(results.truncated()))
+                .body(results.cards());
+    }
+
+    // --- TÌM KIẾM CÓ PHÂN TRANG (KEYSET) ---
+    // Các tham số lọc giống /search, thêm size và cursor (lấy từ nextCursor của trang trước)
+    @GetMapping("/search/page")
+    public ResponseEntity<?> searchRecipesPage(
+            RecipeSearchFilter filter,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor
+    ) {
+        try {
+            return ResponseEntity.ok(recipeSearchService.searchPage(filter, size, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // --- GỢI Ý KHI GÕ (AUTOCOMPLETE) ---
+    // Tra trie trong bộ nhớ theo tiền tố không dấu, gọi được theo từng phím gõ
+    @GetMapping("/suggest")
+    public ResponseEntity<RecipeSuggestions> suggest(
+            @RequestParam(defaultValue = "") String q,
+            @RequestParam(defaultValue = "8") int limit
     ) {
-        List<Recipe> results = recipeSearchService.searchRecipes(keyword, cuisines, dietaryTypes, cookTimeMax, caloriesMax, carbMax, fatMax, proteinMax, minPrice, maxPrice);
-        return ResponseEntity.ok(results);
+        return ResponseEntity.ok(recipeIndexService.suggest(q, limit));
+    }
+
+    // --- NẤU VỚI NHỮNG GÌ TÔI CÓ (xếp theo độ phủ nguyên liệu) ---
+    @PostMapping("/pantry")
+    public ResponseEntity<?> searchByPantry(@RequestBody PantryRequest request) {
+        if (request.getIngredients() == null || request.getIngredients().isEmpty()) {
+            return ResponseEntity.badRequest().body("Vui lòng nhập ít nhất một nguyên liệu!");
+        }
+        int limit = request.getLimit() != null ? Math.max(1, Math.min(request.getLimit(), 50)) : 20;
+        double minCoverage = request.getMinCoverage() != null ? request.getMinCoverage() : 0;
+        return ResponseEntity.ok(recipeSearchService.pantrySearch(request.getIngredients(), limit, minCoverage));
     }
 
     @PostMapping(value = "/create", consumes = { MediaType.MULTIPART_FORM_DATA_VALUE })
@@ -97,12 +156,26 @@ public class RecipeController {
 
             // --- BƯỚC 5.5: TẠO SHADOW FIELD CHO TÌM KIẾM ---
             if (recipe.getTitle() != null) {
-                recipe.setSearchText(StringUtils.removeAccent(recipe.getTitle()).toLowerCase());
+                recipe.setSearchText(AccentFolder.foldLowerCase(recipe.getTitle()));
+            }
+
+            // --- BƯỚC 5.6: KIỂM TRA GẦN TRÙNG (SimHash) ---
+            // Gần trùng với công thức đã có -> vẫn lưu nhưng chờ admin duyệt, không vào tìm kiếm / thực đơn
+            recipe.setDuplicateOfId(recipeIndexService.findNearDuplicate(recipe));
+            if (recipe.getDuplicateOfId() != null) {
+                recipe.setApproved(false);
             }
 
             // --- BƯỚC 6: LƯU VÀO MONGODB ---
             Recipe savedRecipe = recipeRepository.save(recipe);
+            recipeIndexService.index(savedRecipe);
 
+            if (savedRecipe.getDuplicateOfId() != null) {
+                return ResponseEntity.status(202).body(Map.of(
+                        "message", "Công thức gần trùng với một công thức đã có, đang chờ admin duyệt.",
+                        "duplicateOfId", savedRecipe.getDuplicateOfId(),
+                        "recipe", savedRecipe));
+            }
             return ResponseEntity.ok(savedRecipe);
 
         } catch (Exception e) {
@@ -112,137 +185,25 @@ public class RecipeController {
     }
 
     @GetMapping("/latest")
-    public ResponseEntity<List<Recipe>> getLatestRecipes() {
-        List<Recipe> latestRecipes = recipeRepository.findTop6ByOrderByCreatedAtDesc();
+    public ResponseEntity<List<RecipeCard>> getLatestRecipes() {
+        List<RecipeCard> latestRecipes = recipeRepository.findTop6ByOrderByCreatedAtDesc(RecipeCard.class);
         return ResponseEntity.ok(latestRecipes);
     }
 
     // --- API GỢI Ý DỰA TRÊN SỞ THÍCH USER (ONBOARDING) ---
     @GetMapping("/recommended")
-    public ResponseEntity<List<Recipe>> getRecommendedRecipes(HttpSession session) {
+    public ResponseEntity<List<RecipeCard>> getRecommendedRecipes(HttpSession session) {
         User currentUser = (User) session.getAttribute("MY_SESSION_USER");
         
         // Nếu chưa login hoặc chưa có preferences, trả về random
         if (currentUser == null || currentUser.getPreferences() == null) {
-            List<Recipe> randomRecipes = recipeRepository.findTop6ByOrderByCreatedAtDesc();
+            List<RecipeCard> randomRecipes = recipeRepository.findTop6ByOrderByCreatedAtDesc(RecipeCard.class);
             return ResponseEntity.ok(randomRecipes);
         }
 
-        java.util.Map<String, Object> prefs = currentUser.getPreferences();
-        
-        // Lấy tất cả recipes
-        List<Recipe> allRecipes = recipeRepository.findAll();
-        List<Recipe> recommended = new ArrayList<>();
-
-        for (Recipe recipe : allRecipes) {
-            boolean matches = true;
-
-            // 1. Filter by Diet
-            if (prefs.get("diet") != null) {
-                String userDiet = prefs.get("diet").toString().toLowerCase();
-                List<String> recipeDiets = recipe.getDietaryType();
-                
-                // Mapping logic - check if recipe's dietary types match user's preference
-                if (recipeDiets != null && !recipeDiets.isEmpty()) {
-                    boolean dietMatches = false;
-                    
-                    for (String recipeDiet : recipeDiets) {
-                        String recipeDietLower = recipeDiet.toLowerCase();
-                        
-                        if ("vegetarian".equals(userDiet)) {
-                            if (recipeDietLower.contains("vegetarian") || recipeDietLower.contains("vegan")) {
-                                dietMatches = true;
-                                break;
-                            }
-                        } else if ("vegan".equals(userDiet)) {
-                            if (recipeDietLower.contains("vegan")) {
-                                dietMatches = true;
-                                break;
-                            }
-                        } else if ("keto".equals(userDiet)) {
-                            if (recipeDietLower.contains("keto") || recipeDietLower.contains("low-carb")) {
-                                dietMatches = true;
-                                break;
-                            }
-                        } else {
-                            // For omnivore or other diets, accept all
-                            dietMatches = true;
-                            break;
-                        }
-                    }
-                    
-                    if (!dietMatches && !"omnivore".equals(userDiet)) {
-                        matches = false;
-                    }
-                }
-            }
-
-            // 2. Filter by Allergies
-            if (prefs.get("allergies") != null) {
-                @SuppressWarnings("unchecked")
-                List<String> userAllergies = (List<String>) prefs.get("allergies");
-                List<String> recipeAllergens = recipe.getAllergens();
-                
-                if (recipeAllergens != null) {
-                    for (String allergy : userAllergies) {
-                        if (recipeAllergens.stream().anyMatch(a -> 
-                            a.toLowerCase().contains(allergy.toLowerCase()))) {
-                            matches = false;
-                            break;
-                        }
-                    }
-                }
-            }
-
-            // 3. Prioritize by Cuisine (but don't exclude)
-            // We'll sort by matching cuisine later instead of filtering here
-
-            if (matches) {
-                recommended.add(recipe);
-            }
-        }
-
-        // Sort by cuisine match (preferred cuisines first)
-        if (prefs.get("cuisines") != null) {
-            @SuppressWarnings("unchecked")
-            List<String> userCuisines = (List<String>) prefs.get("cuisines");
-            recommended.sort((r1, r2) -> {
-                boolean r1Match = userCuisines.stream().anyMatch(cuisineCode -> 
-                    matchesCuisine(r1.getCuisine(), cuisineCode));
-                boolean r2Match = userCuisines.stream().anyMatch(cuisineCode -> 
-                    matchesCuisine(r2.getCuisine(), cuisineCode));
-                
-                if (r1Match && !r2Match) return -1;
-                if (!r1Match && r2Match) return 1;
-                return 0;
-            });
-        }
-
-        // Return top 6
-        return ResponseEntity.ok(recommended.stream().limit(6).toList());
-    }
-
-    // Helper method to map cuisine codes to full names
-    private boolean matchesCuisine(String recipeCuisine, String cuisineCode) {
-        if (recipeCuisine == null || cuisineCode == null) return false;
-        
-        String cuisineLower = recipeCuisine.toLowerCase();
-        String code = cuisineCode.toLowerCase();
-        
-        // Mapping from onboarding codes to recipe cuisine names
-        return switch (code) {
-            case "vn" -> cuisineLower.contains("viet") || cuisineLower.contains("vietnam");
-            case "it" -> cuisineLower.contains("ital");
-            case "jp" -> cuisineLower.contains("japan");
-            case "kr" -> cuisineLower.contains("korea");
-            case "cn" -> cuisineLower.contains("chin");
-            case "in" -> cuisineLower.contains("india");
-            case "th" -> cuisineLower.contains("thai");
-            case "mx" -> cuisineLower.contains("mexican");
-            case "fr" -> cuisineLower.contains("french");
-            case "us" -> cuisineLower.contains("american");
-            default -> false;
-        };
+        // Top-N id đã được tính sẵn và cache theo profile sở thích, trộn thêm món "người khác cũng lưu"
+        List<String> ids = recommendationService.recommend(currentUser.getPreferences(), currentUser.getFavoriteRecipeIds());
+        return ResponseEntity.ok(recipeIndexService.loadCardsInOrder(ids));
     }
 
     // --- API CHI TIẾT BÀI ĐĂNG ---
@@ -253,6 +214,22 @@ public class RecipeController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    // --- CÔNG THỨC TƯƠNG TỰ (chung nguyên liệu / tags, trang chi tiết) ---
+    @GetMapping("/{id}/similar")
+    public ResponseEntity<List<RecipeCard>> getSimilarRecipes(@PathVariable String id,
+                                                              @RequestParam(defaultValue = "6") int limit) {
+        List<String> ids = recipeIndexService.similarTo(id, Math.max(1, Math.min(limit, 20)));
+        return ResponseEntity.ok(recipeIndexService.loadCardsInOrder(ids));
+    }
+
+    // --- NGƯỜI LƯU MÓN NÀY CŨNG LƯU (trang chi tiết) ---
+    @GetMapping("/{id}/also-saved")
+    public ResponseEntity<List<RecipeCard>> getAlsoSaved(@PathVariable String id,
+                                                         @RequestParam(defaultValue = "6") int limit) {
+        List<String> ids = coFavoriteService.alsoSaved(id, Math.max(1, Math.min(limit, 20)));
+        return ResponseEntity.ok(recipeIndexService.loadCardsInOrder(ids));
+    }
+
     // --- LẤY DANH SÁCH CÔNG THỨC CỦA USER HIỆN TẠI ---
     @GetMapping("/my-recipes")
     public ResponseEntity<?> getMyRecipes(HttpSession session) {
@@ -261,7 +238,7 @@ public class RecipeController {
             return ResponseEntity.status(401).body("Vui lòng đăng nhập!");
         }
 
-        List<Recipe> myRecipes = recipeRepository.findByAuthorIdOrderByCreatedAtDesc(currentUser.getId());
+        List<RecipeCard> myRecipes = recipeRepository.findByAuthorIdOrderByCreatedAtDesc(currentUser.getId(), RecipeCard.class);
         return ResponseEntity.ok(myRecipes);
     }
 
@@ -284,6 +261,7 @@ public class RecipeController {
         }
 
         recipeRepository.deleteById(id);
+        recipeIndexService.remove(id);
         return ResponseEntity.ok("Đã xóa công thức thành công!");
     }
 
@@ -370,10 +348,25 @@ public class RecipeController {
 
             // Cập nhật searchText
             if (existingRecipe.getTitle() != null) {
-                existingRecipe.setSearchText(StringUtils.removeAccent(existingRecipe.getTitle()).toLowerCase());
+                existingRecipe.setSearchText(AccentFolder.foldLowerCase(existingRecipe.getTitle()));
+            }
+
+            // Kiểm tra gần trùng như lúc tạo: sửa thành bản sao của công thức khác cũng phải chờ admin duyệt
+            String duplicateOfId = recipeIndexService.findNearDuplicate(existingRecipe);
+            if (duplicateOfId != null) {
+                existingRecipe.setDuplicateOfId(duplicateOfId);
+                existingRecipe.setApproved(false);
             }
 
             Recipe savedRecipe = recipeRepository.save(existingRecipe);
+            recipeIndexService.index(savedRecipe);
+
+            if (duplicateOfId != null) {
+                return ResponseEntity.status(202).body(Map.of(
+                        "message", "Công thức gần trùng với một công thức đã có, đang chờ admin duyệt.",
+                        "duplicateOfId", duplicateOfId,
+                        "recipe", savedRecipe));
+            }
             return ResponseEntity.ok(savedRecipe);
 
         } catch (Exception e) {
@@ -3,14 +3,17 @@ package com.tastepedia.backend.controller;
 import com.tastepedia.backend.model.StoreProduct;
 import com.tastepedia.backend.model.User;
 import com.tastepedia.backend.repository.StoreProductRepository;
+import com.tastepedia.backend.service.RecipeIndexService;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/store-products")
@@ -46,6 +49,7 @@ public class StoreProductController {
         }
 
         product.setStoreId(currentUser.getStoreId());
+        product.setCanonicalIngredientId(RecipeIndexService.canonicalIngredient(product.getIngredientName()));
         product.setCreatedAt(LocalDateTime.now());
         product.setUpdatedAt(LocalDateTime.now());
         
@@ -71,6 +75,7 @@ public class StoreProductController {
             }
 
             product.setIngredientName(updatedProduct.getIngredientName());
+            product.setCanonicalIngredientId(RecipeIndexService.canonicalIngredient(updatedProduct.getIngredientName()));
             product.setDisplayName(updatedProduct.getDisplayName());
             product.setPrice(updatedProduct.getPrice());
             product.setUnit(updatedProduct.getUnit());
@@ -113,7 +118,13 @@ public class StoreProductController {
             return ResponseEntity.badRequest().body(Map.of("error", "Empty ingredient list"));
         }
         
-        List<StoreProduct> matches = productRepository.findByIngredientNameInAndQuantityGreaterThan(ingredientNames, 0);
+        // "Ba chỉ heo" trong công thức khớp sản phẩm "Thịt heo" vì cùng về mã pork
+        Set<String> canonicalIds = new HashSet<>();
+        for (String name : ingredientNames) {
+            String id = RecipeIndexService.canonicalIngredient(name);
+            if (!id.isEmpty()) canonicalIds.add(id);
+        }
+        List<StoreProduct> matches = productRepository.findInStockMatching(canonicalIds, ingredientNames);
         return ResponseEntity.ok(matches);
     }
 }
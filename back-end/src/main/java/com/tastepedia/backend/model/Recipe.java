@@ -64,6 +64,7 @@ public class Recipe {
     private boolean isPremium;
     private String visibility; // "public", "private", "subscribers"
     private boolean isApproved = true; // Admin duyệt. Mặc định true cho demo, hệ thống thực tế có thể set false.
+    private String duplicateOfId; // Gần trùng với công thức này lúc đăng -> chờ admin duyệt (null = không trùng)
 
     private Date createdAt = new Date();
 
@@ -17,6 +17,9 @@ public class StoreProduct {
     
     // Tên nguyên liệu (chuẩn hoá để text search)
     private String ingredientName;
+
+    // Mã nguyên liệu chuẩn suy ra từ ingredientName ("Thịt heo" -> "pork"), để khớp với nguyên liệu công thức
+    private String canonicalIngredientId;
     
     // Tên hiển thị cụ thể tại cửa hàng (vd: "Thịt heo ba rọi CP")
     private String displayName;
@@ -43,6 +46,9 @@ public class StoreProduct {
     public String getIngredientName() { return ingredientName; }
     public void setIngredientName(String ingredientName) { this.ingredientName = ingredientName; }
 
+    public String getCanonicalIngredientId() { return canonicalIngredientId; }
+    public void setCanonicalIngredientId(String canonicalIngredientId) { this.canonicalIngredientId = canonicalIngredientId; }
+
     public String getDisplayName() { return displayName; }
     public void setDisplayName(String displayName) { this.displayName = displayName; }
 
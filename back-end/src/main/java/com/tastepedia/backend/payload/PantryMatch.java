@@ -0,0 +1,17 @@
+package com.tastepedia.backend.payload;
+
+import lombok.Data;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Một kết quả của /api/recipes/pantry: công thức (dạng thẻ), độ phủ nguyên liệu và các nguyên liệu còn thiếu.
+ */
+@Data
+public class PantryMatch {
+    private RecipeCard recipe;
+    private int matchedCount;   // Số nguyên liệu của công thức đã có
+    private int totalCount;     // Tổng số nguyên liệu (phân biệt) của công thức
+    private double coverage;    // matchedCount / totalCount
+    private List<String> missingIngredients = new ArrayList<>();
+}
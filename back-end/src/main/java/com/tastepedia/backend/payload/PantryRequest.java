@@ -0,0 +1,14 @@
+package com.tastepedia.backend.payload;
+
+import lombok.Data;
+import java.util.List;
+
+/**
+ * Yêu cầu "nấu với những gì tôi có" (/api/recipes/pantry).
+ */
+@Data
+public class PantryRequest {
+    private List<String> ingredients; // Nguyên liệu đang có, ví dụ: ["Trứng", "Cà chua", "Hành lá"]
+    private Integer limit;            // Số công thức tối đa (mặc định 20)
+    private Double minCoverage;       // Tỉ lệ nguyên liệu có sẵn tối thiểu, 0..1 (mặc định 0)
+}
@@ -0,0 +1,33 @@
+package com.tastepedia.backend.payload;
+
+import com.tastepedia.backend.model.Recipe;
+import lombok.Data;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Dạng rút gọn của Recipe cho các danh sách / lưới thẻ (trang chủ, tìm kiếm, yêu thích,
+ * công thức của tôi, admin). Spring Data chỉ lấy đúng các field này từ Mongo (field projection),
+ * nên không phải đọc steps, ingredients, hướng dẫn bảo quản, mẹo...
+ * Tên field giữ nguyên như Recipe để JSON trả về không đổi với front-end.
+ * Dữ liệu đầy đủ chỉ có ở GET /api/recipes/{id}.
+ */
+@Data
+public class RecipeCard {
+    private String id;
+    private String title;
+    private String mainImageUrl;
+    private String videoUrl;
+    private int cookTime;
+    private int prepTime;
+    private String difficulty;
+    private String cuisine;
+    private List<String> dietaryType;
+    private Recipe.Nutrition nutrition;
+    private Double totalCost;
+    private String authorId;
+    private String authorName;
+    private boolean isPremium;
+    private boolean isApproved;
+    private Date createdAt;
+}
@@ -0,0 +1,24 @@
+package com.tastepedia.backend.payload;
+
+import lombok.Data;
+import java.util.List;
+
+/**
+ * Bộ lọc tìm kiếm công thức, bind trực tiếp từ query params của /api/recipes/search/page.
+ */
+@Data
+public class RecipeSearchFilter {
+    private String keyword;
+    private List<String> cuisines;
+    private List<String> dietaryTypes;
+    private Integer cookTimeMax;
+    private Integer caloriesMax;
+    private Integer carbMax;
+    private Integer fatMax;
+    private Integer proteinMax;
+    private Double minPrice;
+    private Double maxPrice;
+
+    // true = chấp nhận từ khoá gõ sai (sai tối đa 1-2 ký tự mỗi từ, tuỳ độ dài)
+    private boolean fuzzy;
+}
@@ -0,0 +1,20 @@
+package com.tastepedia.backend.payload;
+
+import lombok.Data;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Một trang kết quả tìm kiếm (phân trang keyset theo createdAt + id).
+ */
+@Data
+public class RecipeSearchPage {
+    private List<RecipeCard> items;
+    private String nextCursor;      // null nếu đã hết kết quả
+    private Long estimatedTotal;    // Chỉ tính ở trang đầu tiên (cursor == null)
+    private boolean totalCapped;    // true = có ít nhất estimatedTotal kết quả
+
+    // Số lượng theo từng facet (cuisine, dietaryType, mealCourse, difficulty, calories, price)
+    // Chỉ trả về ở trang đầu tiên. Ví dụ: { "cuisine": { "Vietnamese": 12, "Korean": 3 } }
+    private Map<String, Map<String, Long>> facets;
+}
@@ -0,0 +1,16 @@
+package com.tastepedia.backend.payload;
+
+import lombok.Data;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kết quả gợi ý khi gõ (/api/recipes/suggest), mỗi nhóm đã xếp theo độ phổ biến
+ * (số công thức dùng cụm từ đó).
+ */
+@Data
+public class RecipeSuggestions {
+    private List<String> titles = new ArrayList<>();
+    private List<String> cuisines = new ArrayList<>();
+    private List<String> ingredients = new ArrayList<>();
+}
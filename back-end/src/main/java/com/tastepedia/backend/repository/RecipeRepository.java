@@ -1,14 +1,26 @@
 package com.tastepedia.backend.repository;
 
 import com.tastepedia.backend.model.Recipe;
+import com.tastepedia.backend.payload.RecipeCard;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface RecipeRepository extends MongoRepository<Recipe, String> {
     // Tìm 6 bài mới nhất (sắp xếp giảm dần theo createdAt)
-    List<Recipe> findTop6ByOrderByCreatedAtDesc();
+    // type = Recipe.class (đầy đủ) hoặc RecipeCard.class (chỉ lấy các field của thẻ)
+    <T> List<T> findTop6ByOrderByCreatedAtDesc(Class<T> type);
     
     // Tìm tất cả công thức của một tác giả, sắp xếp theo ngày tạo mới nhất
-    List<Recipe> findByAuthorIdOrderByCreatedAtDesc(String authorId);
-}
\ No newline at end of file
+    <T> List<T> findByAuthorIdOrderByCreatedAtDesc(String authorId, Class<T> type);
+
+    // Dạng thẻ cho một danh sách id (thứ tự không đảm bảo)
+    List<RecipeCard> findByIdIn(Collection<String> ids);
+
+    // Dạng thẻ cho toàn bộ công thức (trang quản trị)
+    List<RecipeCard> findAllBy();
+
+    // Công thức bị đánh dấu gần trùng lúc đăng, đang chờ admin duyệt
+    List<Recipe> findByDuplicateOfIdIsNotNullAndIsApprovedFalseOrderByCreatedAtDesc();
+}
@@ -2,12 +2,16 @@ package com.tastepedia.backend.repository;
 
 import com.tastepedia.backend.model.StoreProduct;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface StoreProductRepository extends MongoRepository<StoreProduct, String> {
     List<StoreProduct> findByStoreId(String storeId);
-    List<StoreProduct> findByIngredientNameInAndQuantityGreaterThan(List<String> ingredientNames, int quantity);
+    // Khớp theo mã chuẩn; sản phẩm cũ chưa có mã vẫn khớp theo đúng tên
+    @Query("{ 'quantity': { $gt: 0 }, $or: [ { 'canonicalIngredientId': { $in: ?0 } }, { 'ingredientName': { $in: ?1 } } ] }")
+    List<StoreProduct> findInStockMatching(Collection<String> canonicalIds, Collection<String> ingredientNames);
 }
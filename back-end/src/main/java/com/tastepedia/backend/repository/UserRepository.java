@@ -2,6 +2,9 @@ package com.tastepedia.backend.repository;
 
 import com.tastepedia.backend.model.User;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends MongoRepository<User, String> {
@@ -12,4 +15,8 @@ public interface UserRepository extends MongoRepository<User, String> {
     // Kiểm tra xem email đã tồn tại chưa (để chặn đăng ký trùng)
     Boolean existsByEmail(String email);
     Boolean existsByUsername(String username); // Check trùng username
+
+    // User có ít nhất một món yêu thích, chỉ lấy trường favoriteRecipeIds (nạp ma trận đồng lưu)
+    @Query(value = "{ 'favoriteRecipeIds.0': { $exists: true } }", fields = "{ 'favoriteRecipeIds': 1 }")
+    List<User> findFavoriteBaskets();
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.tastepedia.backend.service;
+
+import com.tastepedia.backend.model.User;
+import com.tastepedia.backend.repository.UserRepository;
+import com.tastepedia.backend.service.index.CoOccurrenceMatrix;
+import com.tastepedia.backend.service.index.CoOccurrenceMatrix.Neighbors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * "Người lưu món này cũng lưu": lọc cộng tác item-item từ User.favoriteRecipeIds.
+ * Nạp một lần khi khởi động, sau đó FavoriteController báo từng lượt thêm / bỏ yêu thích
+ * để cập nhật ma trận đồng xuất hiện tăng dần. Không truy vấn user nào khi phục vụ request.
+ */
+@Service
+public class CoFavoriteService {
+
+    // Chỉ dùng bấy nhiêu món yêu thích gần nhất của user khi gợi ý theo cả danh sách
+    private static final int MAX_BASKET_FOR_SCORING = 50;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RecipeIndexService recipeIndexService;
+
+    private final CoOccurrenceMatrix matrix = new CoOccurrenceMatrix();
+
+    // Recipe id <-> số nguyên liên tục dùng làm khoá của ma trận
+    private final Map<String, Integer> itemById = new HashMap<>();
+    private final List<String> idByItem = new ArrayList<>();
+
+    private volatile boolean ready = false;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            load();
+        } catch (Exception e) {
+            // Sẽ thử nạp lại ở lần truy vấn đầu tiên
+            System.err.println("Co-favorite matrix load failed: " + e.getMessage());
+        }
+    }
+
+    /** Gọi sau khi user lưu recipeId, previousFavorites = danh sách trước khi thêm. */
+    public synchronized void favoriteAdded(Collection<String> previousFavorites, String recipeId) {
+        if (!ready) return; // Lần nạp đầy đủ sau này sẽ đọc trạng thái mới từ DB
+        matrix.add(itemOf(recipeId), itemsOf(previousFavorites));
+    }
+
+    /** Gọi sau khi user bỏ lưu recipeId, remainingFavorites = danh sách sau khi xoá. */
+    public synchronized void favoriteRemoved(Collection<String> remainingFavorites, String recipeId) {
+        if (!ready) return;
+        matrix.remove(itemOf(recipeId), itemsOf(remainingFavorites));
+    }
+
+    /** Các công thức hay được lưu cùng recipeId (còn tồn tại), liên quan giảm dần. */
+    public List<String> alsoSaved(String recipeId, int limit) {
+        ensureReady();
+        recipeIndexService.ensureReady();
+        List<String> result = new ArrayList<>();
+        synchronized (this) {
+            Integer item = itemById.get(recipeId);
+            if (item == null) return result;
+            Neighbors neighbors = matrix.neighbors(item);
+            for (int i = 0; i < neighbors.items().length && result.size() < limit; i++) {
+                String id = idByItem.get(neighbors.items()[i]);
+                if (recipeIndexService.ordinalOf(id) >= 0) result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Điểm đồng lưu cho cả danh sách yêu thích: cộng điểm láng giềng của từng món,
+     * bỏ qua các món đã có trong danh sách. Dùng để trộn vào /api/recipes/recommended.
+     */
+    public Map<String, Float> scoresFor(List<String> favorites) {
+        ensureReady();
+        Map<String, Float> scores = new HashMap<>();
+        if (favorites == null || favorites.isEmpty()) return scores;
+
+        Set<String> owned = new HashSet<>(favorites);
+        List<String> recent = favorites.subList(Math.max(0, favorites.size() - MAX_BASKET_FOR_SCORING), favorites.size());
+        synchronized (this) {
+            for (String favorite : recent) {
+                Integer item = itemById.get(favorite);
+                if (item == null) continue;
+                Neighbors neighbors = matrix.neighbors(item);
+                for (int i = 0; i < neighbors.items().length; i++) {
+                    String id = idByItem.get(neighbors.items()[i]);
+                    if (!owned.contains(id)) scores.merge(id, neighbors.scores()[i], Float::sum);
+                }
+            }
+        }
+        return scores;
+    }
+
+    // --- HELPER ---
+
+    private void ensureReady() {
+        if (ready) return;
+        try {
+            load();
+        } catch (Exception e) {
+            System.err.println("Co-favorite matrix load failed: " + e.getMessage());
+        }
+    }
+
+    // Đọc DB trong cùng khoá với favoriteAdded/Removed: lượt thêm / bỏ nào xảy ra trong lúc nạp
+    // sẽ chờ tới khi ready = true rồi mới áp vào ma trận, thay vì bị bỏ qua
+    private void load() {
+        synchronized (this) {
+            if (ready) return;
+            List<User> users = userRepository.findFavoriteBaskets();
+            matrix.clear();
+            itemById.clear();
+            idByItem.clear();
+            long pairs = 0;
+            for (User user : users) {
+                List<String> favorites = user.getFavoriteRecipeIds();
+                // Phát lại theo thứ tự đã lưu: mỗi cặp được đếm đúng một lần
+                for (int i = 0; i < favorites.size(); i++) {
+                    matrix.add(itemOf(favorites.get(i)), itemsOf(favorites.subList(0, i)));
+                    pairs += i;
+                }
+            }
+            ready = true;
+            System.out.println("Co-favorite matrix loaded: " + users.size() + " users, " + pairs + " pairs");
+        }
+    }
+
+    private int itemOf(String recipeId) {
+        Integer item = itemById.get(recipeId);
+        if (item != null) return item;
+        idByItem.add(recipeId);
+        itemById.put(recipeId, idByItem.size() - 1);
+        return idByItem.size() - 1;
+    }
+
+    private int[] itemsOf(Collection<String> recipeIds) {
+        if (recipeIds == null) return new int[0];
+        return recipeIds.stream().distinct().mapToInt(this::itemOf).toArray();
+    }
+}
@@ -6,29 +6,49 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.tastepedia.backend.model.Recipe;
 import com.tastepedia.backend.payload.MealPlanRequest;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.http.*;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class GeminiService {
 
+    @Autowired
+    private LlmGateway llmGateway;
+
+    @Autowired
+    private MealPlanSolver mealPlanSolver;
+
     @Value("${gemini.api-key}")
     private String apiKey;
 
+    // Lời nhận xét khi phải ghép thực đơn AI dở dang với thực đơn dự phòng; MealPlanCache không cache thực đơn có lời này
+    public static final String FALLBACK_ANALYSIS = "Hệ thống AI đang bận. Một phần thực đơn được lập tự động dựa trên lịch ăn bạn chọn.";
+
     private final String GEMINI_API_URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.5-flash:generateContent?key=";
+    private final String GEMINI_STREAM_URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.5-flash:streamGenerateContent?alt=sse&key=";
+
+    /** Prompt đã dựng + bảng ID tạm -> công thức thật; dùng chung khi hỏi Gemini hay Grok (hedging). */
+    public record PreparedPlan(MealPlanRequest request, String prompt, Map<Integer, Recipe> idMap, List<Recipe> pool) {}
 
     public String generateMealPlan(MealPlanRequest request, List<Recipe> poolRecipes) {
-        RestTemplate restTemplate = new RestTemplate();
-        ObjectMapper mapper = new ObjectMapper();
+        PreparedPlan prepared = prepare(request, poolRecipes);
+        String plan = tryGenerate(prepared);
+        // Truyền cả lịch ăn của user vào hàm Fallback
+        return plan != null ? plan : fallbackPlan(prepared);
+    }
 
+    public PreparedPlan prepare(MealPlanRequest request, List<Recipe> poolRecipes) {
         // 1. Map ID Tạm -> Recipe Thật
         Map<Integer, Recipe> idMap = new HashMap<>();
         StringBuilder promptContext = new StringBuilder();
@@ -92,37 +112,152 @@ public class GeminiService {
                 promptContext.toString(),
                 scheduleString // <-- CHỖ NÀY LÀ BIẾN LINH HOẠT
         );
+        return new PreparedPlan(request, prompt, idMap, poolRecipes);
+    }
+
+    /** Gọi Gemini với prompt đã dựng; null nếu lỗi, mạch đang mở hoặc kết quả không phải thực đơn hợp lệ. */
+    public String tryGenerate(PreparedPlan prepared) {
+        // Mạch đang mở (Gemini đang lỗi liên tục) -> trả null ngay để dùng dự phòng, không chờ timeout
+        if (!llmGateway.isAvailable(LlmGateway.GEMINI)) return null;
 
         // 3. Send Request
         try {
-            ObjectNode content = mapper.createObjectNode();
-            ArrayNode parts = content.putArray("parts");
-            parts.addObject().put("text", prompt);
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            String response = llmGateway.post(LlmGateway.GEMINI, GEMINI_API_URL + apiKey, headers, requestBody(prepared.prompt()));
 
-            ArrayNode contents = mapper.createArrayNode();
-            contents.add(mapper.createObjectNode().set("parts", parts));
+            String rawAiJson = extractTextFromGeminiResponse(response);
+            return rehydrate(prepared, rawAiJson);
 
-            ObjectNode requestBody = mapper.createObjectNode();
-            requestBody.set("contents", contents);
+        } catch (Exception e) {
+            System.err.println("Gemini API Error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Gọi streamGenerateContent của Gemini và đọc dần JSON trả về: mỗi ngày vừa đóng ngoặc được
+     * gắn công thức thật rồi đưa ngay cho onDay, lời nhận xét đưa cho onAnalysis.
+     * Trả về thực đơn đầy đủ khi luồng kết thúc hợp lệ; null nếu lỗi, mạch đang mở hoặc thực đơn không hợp lệ
+     * (các ngày đã đưa cho onDay trước đó vẫn dùng được).
+     * cancelled trả true (vd. người dùng đã đóng trang) thì ngừng đọc và huỷ luồng ngay, trả về null.
+     */
+    public String streamMealPlan(PreparedPlan prepared, Consumer<String> onAnalysis, Consumer<ObjectNode> onDay,
+                                 BooleanSupplier cancelled) {
+        if (!llmGateway.isAvailable(LlmGateway.GEMINI)) return null;
 
+        ObjectMapper mapper = llmGateway.mapper();
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode days = root.putArray("days");
+        MealPlanStreamParser parser = new MealPlanStreamParser(
+                literal -> {
+                    String analysis = parseStringLiteral(literal);
+                    root.put("analysis", analysis);
+                    onAnalysis.accept(analysis);
+                },
+                dayJson -> {
+                    ObjectNode day = rehydrateDay(prepared, dayJson);
+                    if (day == null) return;
+                    days.add(day);
+                    onDay.accept(day);
+                });
+
+        try {
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<String> entity = new HttpEntity<>(requestBody.toString(), headers);
+            llmGateway.stream(LlmGateway.GEMINI, GEMINI_STREAM_URL + apiKey, headers, requestBody(prepared.prompt()), line -> {
+                // LlmGateway coi CancellationException là huỷ, không tính vào circuit breaker
+                if (cancelled.getAsBoolean()) throw new CancellationException("meal plan stream cancelled");
+                // Mỗi sự kiện SSE: "data: {candidates:[{content:{parts:[{text: <mảnh JSON tiếp theo>}]}}]}"
+                if (line.startsWith("data:")) parser.feed(extractChunkText(line.substring(5).trim()));
+            });
+        } catch (Exception e) {
+            System.err.println("Gemini stream error: " + e.getMessage());
+            return null;
+        }
+        return parser.isFinished() && isValidPlan(root.toString()) ? root.toString() : null;
+    }
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    GEMINI_API_URL + apiKey,
-                    HttpMethod.POST,
-                    entity,
-                    String.class
-            );
+    /** Gắn công thức thật vào một ngày của thực đơn (text JSON); null nếu không phải ngày có bữa ăn. */
+    public ObjectNode rehydrateDay(PreparedPlan prepared, String dayJson) {
+        try {
+            if (llmGateway.mapper().readTree(dayJson) instanceof ObjectNode day
+                    && day.get("meals") instanceof ArrayNode meals && !meals.isEmpty()) {
+                rehydrateMeals(meals, prepared.idMap());
+                return day;
+            }
+        } catch (Exception e) {
+            System.err.println("Gemini stream: bỏ qua ngày không hợp lệ: " + e.getMessage());
+        }
+        return null;
+    }
 
-            String rawAiJson = extractTextFromGeminiResponse(response.getBody());
-            return rehydratePlan(rawAiJson, idMap, mapper);
+    /** Gắn công thức thật vào thực đơn AI trả về (theo ID tạm); null nếu không phải thực đơn hợp lệ. */
+    public String rehydrate(PreparedPlan prepared, String rawJson) {
+        String plan = rehydratePlan(rawJson, prepared.idMap(), llmGateway.mapper());
+        return isValidPlan(plan) ? plan : null;
+    }
 
+    /** Thực đơn dự phòng khi LLM lỗi: MealPlanSolver giải trong JVM, không gọi LLM. */
+    public String fallbackPlan(PreparedPlan prepared) {
+        return mealPlanSolver.solve(prepared.request(), prepared.pool());
+    }
+
+    /** Thực đơn dự phòng giữ nguyên các ngày đã stream (fixedDays) và chỉ lập các ngày còn lại. */
+    public String fallbackPlan(PreparedPlan prepared, List<? extends JsonNode> fixedDays) {
+        return mealPlanSolver.solve(prepared.request(), prepared.pool(), fixedDays);
+    }
+
+    /**
+     * Thực đơn do MealPlanSolver chọn món, Gemini chỉ viết lời nhận xét (prompt + output ngắn hơn nhiều
+     * so với lập cả tuần). Gemini lỗi / mạch mở / bulkhead đầy thì giữ lời nhận xét tự sinh của solver.
+     */
+    public String narratedPlan(PreparedPlan prepared) {
+        String plan = fallbackPlan(prepared);
+        if (!llmGateway.isAvailable(LlmGateway.GEMINI)) return plan;
+        try {
+            ObjectNode root = (ObjectNode) llmGateway.mapper().readTree(plan);
+            StringBuilder menu = new StringBuilder();
+            for (JsonNode day : root.path("days")) {
+                menu.append(day.path("day").asText()).append(": ");
+                List<String> names = new ArrayList<>();
+                for (JsonNode meal : day.path("meals")) names.add(meal.path("recipeName").asText());
+                menu.append(String.join(", ", names))
+                        .append(" (").append(day.path("totalCalories").asInt()).append(" kcal)\n");
+            }
+            JsonNode targets = root.path("targets");
+            MealPlanRequest request = prepared.request();
+            String prompt = String.format(
+                    "Bạn là một chuyên gia dinh dưỡng AI. Thực đơn 7 ngày dưới đây đã được lập sẵn.\n" +
+                            "- Mục tiêu: %s\n" +
+                            "- Chế độ ăn/Dị ứng: %s, %s\n" +
+                            "- Mục tiêu mỗi ngày: %d kcal, đạm %d g, tinh bột %d g, chất béo %d g\n\n" +
+                            "THỰC ĐƠN:\n%s\n" +
+                            "Hãy viết 2-3 câu nhận xét và lời khuyên bằng TIẾNG VIỆT cho thực đơn này. " +
+                            "Chỉ trả về đoạn văn. No JSON. No markdown.",
+                    request.getGoal(), request.getDietaryPreference(), request.getAllergies(),
+                    targets.path("calories").asInt(), targets.path("protein").asInt(),
+                    targets.path("carb").asInt(), targets.path("fat").asInt(),
+                    menu);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            String response = llmGateway.post(LlmGateway.GEMINI, GEMINI_API_URL + apiKey, headers, requestBody(prompt));
+            String analysis = extractTextFromGeminiResponse(response);
+            if (!analysis.isEmpty() && !analysis.startsWith("{")) root.put("analysis", analysis);
+            return root.toString();
         } catch (Exception e) {
-            System.err.println("Gemini API Error: " + e.getMessage());
-            // Truyền cả lịch ăn của user vào hàm Fallback
-            return generateFallbackPlan(poolRecipes, mapper, vnSchedule);
+            System.err.println("Gemini narrative error: " + e.getMessage());
+            return plan;
+        }
+    }
+
+    private boolean isValidPlan(String planJson) {
+        try {
+            JsonNode root = llmGateway.mapper().readTree(planJson);
+            return root.path("days").isArray() && !root.path("days").isEmpty() && !root.has("error");
+        } catch (Exception e) {
+            return false;
         }
     }
 
@@ -134,28 +269,7 @@ public class GeminiService {
                 if (root.has("days")) {
                     for (JsonNode dayNode : root.get("days")) {
                         if (dayNode.has("meals")) {
-                            ArrayNode meals = (ArrayNode) dayNode.get("meals");
-                            for (int i = 0; i < meals.size(); i++) {
-                                ObjectNode meal = (ObjectNode) meals.get(i);
-                                if (meal.has("id")) {
-                                    int tempId = meal.get("id").asInt();
-                                    Recipe realRecipe = idMap.get(tempId);
-                                    if (realRecipe != null) {
-                                        meal.put("recipeName", realRecipe.getTitle());
-                                        meal.put("recipeId", realRecipe.getId());
-                                        String img = realRecipe.getMainImageUrl();
-                                        if (img == null || img.isEmpty()) {
-                                            img = "https://images.unsplash.com/photo-1546069901-ba9599a7e63c?w=600";
-                                        }
-                                        meal.put("image", img);
-                                        meal.put("calories", realRecipe.getNutrition() != null ? realRecipe.getNutrition().getCalories() : 0);
-                                    } else {
-                                        meal.put("recipeName", "Gợi ý món ăn");
-                                        meal.put("image", "https://images.unsplash.com/photo-1546069901-ba9599a7e63c?w=600");
-                                        meal.put("reason", "Không tìm thấy dữ liệu.");
-                                    }
-                                }
-                            }
+                            rehydrateMeals((ArrayNode) dayNode.get("meals"), idMap);
                         }
                     }
                 }
@@ -167,50 +281,71 @@ public class GeminiService {
         }
     }
 
-    private String extractTextFromGeminiResponse(String jsonResponse) {
+    private void rehydrateMeals(ArrayNode meals, Map<Integer, Recipe> idMap) {
+        for (int i = 0; i < meals.size(); i++) {
+            ObjectNode meal = (ObjectNode) meals.get(i);
+            if (meal.has("id")) {
+                int tempId = meal.get("id").asInt();
+                Recipe realRecipe = idMap.get(tempId);
+                if (realRecipe != null) {
+                    meal.put("recipeName", realRecipe.getTitle());
+                    meal.put("recipeId", realRecipe.getId());
+                    String img = realRecipe.getMainImageUrl();
+                    if (img == null || img.isEmpty()) {
+                        img = "https://images.unsplash.com/photo-1546069901-ba9599a7e63c?w=600";
+                    }
+                    meal.put("image", img);
+                    meal.put("calories", realRecipe.getNutrition() != null ? realRecipe.getNutrition().getCalories() : 0);
+                } else {
+                    meal.put("recipeName", "Gợi ý món ăn");
+                    meal.put("image", "https://images.unsplash.com/photo-1546069901-ba9599a7e63c?w=600");
+                    meal.put("reason", "Không tìm thấy dữ liệu.");
+                }
+            }
+        }
+    }
+
+    private String requestBody(String prompt) {
+        ObjectMapper mapper = llmGateway.mapper();
+        ObjectNode content = mapper.createObjectNode();
+        ArrayNode parts = content.putArray("parts");
+        parts.addObject().put("text", prompt);
+
+        ArrayNode contents = mapper.createArrayNode();
+        contents.add(mapper.createObjectNode().set("parts", parts));
+
+        ObjectNode requestBody = mapper.createObjectNode();
+        requestBody.set("contents", contents);
+        return requestBody.toString();
+    }
+
+    // Text của một sự kiện stream (nối mọi part); rỗng nếu sự kiện không có text (vd. chỉ có usageMetadata)
+    private String extractChunkText(String eventJson) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode root = mapper.readTree(jsonResponse);
-            String text = root.path("candidates").get(0).path("content").path("parts").get(0).path("text").asText();
-            return text.replace("```json", "").replace("```", "").trim();
+            StringBuilder text = new StringBuilder();
+            JsonNode parts = llmGateway.mapper().readTree(eventJson).path("candidates").path(0).path("content").path("parts");
+            for (JsonNode part : parts) text.append(part.path("text").asText(""));
+            return text.toString();
         } catch (Exception e) {
-            return "{\"error\": \"Lỗi phân tích AI\"}";
+            return "";
         }
     }
 
-    // --- FALLBACK CŨNG PHẢI LINH HOẠT ---
-    private String generateFallbackPlan(List<Recipe> pool, ObjectMapper mapper, List<String> vnSchedule) {
-        ObjectNode root = mapper.createObjectNode();
-        root.put("analysis", "Hệ thống AI đang bận. Đây là thực đơn ngẫu nhiên dựa trên lịch ăn bạn chọn.");
+    private String parseStringLiteral(String literal) {
+        try {
+            return llmGateway.mapper().readValue(literal, String.class);
+        } catch (Exception e) {
+            return literal.substring(1, literal.length() - 1);
+        }
+    }
 
-        ArrayNode days = root.putArray("days");
-        String[] weekDays = {"Thứ Hai", "Thứ Ba", "Thứ Tư", "Thứ Năm", "Thứ Sáu", "Thứ Bảy", "Chủ Nhật"};
-
-        int recipeIndex = 0;
-
-        for (String dayName : weekDays) {
-            ObjectNode day = days.addObject();
-            day.put("day", dayName);
-            ArrayNode meals = day.putArray("meals");
-
-            // CHỈ TẠO CÁC BỮA MÀ USER ĐÃ CHỌN
-            for (String time : vnSchedule) {
-                if (pool.isEmpty()) break;
-                Recipe chosen = pool.get(recipeIndex % pool.size());
-                recipeIndex++;
-
-                ObjectNode meal = meals.addObject();
-                meal.put("type", time); // Ví dụ: "Bữa Sáng" hoặc "Bữa Tối" tùy user chọn
-                meal.put("recipeId", chosen.getId());
-                meal.put("recipeName", chosen.getTitle());
-                meal.put("calories", chosen.getNutrition() != null ? chosen.getNutrition().getCalories() : 0);
-
-                String img = chosen.getMainImageUrl();
-                if (img == null || img.isEmpty()) img = "https://images.unsplash.com/photo-1546069901-ba9599a7e63c?w=600";
-                meal.put("image", img);
-                meal.put("reason", "Gợi ý thay thế");
-            }
+    private String extractTextFromGeminiResponse(String jsonResponse) {
+        try {
+            JsonNode root = llmGateway.mapper().readTree(jsonResponse);
+            String text = root.path("candidates").get(0).path("content").path("parts").get(0).path("text").asText();
+            return text.replace("```json", "").replace("```", "").trim();
+        } catch (Exception e) {
+            return "{\"error\": \"Lỗi phân tích AI\"}";
         }
-        return root.toString();
     }
-}
\ No newline at end of file
+}
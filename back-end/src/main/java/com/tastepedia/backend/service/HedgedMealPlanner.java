@@ -0,0 +1,152 @@
+package com.tastepedia.backend.service;
+
+import com.tastepedia.backend.model.Recipe;
+import com.tastepedia.backend.payload.MealPlanRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lập thực đơn với hedging Gemini -> Grok.
+ * Gemini được hỏi trước; nếu quá ngưỡng trễ (p95 độ trễ Gemini gần đây) mà chưa có kết quả,
+ * hoặc Gemini lỗi sớm, thì hỏi thêm Grok với cùng prompt trên một virtual thread.
+ * Thực đơn hợp lệ đến trước được dùng, lời gọi còn lại bị huỷ. Vì chỉ ~5% yêu cầu vượt p95,
+ * chi phí trung bình gần như không đổi nhưng đuôi độ trễ bị cắt.
+ * Khi Gemini quá tải (số lời gọi đang chạy chạm ngưỡng, hoặc mạch mở), MealPlanSolver chọn món
+ * ngay trong JVM và Gemini chỉ viết lời nhận xét (ai.meal-plan.planner=auto | llm | solver).
+ */
+@Service
+public class HedgedMealPlanner {
+
+    // Ngưỡng hedging khi chưa đủ mẫu độ trễ, và khoảng kẹp cho ngưỡng tính từ p95
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 10_000;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 3_000;
+    private static final long MAX_HEDGE_DELAY_MILLIS = 20_000;
+
+    @Autowired
+    private GeminiService geminiService;
+
+    @Autowired
+    private GrokService grokService;
+
+    @Autowired
+    private LlmGateway llmGateway;
+
+    @Value("${ai.meal-plan.hedging:true}")
+    private boolean hedgingEnabled;
+
+    @Value("${ai.meal-plan.planner:auto}")
+    private String plannerMode;
+
+    // Chế độ auto: số lời gọi Gemini đang chạy từ ngưỡng này trở lên thì dùng solver (mặc định = bulkhead - 2)
+    @Value("${ai.meal-plan.solver-in-flight-threshold:6}")
+    private int solverInFlightThreshold;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+    private final AtomicLong geminiWins = new AtomicLong();
+    private final AtomicLong grokWins = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong solverPlans = new AtomicLong();
+
+    public String generateMealPlan(MealPlanRequest request, List<Recipe> poolRecipes) {
+        if (preferSolver()) {
+            solverPlans.incrementAndGet();
+            return geminiService.narratedPlan(geminiService.prepare(request, poolRecipes));
+        }
+        if (!hedgingEnabled) return geminiService.generateMealPlan(request, poolRecipes);
+        requests.incrementAndGet();
+
+        GeminiService.PreparedPlan prepared = geminiService.prepare(request, poolRecipes);
+        CompletionService<Attempt> race = new ExecutorCompletionService<>(executor);
+        Future<Attempt> primary = race.submit(() -> new Attempt(LlmGateway.GEMINI, geminiService.tryGenerate(prepared)));
+        Future<Attempt> hedge = null;
+        int running = 1;
+        try {
+            Future<Attempt> done = race.poll(hedgeDelayMillis(), TimeUnit.MILLISECONDS);
+            if (done != null) {
+                running--;
+                String plan = done.get().plan();
+                if (plan != null) return won(done.get());
+                failovers.incrementAndGet();
+            } else {
+                hedges.incrementAndGet();
+            }
+
+            // Gemini chậm quá p95 hoặc đã lỗi -> hỏi Grok với cùng prompt, lấy thực đơn hợp lệ đến trước
+            if (llmGateway.isAvailable(LlmGateway.GROK)) {
+                hedge = race.submit(() -> new Attempt(LlmGateway.GROK,
+                        grokRehydrated(prepared, grokService.tryGenerate(prepared.prompt()))));
+                running++;
+            }
+            while (running > 0) {
+                Attempt attempt = race.take().get();
+                running--;
+                if (attempt.plan() != null) return won(attempt);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Hedged meal plan error: " + e.getMessage());
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) hedge.cancel(true);
+        }
+        fallbacks.incrementAndGet();
+        return geminiService.fallbackPlan(prepared);
+    }
+
+    /** Có nên để MealPlanSolver chọn món (thay vì LLM) cho yêu cầu lúc này không. */
+    public boolean preferSolver() {
+        if ("solver".equalsIgnoreCase(plannerMode)) return true;
+        if ("llm".equalsIgnoreCase(plannerMode)) return false;
+        return !llmGateway.isAvailable(LlmGateway.GEMINI)
+                || llmGateway.inFlight(LlmGateway.GEMINI) >= Math.min(solverInFlightThreshold, llmGateway.maxConcurrent(LlmGateway.GEMINI));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", hedgingEnabled);
+        stats.put("plannerMode", plannerMode);
+        stats.put("solverPlans", solverPlans.get());
+        stats.put("hedgeDelayMs", hedgeDelayMillis());
+        stats.put("requests", requests.get());
+        stats.put("hedges", hedges.get());
+        stats.put("failovers", failovers.get());
+        stats.put("geminiWins", geminiWins.get());
+        stats.put("grokWins", grokWins.get());
+        stats.put("fallbacks", fallbacks.get());
+        return stats;
+    }
+
+    private record Attempt(String provider, String plan) {}
+
+    private String won(Attempt attempt) {
+        (LlmGateway.GEMINI.equals(attempt.provider()) ? geminiWins : grokWins).incrementAndGet();
+        return attempt.plan();
+    }
+
+    private String grokRehydrated(GeminiService.PreparedPlan prepared, String rawJson) {
+        return rawJson == null ? null : geminiService.rehydrate(prepared, rawJson);
+    }
+
+    private long hedgeDelayMillis() {
+        long p95 = llmGateway.latencyPercentile(LlmGateway.GEMINI, 0.95);
+        if (p95 < 0) return DEFAULT_HEDGE_DELAY_MILLIS;
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, Math.min(p95, MAX_HEDGE_DELAY_MILLIS));
+    }
+}
@@ -0,0 +1,386 @@
+package com.tastepedia.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Cổng gọi chung cho các LLM (Gemini, Grok).
+ * - Một HttpClient dùng chung (giữ kết nối keep-alive, tái sử dụng giữa các lần gọi) + timeout riêng từng provider.
+ * - Bulkhead: semaphore giới hạn số lời gọi đồng thời mỗi provider, để provider chậm không giữ hết thread Tomcat.
+ * - Circuit breaker: lỗi liên tiếp quá ngưỡng -> mở mạch, từ chối ngay (service gọi chuyển sang thực đơn dự phòng);
+ *   hết thời gian chờ -> cho một lời gọi thử, thành công thì đóng mạch.
+ * - Số liệu độ trễ / lỗi theo provider cho trang admin.
+ */
+@Service
+public class LlmGateway {
+
+    public static final String GEMINI = "gemini";
+    public static final String GROK = "grok";
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final long BULKHEAD_WAIT_MILLIS = 200;
+
+    // Giới hạn tổng cho một luồng phản hồi (bằng timeout SseEmitter của MealPlanStreamer)
+    private static final Duration STREAM_DEADLINE = Duration.ofSeconds(120);
+    private static final long WATCHDOG_PERIOD_MILLIS = 1_000;
+
+    static final int FAILURE_THRESHOLD = 5;
+    static final long OPEN_MILLIS = 30_000;
+
+    // Số mẫu độ trễ gần nhất giữ lại để tính phân vị
+    private static final int LATENCY_SAMPLES = 256;
+
+    /** Dùng chung cho mọi service LLM (ObjectMapper thread-safe sau khi cấu hình). */
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(CONNECT_TIMEOUT)
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+
+    private final ScheduledExecutorService watchdogScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "llm-stream-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Provider> providers = new LinkedHashMap<>();
+
+    // Đồng hồ của circuit breaker; test truyền đồng hồ giả để khỏi chờ OPEN_MILLIS
+    private final LongSupplier clock;
+
+    public LlmGateway() {
+        this(System::currentTimeMillis);
+    }
+
+    LlmGateway(LongSupplier clock) {
+        this.clock = clock;
+        providers.put(GEMINI, new Provider(GEMINI, Duration.ofSeconds(40), 8));
+        providers.put(GROK, new Provider(GROK, Duration.ofSeconds(40), 4));
+    }
+
+    public ObjectMapper mapper() {
+        return mapper;
+    }
+
+    /** Mạch của provider đang cho phép gọi (đóng, hoặc đã hết thời gian mở). */
+    public boolean isAvailable(String provider) {
+        return providers.get(provider).breaker.peek();
+    }
+
+    /** Số lời gọi đang chạy và giới hạn bulkhead của provider. */
+    public int inFlight(String provider) {
+        Provider p = providers.get(provider);
+        return p.maxConcurrent - p.bulkhead.availablePermits();
+    }
+
+    public int maxConcurrent(String provider) {
+        return providers.get(provider).maxConcurrent;
+    }
+
+    /**
+     * POST body JSON tới provider, trả về body phản hồi.
+     * Ném IllegalStateException khi mạch đang mở hoặc bulkhead đầy; lỗi HTTP / timeout được ném lại nguyên vẹn.
+     */
+    public String post(String provider, String url, HttpHeaders headers, String body) {
+        Provider p = providers.get(provider);
+        return guarded(provider, p, () ->
+                p.restTemplate.exchange(url, HttpMethod.POST, new HttpEntity<>(body, headers), String.class).getBody());
+    }
+
+    /**
+     * POST và đọc phản hồi dạng luồng theo từng dòng (vd. Server-Sent Events của Gemini),
+     * gọi onLine ngay khi mỗi dòng tới. Cùng bulkhead / circuit breaker / số liệu với post();
+     * độ trễ được tính tới khi đọc xong luồng.
+     * timeout của HttpRequest chỉ áp tới lúc nhận header, nên thân luồng có watchdog riêng:
+     * im lặng quá readTimeout hoặc tổng thời gian quá STREAM_DEADLINE thì ngắt và tính là lỗi timeout.
+     */
+    public void stream(String provider, String url, HttpHeaders headers, String body, Consumer<String> onLine) {
+        Provider p = providers.get(provider);
+        guarded(provider, p, () -> {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(p.readTimeout)
+                    .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8));
+            headers.forEach((name, values) -> values.forEach(v -> request.header(name, v)));
+            StreamWatchdog watchdog = new StreamWatchdog(Thread.currentThread(), p.readTimeout.toMillis());
+            ScheduledFuture<?> check = watchdogScheduler.scheduleWithFixedDelay(
+                    watchdog::check, WATCHDOG_PERIOD_MILLIS, WATCHDOG_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            try {
+                HttpResponse<Stream<String>> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofLines());
+                try (Stream<String> lines = response.body()) {
+                    if (response.statusCode() / 100 != 2) {
+                        throw new IllegalStateException(provider + " HTTP " + response.statusCode());
+                    }
+                    lines.forEach(line -> {
+                        watchdog.touch();
+                        onLine.accept(line);
+                    });
+                }
+            } catch (IOException e) {
+                if (watchdog.disarm()) throw watchdog.timeout(provider);
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                if (watchdog.disarm()) throw watchdog.timeout(provider);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(provider + " stream interrupted", e);
+            } catch (RuntimeException e) {
+                if (watchdog.disarm()) throw watchdog.timeout(provider);
+                throw e;
+            } finally {
+                check.cancel(false);
+                // Watchdog ngắt đúng lúc luồng vừa đọc xong: xoá cờ interrupt để không rò sang việc sau
+                if (watchdog.disarm()) Thread.interrupted();
+            }
+            return null;
+        });
+    }
+
+    private <T> T guarded(String provider, Provider p, Supplier<T> call) {
+        if (!p.breaker.tryAcquire()) {
+            p.rejectedByBreaker.incrementAndGet();
+            throw new IllegalStateException(provider + " circuit open");
+        }
+        boolean permitted;
+        try {
+            permitted = p.bulkhead.tryAcquire(BULKHEAD_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            permitted = false;
+        }
+        if (!permitted) {
+            // Không tính là lỗi của provider, nhưng phải trả lại lượt thử nếu mạch đang half-open
+            p.breaker.release();
+            p.rejectedByBulkhead.incrementAndGet();
+            throw new IllegalStateException(provider + " bulkhead full");
+        }
+
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            p.recordLatency((System.nanoTime() - start) / 1_000_000);
+            p.successes.incrementAndGet();
+            p.breaker.onSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            if (isCancellation(e)) {
+                // Bên gọi huỷ (vd. HedgedMealPlanner cancel(true) nhánh thua): không phải lỗi của provider,
+                // không ghi độ trễ, chỉ trả lại lượt thử half-open
+                p.cancelled.incrementAndGet();
+                p.breaker.release();
+                throw e;
+            }
+            p.recordLatency((System.nanoTime() - start) / 1_000_000);
+            p.failures.incrementAndGet();
+            p.breaker.onFailure();
+            throw e;
+        } finally {
+            p.bulkhead.release();
+        }
+    }
+
+    private static boolean isCancellation(Throwable e) {
+        if (Thread.currentThread().isInterrupted()) return true;
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            // Không xét InterruptedIOException: SocketTimeoutException là lớp con nhưng là lỗi thật
+            if (t instanceof InterruptedException || t instanceof CancellationException) return true;
+        }
+        return false;
+    }
+
+    /** Độ trễ phân vị p (0..1) của các lời gọi gần đây, -1 nếu chưa có mẫu. */
+    public long latencyPercentile(String provider, double p) {
+        return providers.get(provider).percentile(p);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        providers.forEach((name, p) -> stats.put(name, p.stats()));
+        return stats;
+    }
+
+    private final class Provider {
+        final RestTemplate restTemplate;
+        final Duration readTimeout;
+        final int maxConcurrent;
+        final Semaphore bulkhead;
+        final CircuitBreaker breaker;
+
+        final AtomicLong successes = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        final AtomicLong rejectedByBreaker = new AtomicLong();
+        final AtomicLong rejectedByBulkhead = new AtomicLong();
+
+        // Vòng tròn các mẫu độ trễ gần nhất (ms)
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private int latencyCount = 0;
+        private int latencyNext = 0;
+
+        Provider(String name, Duration readTimeout, int maxConcurrent) {
+            JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+            factory.setReadTimeout(readTimeout);
+            this.restTemplate = new RestTemplate(factory);
+            this.readTimeout = readTimeout;
+            this.maxConcurrent = maxConcurrent;
+            this.bulkhead = new Semaphore(maxConcurrent);
+            this.breaker = new CircuitBreaker(name, clock);
+        }
+
+        synchronized void recordLatency(long millis) {
+            latencies[latencyNext] = millis;
+            latencyNext = (latencyNext + 1) % LATENCY_SAMPLES;
+            latencyCount = Math.min(latencyCount + 1, LATENCY_SAMPLES);
+        }
+
+        synchronized long percentile(double p) {
+            if (latencyCount == 0) return -1;
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p * latencyCount) - 1;
+            return sorted[Math.max(0, Math.min(index, latencyCount - 1))];
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("circuit", breaker.state());
+            stats.put("inFlight", maxConcurrent - bulkhead.availablePermits());
+            stats.put("maxConcurrent", maxConcurrent);
+            stats.put("readTimeoutMs", readTimeout.toMillis());
+            stats.put("successes", successes.get());
+            stats.put("failures", failures.get());
+            stats.put("cancelled", cancelled.get());
+            stats.put("rejectedByBreaker", rejectedByBreaker.get());
+            stats.put("rejectedByBulkhead", rejectedByBulkhead.get());
+            stats.put("latencyP50Ms", percentile(0.5));
+            stats.put("latencyP95Ms", percentile(0.95));
+            stats.put("latencyMaxMs", percentile(1.0));
+            return stats;
+        }
+    }
+
+    // Ngắt luồng đọc khi im lặng quá idleMillis hoặc chạy quá STREAM_DEADLINE; sau disarm() thì không ngắt nữa
+    private static final class StreamWatchdog {
+        private final Thread reader;
+        private final long idleMillis;
+        private final long startedAt = System.currentTimeMillis();
+        private volatile long lastActivity = startedAt;
+        private boolean fired = false;
+        private boolean disarmed = false;
+
+        StreamWatchdog(Thread reader, long idleMillis) {
+            this.reader = reader;
+            this.idleMillis = idleMillis;
+        }
+
+        void touch() {
+            lastActivity = System.currentTimeMillis();
+        }
+
+        synchronized void check() {
+            if (fired || disarmed) return;
+            long now = System.currentTimeMillis();
+            if (now - lastActivity > idleMillis || now - startedAt > STREAM_DEADLINE.toMillis()) {
+                fired = true;
+                reader.interrupt();
+            }
+        }
+
+        /** Tắt watchdog, trả về true nếu nó đã ngắt luồng đọc. */
+        synchronized boolean disarm() {
+            disarmed = true;
+            return fired;
+        }
+
+        UncheckedIOException timeout(String provider) {
+            Thread.interrupted();
+            long elapsed = System.currentTimeMillis() - startedAt;
+            return new UncheckedIOException(new HttpTimeoutException(provider + " stream timed out after " + elapsed + " ms"));
+        }
+    }
+
+    // CLOSED -> (FAILURE_THRESHOLD lỗi liên tiếp) -> OPEN -> (sau OPEN_MILLIS) -> HALF_OPEN: một lời gọi thử
+    private static final class CircuitBreaker {
+        private final String name;
+        private final LongSupplier clock;
+        private String state = "CLOSED";
+        private int consecutiveFailures = 0;
+        private long openedAt = 0;
+        private boolean trialInFlight = false;
+
+        CircuitBreaker(String name, LongSupplier clock) {
+            this.name = name;
+            this.clock = clock;
+        }
+
+        synchronized boolean peek() {
+            return !state.equals("OPEN") || clock.getAsLong() - openedAt >= OPEN_MILLIS;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state.equals("OPEN")) {
+                if (clock.getAsLong() - openedAt < OPEN_MILLIS) return false;
+                state = "HALF_OPEN";
+            }
+            if (state.equals("HALF_OPEN")) {
+                if (trialInFlight) return false;
+                trialInFlight = true;
+            }
+            return true;
+        }
+
+        synchronized void release() {
+            trialInFlight = false;
+        }
+
+        synchronized void onSuccess() {
+            state = "CLOSED";
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        }
+
+        synchronized void onFailure() {
+            consecutiveFailures++;
+            if (state.equals("HALF_OPEN") || consecutiveFailures >= FAILURE_THRESHOLD) {
+                if (!state.equals("OPEN")) {
+                    System.err.println("LLM circuit opened for " + name + " after " + consecutiveFailures + " consecutive failures");
+                }
+                state = "OPEN";
+                openedAt = clock.getAsLong();
+            }
+            trialInFlight = false;
+        }
+
+        synchronized String state() {
+            return state;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.tastepedia.backend.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Gộp các lời gọi LLM giống hệt nhau đang chạy đồng thời (singleflight).
+ * Yêu cầu đầu tiên của một khoá thực sự gọi provider; các yêu cầu cùng khoá đến trong lúc đó
+ * chỉ chờ và nhận chung kết quả. Khi lời gọi xong, khoá được gỡ ngay: yêu cầu sau đó sẽ gọi mới
+ * (hoặc trúng MealPlanCache), nên đây không phải là cache.
+ */
+@Service
+public class LlmRequestCoalescer {
+
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    // Theo namespace (vd. "meal-plan"): số lời gọi thật / số yêu cầu được gộp vào lời gọi đang chạy
+    private final Map<String, AtomicLong> calls = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> coalesced = new ConcurrentHashMap<>();
+
+    /**
+     * Chạy call cho (namespace, key), hoặc chờ lời gọi cùng khoá đang chạy.
+     * key phải xác định đầy đủ kết quả (vd. khoá chuẩn hoá của MealPlanRequest + phiên bản danh mục).
+     */
+    public String execute(String namespace, String key, Supplier<String> call) {
+        String flightKey = namespace + ":" + key;
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(flightKey, mine);
+        if (running != null) {
+            counter(coalesced, namespace).incrementAndGet();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                throw e;
+            }
+        }
+
+        counter(calls, namespace).incrementAndGet();
+        try {
+            String result = call.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, mine);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", inFlight.size());
+        for (String namespace : calls.keySet()) {
+            long callCount = calls.get(namespace).get();
+            long coalescedCount = counter(coalesced, namespace).get();
+            Map<String, Object> perNamespace = new LinkedHashMap<>();
+            perNamespace.put("calls", callCount);
+            perNamespace.put("coalesced", coalescedCount);
+            perNamespace.put("savedRate", callCount + coalescedCount == 0 ? 0.0
+                    : (double) coalescedCount / (callCount + coalescedCount));
+            stats.put(namespace, perNamespace);
+        }
+        return stats;
+    }
+
+    private static AtomicLong counter(Map<String, AtomicLong> counters, String namespace) {
+        return counters.computeIfAbsent(namespace, n -> new AtomicLong());
+    }
+}
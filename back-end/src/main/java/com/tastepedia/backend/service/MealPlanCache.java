@@ -0,0 +1,209 @@
+package com.tastepedia.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.tastepedia.backend.payload.MealPlanRequest;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache LRU + TTL cho kết quả /api/ai/meal-plan (mỗi lần gọi Gemini mất vài giây).
+ * Khoá = SHA-256 của yêu cầu đã chuẩn hoá (mục tiêu, chế độ ăn, dị ứng, món không thích, dụng cụ,
+ * ẩm thực, lịch ăn) + phiên bản danh mục; phiên bản tăng mỗi khi có công thức thay đổi,
+ * nên kết quả tính trên danh mục cũ không bao giờ được trả ra.
+ * Chỉ cache thực đơn do AI trả về, không cache thực đơn của MealPlanSolver, thực đơn ghép dự phòng hay lỗi.
+ */
+@Service
+public class MealPlanCache {
+
+    private static final int MAX_ENTRIES = 200;
+    private static final long TTL_MILLIS = 60 * 60 * 1000L;
+
+    /** Khoá cache; lấy trước khi gọi AI, truyền lại cho put(). */
+    public record Key(String requestHash, long catalogVersion) {}
+
+    private record Entry(String planJson, long storedAt) {}
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() > MAX_ENTRIES) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private long catalogVersion = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong reshuffles = new AtomicLong();
+
+    public synchronized Key keyOf(MealPlanRequest request) {
+        return new Key(sha256(canonicalForm(request)), catalogVersion);
+    }
+
+    /** Thực đơn đã cache cho khoá, null nếu chưa có hoặc đã hết hạn. */
+    public synchronized String get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.storedAt() > TTL_MILLIS) {
+            entries.remove(key);
+            expirations.incrementAndGet();
+            entry = null;
+        }
+        if (entry != null) hits.incrementAndGet();
+        else misses.incrementAndGet();
+        return entry != null ? entry.planJson() : null;
+    }
+
+    public synchronized void put(Key key, String planJson) {
+        // Danh mục đã thay đổi trong lúc gọi AI -> pool có thể đã cũ, bỏ qua
+        if (key.catalogVersion() != catalogVersion) return;
+        if (!isCacheable(planJson)) {
+            skipped.incrementAndGet();
+            return;
+        }
+        entries.put(key, new Entry(planJson, System.currentTimeMillis()));
+    }
+
+    @EventListener
+    public synchronized void onRecipeChanged(RecipeChangedEvent event) {
+        catalogVersion++;
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    /**
+     * Xáo lại thực đơn đã cache cho từng người dùng mà không gọi lại AI:
+     * hoán vị các món cùng loại bữa (Bữa Sáng với Bữa Sáng...) giữa các ngày.
+     * Mọi món đều đến từ pool đã lọc an toàn của cùng yêu cầu nên vẫn hợp lệ.
+     */
+    public String reshuffle(String planJson) {
+        try {
+            JsonNode root = mapper.readTree(planJson);
+            Map<String, List<ArrayNode>> slotArrays = new LinkedHashMap<>();
+            Map<String, List<Integer>> slotIndexes = new LinkedHashMap<>();
+            Map<String, List<JsonNode>> mealsByType = new LinkedHashMap<>();
+            for (JsonNode day : root.path("days")) {
+                if (!(day.get("meals") instanceof ArrayNode meals)) continue;
+                for (int i = 0; i < meals.size(); i++) {
+                    String type = meals.get(i).path("type").asText("");
+                    slotArrays.computeIfAbsent(type, t -> new ArrayList<>()).add(meals);
+                    slotIndexes.computeIfAbsent(type, t -> new ArrayList<>()).add(i);
+                    mealsByType.computeIfAbsent(type, t -> new ArrayList<>()).add(meals.get(i));
+                }
+            }
+            for (Map.Entry<String, List<JsonNode>> e : mealsByType.entrySet()) {
+                List<JsonNode> meals = e.getValue();
+                Collections.shuffle(meals);
+                for (int k = 0; k < meals.size(); k++) {
+                    slotArrays.get(e.getKey()).get(k).set(slotIndexes.get(e.getKey()).get(k), meals.get(k));
+                }
+            }
+            reshuffles.incrementAndGet();
+            return root.toString();
+        } catch (Exception e) {
+            return planJson;
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", entries.size());
+        stats.put("maxSize", MAX_ENTRIES);
+        stats.put("ttlSeconds", TTL_MILLIS / 1000);
+        stats.put("catalogVersion", catalogVersion);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("expirations", expirations.get());
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("skipped", skipped.get());
+        stats.put("reshuffles", reshuffles.get());
+        return stats;
+    }
+
+    /**
+     * Dạng chuẩn của yêu cầu: chỉ các trường ảnh hưởng tới thực đơn, chữ thường, danh sách sắp xếp,
+     * "All" = không chọn ẩm thực. Hai yêu cầu cho cùng thực đơn thì cho cùng chuỗi.
+     */
+    static String canonicalForm(MealPlanRequest request) {
+        String dislikes = request.getDislikedIngredients();
+        return "goal=" + lower(request.getGoal())
+                // Mức vận động và ngân sách quyết định mục tiêu calo / giới hạn giá của MealPlanSolver
+                + "|activity=" + lower(request.getActivityLevel())
+                + "|budget=" + lower(request.getBudget())
+                + "|diet=" + lower(request.getDietaryPreference())
+                + "|allergies=" + sortedLower(request.getAllergies())
+                + "|dislikes=" + sortedLower(dislikes == null ? null : List.of(dislikes.split(",")))
+                + "|tools=" + sortedLower(request.getKitchenTools())
+                + "|cuisine=" + ("all".equals(lower(request.getPreferredCuisine())) ? "" : lower(request.getPreferredCuisine()))
+                // Lịch ăn giữ nguyên hoa thường: buffet pool so khớp "Breakfast" chính xác
+                + "|schedule=" + (request.getMealSchedule() == null ? "-" : sorted(request.getMealSchedule()));
+    }
+
+    private boolean isCacheable(String planJson) {
+        try {
+            JsonNode root = mapper.readTree(planJson);
+            return root.path("days").isArray() && !root.path("days").isEmpty()
+                    && !root.has("error")
+                    // Thực đơn của solver tính lại trong vài ms; không cache để thực đơn AI thay thế ngay khi hết tải
+                    && !MealPlanSolver.SOURCE.equals(root.path("source").asText())
+                    && !GeminiService.FALLBACK_ANALYSIS.equals(root.path("analysis").asText());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static String lower(String value) {
+        return value == null ? "" : value.trim().toLowerCase();
+    }
+
+    private static String sortedLower(List<String> values) {
+        if (values == null) return "";
+        List<String> lowered = new ArrayList<>();
+        for (String v : values) lowered.add(lower(v));
+        return sorted(lowered);
+    }
+
+    private static String sorted(List<String> values) {
+        TreeSet<String> set = new TreeSet<>();
+        for (String v : values) {
+            if (v != null && !v.trim().isEmpty()) set.add(v.trim());
+        }
+        return String.join(",", set);
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.tastepedia.backend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Hàng đợi job lập thực đơn: /meal-plan/jobs trả jobId ngay, không giữ thread Tomcat trong lúc chờ LLM.
+ * Job chạy trên pool cố định WORKERS thread với hàng đợi tối đa QUEUE_CAPACITY; đầy thì từ chối ngay
+ * (controller trả 503) thay vì xếp hàng vô hạn. Xong thì đẩy kết quả qua STOMP tới /topic/ai/{jobId};
+ * client mất kết nối WebSocket vẫn lấy được qua endpoint poll trong JOB_TTL_MILLIS.
+ */
+@Service
+public class MealPlanJobService {
+
+    // Bằng bulkhead Gemini trong LlmGateway: thêm worker cũng chỉ chờ semaphore
+    private static final int WORKERS = 8;
+    private static final int QUEUE_CAPACITY = 50;
+    private static final long JOB_TTL_MILLIS = 30 * 60 * 1000L;
+    private static final long SWEEP_INTERVAL_MILLIS = 60 * 1000L;
+
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private LlmGateway llmGateway;
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            WORKERS, WORKERS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+            runnable -> {
+                Thread thread = new Thread(runnable, "meal-plan-job-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    // Dọn job hết hạn định kỳ, kể cả khi không còn ai submit (giờ thấp điểm)
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "meal-plan-job-sweep");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MealPlanJobService() {
+        sweeper.scheduleWithFixedDelay(this::evictExpired, SWEEP_INTERVAL_MILLIS, SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong queueWaitMillisTotal = new AtomicLong();
+
+    private static final class Job {
+        final String id;
+        final long submittedAt = System.currentTimeMillis();
+        volatile String status = QUEUED;
+        volatile String planJson;
+        volatile long finishedAt;
+
+        Job(String id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Đưa job vào hàng đợi, trả về jobId.
+     * Ném RejectedExecutionException khi hàng đợi đã đầy.
+     */
+    public String submit(Supplier<String> planSupplier) {
+        Job job = new Job(UUID.randomUUID().toString());
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job, planSupplier));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            rejected.incrementAndGet();
+            throw e;
+        }
+        submitted.incrementAndGet();
+        return job.id;
+    }
+
+    /** Trạng thái job cho endpoint poll (cùng nội dung với tin nhắn WebSocket), null nếu không có / đã hết hạn. */
+    public Map<String, Object> status(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) return null;
+        if (isExpired(job, System.currentTimeMillis())) {
+            // Chưa tới lượt quét: vẫn coi như đã hết hạn
+            jobs.remove(jobId, job);
+            return null;
+        }
+        return payload(job);
+    }
+
+    public static String topicOf(String jobId) {
+        return "/topic/ai/" + jobId;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", WORKERS);
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queueCapacity", QUEUE_CAPACITY);
+        stats.put("submitted", submitted.get());
+        stats.put("rejected", rejected.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        long started = completed.get() + failed.get();
+        stats.put("avgQueueWaitMs", started == 0 ? -1 : queueWaitMillisTotal.get() / started);
+        stats.put("retainedJobs", jobs.size());
+        return stats;
+    }
+
+    private void run(Job job, Supplier<String> planSupplier) {
+        queueWaitMillisTotal.addAndGet(System.currentTimeMillis() - job.submittedAt);
+        job.status = RUNNING;
+        try {
+            job.planJson = planSupplier.get();
+            job.status = DONE;
+            completed.incrementAndGet();
+        } catch (Exception e) {
+            System.err.println("Meal plan job " + job.id + " failed: " + e.getMessage());
+            job.status = FAILED;
+            failed.incrementAndGet();
+        }
+        job.finishedAt = System.currentTimeMillis();
+        try {
+            notificationService.pushMealPlanJob(topicOf(job.id), payload(job));
+        } catch (Exception e) {
+            // Không đẩy được thì client vẫn poll được
+            System.err.println("Meal plan job " + job.id + " push failed: " + e.getMessage());
+        }
+    }
+
+    private Map<String, Object> payload(Job job) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("jobId", job.id);
+        payload.put("status", job.status);
+        if (job.planJson != null) {
+            try {
+                // Map thường thay vì JsonNode để converter nào của STOMP / MVC cũng serialize đúng
+                payload.put("plan", llmGateway.mapper().readValue(job.planJson, Map.class));
+            } catch (Exception e) {
+                payload.put("plan", job.planJson);
+            }
+        }
+        if (job.status.equals(FAILED)) payload.put("error", "Không thể tạo thực đơn lúc này.");
+        return payload;
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(job -> isExpired(job, now));
+    }
+
+    private static boolean isExpired(Job job, long now) {
+        return job.finishedAt > 0 && now - job.finishedAt > JOB_TTL_MILLIS;
+    }
+}
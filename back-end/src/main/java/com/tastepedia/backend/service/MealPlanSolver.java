@@ -0,0 +1,479 @@
+package com.tastepedia.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.tastepedia.backend.model.Recipe;
+import com.tastepedia.backend.payload.MealPlanRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Lập thực đơn 7 ngày ngay trong JVM, không gọi LLM: chọn món từ buffet pool đã lọc an toàn
+ * để mỗi ngày sát mục tiêu calo / đạm / tinh bột / chất béo suy ra từ goal + activityLevel,
+ * không lặp món trong REPEAT_WINDOW_DAYS ngày liên tiếp, và không vượt ngân sách (theo totalCost).
+ * Tham lam theo từng bữa, sau đó tìm kiếm cục bộ (thay một món / đổi món cùng bữa giữa hai ngày)
+ * tới khi không còn bước nào làm giảm hàm phạt. Cùng pool + yêu cầu thì cho cùng kết quả, chạy trong vài ms.
+ */
+@Service
+public class MealPlanSolver {
+
+    public static final String SOURCE = "solver";
+
+    static final int DAYS = 7;
+    static final int REPEAT_WINDOW_DAYS = 3;
+    private static final int MAX_PASSES = 30;
+    private static final String[] WEEK_DAYS = {"Thứ Hai", "Thứ Ba", "Thứ Tư", "Thứ Năm", "Thứ Sáu", "Thứ Bảy", "Chủ Nhật"};
+    private static final String DEFAULT_IMAGE = "https://images.unsplash.com/photo-1546069901-ba9599a7e63c?w=600";
+
+    // Trọng số hàm phạt: lặp món gần như là ràng buộc cứng, chỉ chấp nhận khi pool quá nhỏ
+    private static final double W_CALORIES = 4.0;
+    private static final double W_MACROS = 2.0;
+    private static final double W_SLOT = 1.0;
+    private static final double W_BUDGET = 3.0;
+    private static final double W_UNKNOWN = 0.3;
+    private static final double W_REPEAT = 100.0;
+
+    private static final double EPSILON = 1e-9;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final AtomicLong solves = new AtomicLong();
+    private final AtomicLong solveMicrosTotal = new AtomicLong();
+    private final AtomicLong repeatsAccepted = new AtomicLong();
+
+    // Bữa trong lịch ăn: tên gửi từ frontend, tên tiếng Việt trong thực đơn, tỉ lệ calo trong ngày, tag mealCourse khớp
+    enum Slot {
+        BREAKFAST("Breakfast", "Bữa Sáng", 0.25, Set.of("breakfast", "sáng", "bữa sáng")),
+        LUNCH("Lunch", "Bữa Trưa", 0.35, Set.of("lunch", "dinner", "trưa", "tối", "bữa trưa", "bữa tối")),
+        DINNER("Dinner", "Bữa Tối", 0.30, Set.of("lunch", "dinner", "trưa", "tối", "bữa trưa", "bữa tối")),
+        SNACK("Snack", "Bữa Phụ", 0.10, Set.of("snack", "phụ", "bữa phụ"));
+
+        final String name;
+        final String vnName;
+        final double share;
+        final Set<String> courses;
+
+        Slot(String name, String vnName, double share, Set<String> courses) {
+            this.name = name;
+            this.vnName = vnName;
+            this.share = share;
+            this.courses = courses;
+        }
+
+        static Slot of(String name) {
+            for (Slot slot : values()) {
+                if (slot.name.equalsIgnoreCase(name)) return slot;
+            }
+            return null;
+        }
+
+        // Nhận cả tên tiếng Việt ("type" của bữa trong thực đơn)
+        static Slot ofType(String type) {
+            for (Slot slot : values()) {
+                if (slot.vnName.equalsIgnoreCase(type)) return slot;
+            }
+            return of(type);
+        }
+    }
+
+    /** Mục tiêu dinh dưỡng mỗi ngày (kcal, gram). */
+    public record Targets(double calories, double protein, double carb, double fat) {}
+
+    public String solve(MealPlanRequest request, List<Recipe> pool) {
+        return solve(request, pool, List.of());
+    }
+
+    /**
+     * Như solve(request, pool) nhưng giữ nguyên fixedDays (các ngày đầu tuần đã gửi cho người dùng, dạng JSON
+     * của thực đơn) và chỉ lập các ngày sau đó. Các ngày cố định vẫn nằm trong cửa sổ chống lặp món,
+     * nên chỗ nối không lặp món của mấy ngày cuối đã gửi.
+     */
+    public String solve(MealPlanRequest request, List<Recipe> pool, List<? extends JsonNode> fixedDays) {
+        long start = System.nanoTime();
+        Problem problem = new Problem(request, pool, fixedDays);
+        int[][] plan = problem.greedy();
+        problem.improve(plan);
+        String json = problem.toJson(plan);
+
+        solves.incrementAndGet();
+        solveMicrosTotal.addAndGet((System.nanoTime() - start) / 1_000);
+        if (problem.repeatConflicts(plan) > 0) repeatsAccepted.incrementAndGet();
+        return json;
+    }
+
+    /**
+     * Calo theo mục tiêu (giảm cân / tăng cơ / duy trì) nhân hệ số vận động;
+     * tỉ lệ đạm / tinh bột / chất béo theo mục tiêu, quy ra gram (4 / 4 / 9 kcal mỗi gram).
+     */
+    public static Targets targetsFor(String goal, String activityLevel) {
+        String g = goal == null ? "" : goal.toLowerCase();
+        double calories;
+        double proteinPct, carbPct, fatPct;
+        if (g.contains("loss") || g.contains("giảm")) {
+            calories = 1600; proteinPct = 0.30; carbPct = 0.40; fatPct = 0.30;
+        } else if (g.contains("muscle") || g.contains("gain") || g.contains("tăng")) {
+            calories = 2600; proteinPct = 0.30; carbPct = 0.45; fatPct = 0.25;
+        } else {
+            calories = 2000; proteinPct = 0.20; carbPct = 0.50; fatPct = 0.30;
+        }
+
+        String a = activityLevel == null ? "" : activityLevel.toLowerCase();
+        if (a.contains("sedentary")) calories *= 0.9;
+        else if (a.contains("very") || a.contains("extra")) calories *= 1.15;
+        else if (a.contains("moderate") || a.equals("active")) calories *= 1.05;
+
+        return new Targets(calories, calories * proteinPct / 4, calories * carbPct / 4, calories * fatPct / 9);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long count = solves.get();
+        stats.put("solves", count);
+        stats.put("avgSolveMicros", count == 0 ? -1 : solveMicrosTotal.get() / count);
+        stats.put("plansWithRepeats", repeatsAccepted.get());
+        return stats;
+    }
+
+    // Một lần giải: dữ liệu pool đã trải thành mảng, plan[d][s] = chỉ số món ở ngày d, bữa s (-1 nếu không có món).
+    // Các ngày 0..fixed-1 lấy từ fixedDays, greedy / improve không đổi chúng
+    private final class Problem {
+        final MealPlanRequest request;
+        final Targets targets;
+        final List<Recipe> recipes;
+        final List<Slot> slots;
+        final double shareTotal;
+        final int[][] eligible;
+
+        final double[] calories, protein, carb, fat, cost;
+        final boolean[] known;
+        final double dailyBudget;
+
+        final double[] dayScore = new double[DAYS];
+
+        final List<? extends JsonNode> fixedDays;
+        final int fixed;
+        final int[][] pinned;
+
+        Problem(MealPlanRequest request, List<Recipe> pool, List<? extends JsonNode> fixedDays) {
+            this.request = request;
+            this.targets = targetsFor(request.getGoal(), request.getActivityLevel());
+
+            // Thứ tự pool từ buffet là ngẫu nhiên; sắp theo id để kết quả xác định
+            this.recipes = new ArrayList<>(pool);
+            recipes.sort(Comparator.comparing(r -> r.getId() == null ? "" : r.getId()));
+
+            List<Slot> schedule = new ArrayList<>();
+            List<String> requested = request.getMealSchedule();
+            if (requested != null) {
+                for (String name : requested) {
+                    Slot slot = Slot.of(name);
+                    if (slot != null && !schedule.contains(slot)) schedule.add(slot);
+                }
+            }
+            if (schedule.isEmpty()) schedule.addAll(List.of(Slot.BREAKFAST, Slot.LUNCH, Slot.DINNER));
+            schedule.sort(Comparator.naturalOrder());
+            this.slots = schedule;
+            this.shareTotal = schedule.stream().mapToDouble(s -> s.share).sum();
+
+            int n = recipes.size();
+            calories = new double[n];
+            protein = new double[n];
+            carb = new double[n];
+            fat = new double[n];
+            cost = new double[n];
+            known = new boolean[n];
+            List<Double> knownCosts = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                Recipe r = recipes.get(i);
+                Recipe.Nutrition nutrition = r.getNutrition();
+                if (nutrition != null && nutrition.getCalories() > 0) {
+                    known[i] = true;
+                    calories[i] = nutrition.getCalories();
+                    protein[i] = nutrition.getProtein();
+                    carb[i] = nutrition.getCarb();
+                    fat[i] = nutrition.getFat();
+                }
+                cost[i] = r.getTotalCost() != null ? r.getTotalCost() : Double.NaN;
+                if (!Double.isNaN(cost[i])) knownCosts.add(cost[i]);
+            }
+            // Món không có giá tính bằng giá trung vị của pool
+            double medianCost = percentile(knownCosts, 0.5);
+            for (int i = 0; i < n; i++) {
+                if (Double.isNaN(cost[i])) cost[i] = medianCost;
+            }
+            this.dailyBudget = percentile(knownCosts, budgetPercentile(request.getBudget())) * slots.size();
+
+            eligible = new int[slots.size()][];
+            for (int s = 0; s < slots.size(); s++) {
+                Slot slot = slots.get(s);
+                List<Integer> matching = new ArrayList<>();
+                for (int i = 0; i < n; i++) {
+                    List<String> courses = recipes.get(i).getMealCourse();
+                    if (courses != null && courses.stream().anyMatch(c -> c != null && slot.courses.contains(c.trim().toLowerCase()))) {
+                        matching.add(i);
+                    }
+                }
+                // Không có món nào gắn tag bữa này -> cho phép cả pool (giống luật cho LLM)
+                eligible[s] = matching.isEmpty()
+                        ? IntStream.range(0, n).toArray()
+                        : matching.stream().mapToInt(Integer::intValue).toArray();
+            }
+
+            // Món của ngày cố định theo bữa; món ngoài pool (hay bữa ngoài lịch) giữ -1: solver không chọn được món đó nên không thể lặp
+            this.fixedDays = fixedDays;
+            this.fixed = Math.min(fixedDays.size(), DAYS);
+            this.pinned = new int[fixed][slots.size()];
+            Map<String, Integer> indexById = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                if (recipes.get(i).getId() != null) indexById.putIfAbsent(recipes.get(i).getId(), i);
+            }
+            for (int d = 0; d < fixed; d++) {
+                Arrays.fill(pinned[d], -1);
+                for (JsonNode meal : fixedDays.get(d).path("meals")) {
+                    int s = slots.indexOf(Slot.ofType(meal.path("type").asText()));
+                    Integer r = indexById.get(meal.path("recipeId").asText());
+                    if (s >= 0 && r != null && pinned[d][s] < 0) pinned[d][s] = r;
+                }
+            }
+        }
+
+        int[][] greedy() {
+            int[][] plan = new int[DAYS][slots.size()];
+            for (int[] day : plan) Arrays.fill(day, -1);
+            for (int d = 0; d < fixed; d++) plan[d] = pinned[d].clone();
+            if (recipes.isEmpty()) return plan;
+
+            for (int d = fixed; d < DAYS; d++) {
+                for (int s = 0; s < slots.size(); s++) {
+                    int best = -1;
+                    double bestScore = Double.MAX_VALUE;
+                    for (int c : eligible[s]) {
+                        plan[d][s] = c;
+                        double score = partialDayScore(plan[d], s) + W_REPEAT * conflicts(plan, d, s, c);
+                        if (score < bestScore - EPSILON) {
+                            bestScore = score;
+                            best = c;
+                        }
+                    }
+                    plan[d][s] = best;
+                }
+                dayScore[d] = score(plan[d]);
+            }
+            return plan;
+        }
+
+        void improve(int[][] plan) {
+            if (recipes.isEmpty()) return;
+            for (int pass = 0; pass < MAX_PASSES; pass++) {
+                boolean improved = false;
+
+                // 1. Thay một món
+                for (int d = fixed; d < DAYS; d++) {
+                    for (int s = 0; s < slots.size(); s++) {
+                        int current = plan[d][s];
+                        double currentRepeats = conflicts(plan, d, s, current);
+                        int best = current;
+                        double bestDelta = -EPSILON;
+                        double bestDayScore = dayScore[d];
+                        for (int c : eligible[s]) {
+                            if (c == current) continue;
+                            plan[d][s] = c;
+                            double newDayScore = score(plan[d]);
+                            double delta = newDayScore - dayScore[d] + W_REPEAT * (conflicts(plan, d, s, c) - currentRepeats);
+                            if (delta < bestDelta) {
+                                bestDelta = delta;
+                                best = c;
+                                bestDayScore = newDayScore;
+                            }
+                        }
+                        plan[d][s] = best;
+                        if (best != current) {
+                            dayScore[d] = bestDayScore;
+                            improved = true;
+                        }
+                    }
+                }
+
+                // 2. Đổi món cùng bữa giữa hai ngày (cân lại calo giữa các ngày)
+                for (int s = 0; s < slots.size(); s++) {
+                    for (int d1 = fixed; d1 < DAYS; d1++) {
+                        for (int d2 = d1 + 1; d2 < DAYS; d2++) {
+                            if (plan[d1][s] == plan[d2][s]) continue;
+                            double before = dayScore[d1] + dayScore[d2] + W_REPEAT * repeatConflicts(plan);
+                            swap(plan, d1, d2, s);
+                            double score1 = score(plan[d1]);
+                            double score2 = score(plan[d2]);
+                            if (score1 + score2 + W_REPEAT * repeatConflicts(plan) < before - EPSILON) {
+                                dayScore[d1] = score1;
+                                dayScore[d2] = score2;
+                                improved = true;
+                            } else {
+                                swap(plan, d1, d2, s);
+                            }
+                        }
+                    }
+                }
+
+                if (!improved) return;
+            }
+        }
+
+        // Hàm phạt của một ngày: lệch mục tiêu calo / macro (bình phương tỉ lệ lệch), lệch tỉ lệ calo từng bữa,
+        // vượt ngân sách ngày, và số món không có dữ liệu dinh dưỡng
+        double score(int[] day) {
+            return partialDayScore(day, day.length - 1);
+        }
+
+        // Như score() nhưng chỉ tính các bữa 0..last, mục tiêu ngày thu nhỏ theo tỉ lệ các bữa đó (dùng khi tham lam)
+        double partialDayScore(int[] day, int last) {
+            double share = 0, cal = 0, p = 0, c = 0, f = 0, dayCost = 0, slotFit = 0;
+            int unknown = 0;
+            for (int s = 0; s <= last; s++) {
+                int r = day[s];
+                if (r < 0) continue;
+                double slotShare = slots.get(s).share / shareTotal;
+                share += slotShare;
+                double slotCalories = targets.calories() * slotShare;
+                if (known[r]) {
+                    cal += calories[r];
+                    p += protein[r];
+                    c += carb[r];
+                    f += fat[r];
+                    slotFit += sq((calories[r] - slotCalories) / slotCalories);
+                } else {
+                    // Không có dữ liệu: coi như đúng mục tiêu của bữa, phạt nhẹ để ưu tiên món có dữ liệu
+                    cal += slotCalories;
+                    p += targets.protein() * slotShare;
+                    c += targets.carb() * slotShare;
+                    f += targets.fat() * slotShare;
+                    unknown++;
+                }
+                dayCost += cost[r];
+            }
+            if (share == 0) return 0;
+            double macros = (sq(dev(p, targets.protein() * share)) + sq(dev(c, targets.carb() * share))
+                    + sq(dev(f, targets.fat() * share))) / 3;
+            double budget = dailyBudget > 0 ? Math.max(0, dayCost - dailyBudget * share) / dailyBudget : 0;
+            return W_CALORIES * sq(dev(cal, targets.calories() * share))
+                    + W_MACROS * macros
+                    + W_SLOT * slotFit / slots.size()
+                    + W_BUDGET * budget
+                    + W_UNKNOWN * unknown;
+        }
+
+        // Số vị trí khác trong plan có cùng món c, cách ngày d dưới REPEAT_WINDOW_DAYS ngày (kể cả cùng ngày)
+        int conflicts(int[][] plan, int d, int s, int c) {
+            if (c < 0) return 0;
+            int count = 0;
+            for (int d2 = Math.max(0, d - REPEAT_WINDOW_DAYS + 1); d2 <= Math.min(DAYS - 1, d + REPEAT_WINDOW_DAYS - 1); d2++) {
+                for (int s2 = 0; s2 < slots.size(); s2++) {
+                    if ((d2 != d || s2 != s) && plan[d2][s2] == c) count++;
+                }
+            }
+            return count;
+        }
+
+        int repeatConflicts(int[][] plan) {
+            int pairs = 0;
+            for (int d = 0; d < DAYS; d++) {
+                for (int s = 0; s < slots.size(); s++) pairs += conflicts(plan, d, s, plan[d][s]);
+            }
+            return pairs / 2;
+        }
+
+        String toJson(int[][] plan) {
+            ObjectNode root = mapper.createObjectNode();
+            double totalCalories = 0;
+            ArrayNode days = mapper.createArrayNode();
+            for (int d = 0; d < fixed; d++) {
+                days.add(fixedDays.get(d).deepCopy());
+                for (JsonNode meal : fixedDays.get(d).path("meals")) totalCalories += meal.path("calories").asInt();
+            }
+            for (int d = fixed; d < DAYS; d++) {
+                ObjectNode day = days.addObject();
+                day.put("day", WEEK_DAYS[d]);
+                ArrayNode meals = day.putArray("meals");
+                int dayCalories = 0;
+                for (int s = 0; s < slots.size(); s++) {
+                    int r = plan[d][s];
+                    if (r < 0) continue;
+                    Recipe chosen = recipes.get(r);
+                    ObjectNode meal = meals.addObject();
+                    meal.put("type", slots.get(s).vnName);
+                    meal.put("recipeId", chosen.getId());
+                    meal.put("recipeName", chosen.getTitle());
+                    meal.put("calories", (int) calories[r]);
+                    String img = chosen.getMainImageUrl();
+                    meal.put("image", img == null || img.isEmpty() ? DEFAULT_IMAGE : img);
+                    meal.put("reason", known[r]
+                            ? String.format("Khoảng %d kcal, %d g đạm, phù hợp mục tiêu %d kcal/ngày.",
+                                    (int) calories[r], (int) protein[r], Math.round(targets.calories()))
+                            : "Gợi ý thay thế (chưa có dữ liệu dinh dưỡng).");
+                    dayCalories += (int) calories[r];
+                }
+                day.put("totalCalories", dayCalories);
+                totalCalories += dayCalories;
+            }
+
+            root.put("analysis", String.format(
+                    "Thực đơn được lập tự động theo mục tiêu \"%s\": khoảng %d kcal/ngày (đạm %d g, tinh bột %d g, chất béo %d g), "
+                            + "trung bình thực tế %d kcal/ngày; %s",
+                    request.getGoal() != null ? request.getGoal() : "Healthy Living",
+                    Math.round(targets.calories()), Math.round(targets.protein()), Math.round(targets.carb()), Math.round(targets.fat()),
+                    Math.round(totalCalories / DAYS),
+                    repeatConflicts(plan) == 0
+                            ? "món không lặp lại trong " + REPEAT_WINDOW_DAYS + " ngày liên tiếp."
+                            : "kho món phù hợp còn ít nên một số món được lặp lại."));
+            root.put("source", SOURCE);
+            ObjectNode target = root.putObject("targets");
+            target.put("calories", Math.round(targets.calories()));
+            target.put("protein", Math.round(targets.protein()));
+            target.put("carb", Math.round(targets.carb()));
+            target.put("fat", Math.round(targets.fat()));
+            root.set("days", days);
+            return root.toString();
+        }
+    }
+
+    // Ngân sách mỗi bữa = phân vị giá trong pool: tiết kiệm -> trung vị, cao cấp -> không giới hạn, còn lại -> p75
+    private static double budgetPercentile(String budget) {
+        String b = budget == null ? "" : budget.toLowerCase();
+        if (b.contains("economy") || b.contains("budget") || b.contains("student") || b.contains("tiết kiệm")) return 0.5;
+        if (b.contains("premium") || b.contains("date") || b.contains("luxury") || b.contains("cao cấp")) return 1.0;
+        return 0.75;
+    }
+
+    private static double percentile(List<Double> values, double q) {
+        if (values.isEmpty()) return 0;
+        if (q >= 1.0) return Double.POSITIVE_INFINITY;
+        double[] sorted = values.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        int index = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static void swap(int[][] plan, int d1, int d2, int s) {
+        int tmp = plan[d1][s];
+        plan[d1][s] = plan[d2][s];
+        plan[d2][s] = tmp;
+    }
+
+    private static double dev(double actual, double target) {
+        return target > 0 ? (actual - target) / target : 0;
+    }
+
+    private static double sq(double x) {
+        return x * x;
+    }
+}
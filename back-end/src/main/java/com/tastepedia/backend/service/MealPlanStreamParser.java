@@ -0,0 +1,107 @@
+package com.tastepedia.backend.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Đọc dần JSON thực đơn {"analysis": "...", "days": [{...}, ...]} theo từng mảnh văn bản
+ * Gemini stream về, và báo ngay khi một phần tử của "days" đóng ngoặc (không chờ hết phản hồi).
+ * Chỉ theo dõi độ sâu ngoặc / chuỗi / khoá cấp gốc, không dựng cây JSON;
+ * ký tự ngoài object gốc (vd. ```json) bị bỏ qua.
+ */
+final class MealPlanStreamParser {
+
+    private final Consumer<String> onAnalysis; // nhận literal chuỗi JSON, còn nguyên dấu nháy và escape
+    private final Consumer<String> onDay;      // nhận text JSON của một ngày
+
+    private int depth = 0;
+    private boolean inString = false;
+    private boolean escaped = false;
+    private boolean finished = false;
+
+    // Ở cấp gốc: đang chờ khoá (sau '{' hoặc ',') hay giá trị (sau ':')
+    private boolean expectKey = true;
+    private String key;
+    private StringBuilder rootString;
+
+    // Độ sâu bên trong mảng "days", -1 nếu không ở trong mảng
+    private int daysDepth = -1;
+    private StringBuilder day;
+
+    MealPlanStreamParser(Consumer<String> onAnalysis, Consumer<String> onDay) {
+        this.onAnalysis = onAnalysis;
+        this.onDay = onDay;
+    }
+
+    void feed(CharSequence chunk) {
+        for (int i = 0; i < chunk.length() && !finished; i++) {
+            accept(chunk.charAt(i));
+        }
+    }
+
+    /** Đã gặp ngoặc đóng của object gốc. */
+    boolean isFinished() {
+        return finished;
+    }
+
+    private void accept(char c) {
+        if (day != null) day.append(c);
+
+        if (inString) {
+            if (rootString != null) rootString.append(c);
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                inString = false;
+                if (rootString != null) onRootString(rootString.toString());
+                rootString = null;
+            }
+            return;
+        }
+
+        if (depth == 0) {
+            if (c == '{') {
+                depth = 1;
+                expectKey = true;
+            }
+            return;
+        }
+
+        switch (c) {
+            case '"' -> {
+                inString = true;
+                if (depth == 1) rootString = new StringBuilder().append(c);
+            }
+            case '{', '[' -> {
+                if (c == '{' && depth == daysDepth && day == null) day = new StringBuilder().append(c);
+                if (c == '[' && depth == 1 && !expectKey && "days".equals(key)) daysDepth = 2;
+                depth++;
+            }
+            case '}', ']' -> {
+                depth--;
+                if (day != null && depth == daysDepth) {
+                    onDay.accept(day.toString());
+                    day = null;
+                }
+                if (depth < daysDepth) daysDepth = -1;
+                if (depth == 0) finished = true;
+            }
+            case ':' -> {
+                if (depth == 1) expectKey = false;
+            }
+            case ',' -> {
+                if (depth == 1) expectKey = true;
+            }
+            default -> { }
+        }
+    }
+
+    private void onRootString(String literal) {
+        if (expectKey) {
+            key = literal.substring(1, literal.length() - 1);
+        } else if ("analysis".equals(key)) {
+            onAnalysis.accept(literal);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.tastepedia.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.tastepedia.backend.model.Recipe;
+import com.tastepedia.backend.payload.MealPlanRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Thực đơn dạng Server-Sent Events cho /api/ai/meal-plan/stream.
+ * Sự kiện: "analysis" (lời nhận xét), "day" (một ngày đã gắn công thức thật, gửi ngay khi Gemini viết xong ngày đó),
+ * "done" (thực đơn đầy đủ). Người dùng thấy ngày đầu sau khoảng thời gian sinh một ngày thay vì cả tuần.
+ * Trúng MealPlanCache thì phát lại ngay; Gemini lỗi giữa chừng thì các ngày còn thiếu lấy từ thực đơn dự phòng (MealPlanSolver).
+ */
+@Service
+public class MealPlanStreamer {
+
+    private static final long EMITTER_TIMEOUT_MILLIS = 120_000;
+
+    @Autowired
+    private GeminiService geminiService;
+
+    @Autowired
+    private MealPlanCache mealPlanCache;
+
+    @Autowired
+    private LlmGateway llmGateway;
+
+    @Autowired
+    private HedgedMealPlanner hedgedMealPlanner;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong streams = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong solverPlans = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong partialFallbacks = new AtomicLong();
+    private final AtomicLong fullFallbacks = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+    private final AtomicLong firstDayMillisTotal = new AtomicLong();
+    private final AtomicLong firstDayCount = new AtomicLong();
+
+    /** poolSupplier được gọi trên luồng nền, chỉ khi không trúng cache. */
+    public SseEmitter stream(MealPlanRequest request, Supplier<List<Recipe>> poolSupplier) {
+        streams.incrementAndGet();
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MILLIS);
+        MealPlanCache.Key cacheKey = mealPlanCache.keyOf(request);
+        String cachedPlan = mealPlanCache.get(cacheKey);
+
+        executor.execute(() -> {
+            Client client = new Client(emitter);
+            try {
+                if (cachedPlan != null) {
+                    cacheHits.incrementAndGet();
+                    replay(client, cachedPlan);
+                    return;
+                }
+
+                GeminiService.PreparedPlan prepared = geminiService.prepare(request, poolSupplier.get());
+                if (hedgedMealPlanner.preferSolver()) {
+                    // Gemini quá tải: solver chọn món, phát lại cả tuần một lượt
+                    solverPlans.incrementAndGet();
+                    replay(client, geminiService.narratedPlan(prepared));
+                    return;
+                }
+                long start = System.nanoTime();
+                List<ObjectNode> days = new ArrayList<>();
+                String[] analysis = {null};
+                String plan = geminiService.streamMealPlan(prepared,
+                        text -> {
+                            analysis[0] = text;
+                            client.send("analysis", text);
+                        },
+                        day -> {
+                            if (days.isEmpty()) {
+                                firstDayMillisTotal.addAndGet((System.nanoTime() - start) / 1_000_000);
+                                firstDayCount.incrementAndGet();
+                            }
+                            days.add(day);
+                            client.send("day", day.toString());
+                        },
+                        () -> client.gone);
+
+                if (client.gone) return; // Đã huỷ luồng Gemini, không còn ai nhận thực đơn
+                if (plan != null) {
+                    completed.incrementAndGet();
+                    mealPlanCache.put(cacheKey, plan);
+                    client.send("done", plan);
+                } else if (days.isEmpty()) {
+                    fullFallbacks.incrementAndGet();
+                    replay(client, geminiService.fallbackPlan(prepared));
+                } else {
+                    // Đã gửi vài ngày: giữ nguyên, bù các ngày còn lại từ dự phòng (không cache thực đơn ghép)
+                    partialFallbacks.incrementAndGet();
+                    client.send("done", completeWithFallback(prepared, analysis[0], days, client));
+                }
+            } catch (Exception e) {
+                System.err.println("Meal plan stream error: " + e.getMessage());
+                client.send("error", "Không thể tạo thực đơn lúc này.");
+            } finally {
+                if (client.gone) disconnects.incrementAndGet();
+                else emitter.complete();
+            }
+        });
+        return emitter;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("streams", streams.get());
+        stats.put("cacheHits", cacheHits.get());
+        stats.put("solverPlans", solverPlans.get());
+        stats.put("completed", completed.get());
+        stats.put("partialFallbacks", partialFallbacks.get());
+        stats.put("fullFallbacks", fullFallbacks.get());
+        stats.put("disconnects", disconnects.get());
+        long count = firstDayCount.get();
+        stats.put("avgFirstDayMs", count == 0 ? -1 : firstDayMillisTotal.get() / count);
+        return stats;
+    }
+
+    private void replay(Client client, String planJson) throws Exception {
+        JsonNode root = llmGateway.mapper().readTree(planJson);
+        if (root.hasNonNull("analysis")) client.send("analysis", root.get("analysis").asText());
+        for (JsonNode day : root.path("days")) client.send("day", day.toString());
+        client.send("done", planJson);
+    }
+
+    private String completeWithFallback(GeminiService.PreparedPlan prepared, String analysis,
+                                        List<ObjectNode> streamedDays, Client client) throws Exception {
+        ObjectMapper mapper = llmGateway.mapper();
+        // Solver nhận các ngày đã gửi làm phần đầu cố định để ngày bù không lặp món của mấy ngày cuối đã gửi
+        JsonNode fallbackDays = mapper.readTree(geminiService.fallbackPlan(prepared, streamedDays)).path("days");
+
+        ObjectNode root = mapper.createObjectNode();
+        root.put("analysis", analysis != null ? analysis : GeminiService.FALLBACK_ANALYSIS);
+        ArrayNode days = root.putArray("days");
+        streamedDays.forEach(days::add);
+        for (int i = streamedDays.size(); i < fallbackDays.size(); i++) {
+            days.add(fallbackDays.get(i));
+            client.send("day", fallbackDays.get(i).toString());
+        }
+        return root.toString();
+    }
+
+    // Người dùng đóng trang thì thôi gửi và huỷ luồng Gemini: thực đơn dở dang không được cache,
+    // đọc tiếp chỉ giữ suất bulkhead tới hết luồng
+    private static final class Client {
+        private final SseEmitter emitter;
+        private volatile boolean gone = false;
+
+        Client(SseEmitter emitter) {
+            this.emitter = emitter;
+            // Biết sớm khi kết nối hỏng / hết hạn, không phải chờ tới lần send() kế tiếp
+            emitter.onError(e -> gone = true);
+            emitter.onTimeout(() -> gone = true);
+        }
+
+        void send(String event, String data) {
+            if (gone) return;
+            try {
+                MediaType type = event.equals("day") || event.equals("done") ? MediaType.APPLICATION_JSON : MediaType.TEXT_PLAIN;
+                emitter.send(SseEmitter.event().name(event).data(data, type));
+            } catch (Exception e) {
+                gone = true;
+            }
+        }
+    }
+}
@@ -51,6 +51,14 @@ public class NotificationService {
         );
     }
 
+    /**
+     * Đẩy kết quả job lập thực đơn (xem MealPlanJobService).
+     * Frontend subscribe: /topic/ai/{jobId}
+     */
+    public void pushMealPlanJob(String topic, Object payload) {
+        messagingTemplate.convertAndSend(topic, payload);
+    }
+
     // --- Các method hỗ trợ NotificationController ---
 
     public List<Notification> getNotificationsForUser(String userId) {
@@ -0,0 +1,8 @@
+package com.tastepedia.backend.service;
+
+/**
+ * Phát ra bởi RecipeIndexService sau khi index đã phản ánh thay đổi của một công thức
+ * (tạo / sửa / duyệt / xoá). recipeId == null nghĩa là toàn bộ danh mục vừa được nạp lại.
+ */
+public record RecipeChangedEvent(String recipeId) {
+}
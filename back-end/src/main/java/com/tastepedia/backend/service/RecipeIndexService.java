@@ -0,0 +1,830 @@
+package com.tastepedia.backend.service;
+
+import com.tastepedia.backend.model.Recipe;
+import com.tastepedia.backend.payload.RecipeCard;
+import com.tastepedia.backend.payload.RecipeSearchFilter;
+import com.tastepedia.backend.payload.RecipeSuggestions;
+import com.tastepedia.backend.repository.RecipeRepository;
+import com.tastepedia.backend.service.index.AttributeBitmapIndex;
+import com.tastepedia.backend.service.index.Bm25Index;
+import com.tastepedia.backend.service.index.IngredientCanonicalizer;
+import com.tastepedia.backend.service.index.IngredientIndex;
+import com.tastepedia.backend.service.index.KeywordMatcher;
+import com.tastepedia.backend.service.index.MinHashIndex;
+import com.tastepedia.backend.service.index.PrefixTrie;
+import com.tastepedia.backend.service.index.RecipeColumns;
+import com.tastepedia.backend.service.index.RecipeColumns.IntColumn;
+import com.tastepedia.backend.service.index.SimHashIndex;
+import com.tastepedia.backend.service.index.TermCounts;
+import com.tastepedia.backend.service.index.TextTokenizer;
+import com.tastepedia.backend.service.index.TokenVocabulary;
+import com.tastepedia.backend.service.index.TrigramIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Chỉ mục công thức trong bộ nhớ.
+ * Mỗi công thức được gán một ordinal (số nguyên liên tiếp) để các cấu trúc index
+ * dùng mảng/bitset thay vì map theo String id. Mongo chỉ còn dùng để lấy dữ liệu
+ * đầy đủ cho các id cuối cùng.
+ *
+ * Nạp toàn bộ khi ứng dụng khởi động, sau đó được cập nhật mỗi khi công thức
+ * được tạo / sửa / xoá (xem RecipeController, AdminController).
+ */
+@Service
+public class RecipeIndexService {
+
+    // --- Tên các thuộc tính phân loại có bitmap index ---
+    public static final String CUISINE = "cuisine";
+    public static final String DIETARY_TYPE = "dietaryType";
+    public static final String MEAL_COURSE = "mealCourse";
+    public static final String ALLERGENS = "allergens";
+    public static final String KITCHEN_TOOLS = "kitchenTools";
+    public static final String DIFFICULTY = "difficulty";
+    public static final String INGREDIENT_ID = "ingredientId"; // Mã nguyên liệu chuẩn (kèm nhóm cha) từ nguyên liệu + tags dị ứng
+
+    // Số gợi ý tối đa cho mỗi nhóm (giữ sẵn ở mỗi node của trie)
+    public static final int SUGGEST_LIMIT = 10;
+
+    // Jaccard ước lượng tối thiểu để coi là "tương tự"
+    private static final double MIN_SIMILARITY = 0.1;
+
+    // Nội dung quá ít đặc trưng thì không đủ cơ sở để kết luận gần trùng
+    private static final int MIN_FINGERPRINT_FEATURES = 5;
+
+    @Autowired
+    private RecipeRepository recipeRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> ordinalById = new HashMap<>();
+    private final List<String> idByOrdinal = new ArrayList<>();
+    private final BitSet live = new BitSet();
+
+    private final TrigramIndex textIndex = new TrigramIndex();
+    private final TokenVocabulary vocabulary = new TokenVocabulary();
+    private final Bm25Index relevance = new Bm25Index();
+    private final MinHashIndex similarity = new MinHashIndex();
+    private final SimHashIndex fingerprints = new SimHashIndex();
+    private final IngredientIndex ingredients = new IngredientIndex();
+    private final Map<String, AttributeBitmapIndex> attributes = new LinkedHashMap<>();
+    private final RecipeColumns columns = new RecipeColumns();
+    private final List<char[]> foldedIngredients = new ArrayList<>(); // Tên nguyên liệu đã fold sẵn cho KeywordMatcher
+
+    // --- Gợi ý (autocomplete): đếm cụm từ theo công thức; trie bất biến được dựng lại sau các lần ghi làm đổi số đếm,
+    // gộp trong SUGGEST_REBUILD_DELAY_MILLIS và chạy ngoài write lock (tìm kiếm không phải chờ) ---
+    private static final long SUGGEST_REBUILD_DELAY_MILLIS = 500;
+    private final TermCounts titleTerms = new TermCounts();
+    private final TermCounts cuisineTerms = new TermCounts();
+    private final TermCounts ingredientTerms = new TermCounts();
+    private volatile Suggesters suggesters = new Suggesters(PrefixTrie.EMPTY, PrefixTrie.EMPTY, PrefixTrie.EMPTY);
+    private final AtomicBoolean suggestersDirty = new AtomicBoolean(false);
+    private final ScheduledExecutorService suggestRebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "recipe-suggest-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private record Suggesters(PrefixTrie titles, PrefixTrie cuisines, PrefixTrie ingredients) {}
+
+    private volatile boolean ready = false;
+
+    public RecipeIndexService() {
+        for (String name : List.of(CUISINE, DIETARY_TYPE, MEAL_COURSE, ALLERGENS, KITCHEN_TOOLS, DIFFICULTY, INGREDIENT_ID)) {
+            attributes.put(name, new AttributeBitmapIndex());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            load();
+        } catch (Exception e) {
+            // Index chưa sẵn sàng -> sẽ thử nạp lại ở lần truy vấn đầu tiên (ensureReady)
+            System.err.println("Recipe index load failed: " + e.getMessage());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Đảm bảo index đã được nạp; nạp đồng bộ nếu lần nạp lúc khởi động bị lỗi. */
+    public void ensureReady() {
+        if (ready) return;
+        synchronized (this) {
+            if (!ready) load();
+        }
+    }
+
+    /** Gọi sau khi công thức được lưu (tạo mới hoặc cập nhật). */
+    public void index(Recipe recipe) {
+        if (recipe == null || recipe.getId() == null) return;
+        if (isPendingDuplicateReview(recipe)) {
+            // Bản gần trùng chưa được duyệt không xuất hiện trong tìm kiếm / gợi ý / thực đơn
+            remove(recipe.getId());
+            return;
+        }
+        boolean termsChanged;
+        lock.writeLock().lock();
+        try {
+            termsChanged = put(recipe);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (termsChanged) scheduleSuggesterRebuild();
+        eventPublisher.publishEvent(new RecipeChangedEvent(recipe.getId()));
+    }
+
+    /** Gọi sau khi công thức bị xoá. */
+    public void remove(String recipeId) {
+        boolean termsChanged;
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinalById.remove(recipeId);
+            if (ordinal == null) return;
+            live.clear(ordinal);
+            idByOrdinal.set(ordinal, null);
+            textIndex.remove(ordinal);
+            vocabulary.remove(ordinal);
+            relevance.remove(ordinal);
+            similarity.remove(ordinal);
+            fingerprints.remove(ordinal);
+            ingredients.remove(ordinal);
+            foldedIngredients.set(ordinal, null);
+            attributes.values().forEach(index -> index.remove(ordinal));
+            termsChanged = titleTerms.remove(ordinal) | cuisineTerms.remove(ordinal) | ingredientTerms.remove(ordinal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (termsChanged) scheduleSuggesterRebuild();
+        eventPublisher.publishEvent(new RecipeChangedEvent(recipeId));
+    }
+
+    /**
+     * Áp toàn bộ bộ lọc tìm kiếm trong bộ nhớ, trả về bitset ordinal khớp.
+     * Keyword qua trigram index (fuzzy = cho phép gõ sai vài ký tự), cuisine / dietaryType qua bitmap, các điều kiện số
+     * (cookTime, dinh dưỡng, giá) quét tuần tự trên cột -> không đụng tới Mongo.
+     */
+    public BitSet match(RecipeSearchFilter filter) {
+        ensureReady();
+        lock.readLock().lock();
+        try {
+            BitSet result = (BitSet) live.clone();
+
+            String keyword = filter.getKeyword();
+            if (keyword != null && !keyword.trim().isEmpty()) {
+                List<String> tokens = TextTokenizer.tokenize(TextTokenizer.fold(keyword));
+                if (!tokens.isEmpty()) {
+                    result.and(filter.isFuzzy() ? fuzzySearch(tokens) : textIndex.search(tokens));
+                }
+            }
+
+            if (filter.getCuisines() != null && !filter.getCuisines().isEmpty()) {
+                result.and(anyExact(attributes.get(CUISINE), filter.getCuisines()));
+            }
+            if (filter.getDietaryTypes() != null && !filter.getDietaryTypes().isEmpty()) {
+                result.and(anyExact(attributes.get(DIETARY_TYPE), filter.getDietaryTypes()));
+            }
+
+            andAtMost(result, IntColumn.COOK_TIME, filter.getCookTimeMax());
+            andAtMost(result, IntColumn.CALORIES, filter.getCaloriesMax());
+            andAtMost(result, IntColumn.CARB, filter.getCarbMax());
+            andAtMost(result, IntColumn.FAT, filter.getFatMax());
+            andAtMost(result, IntColumn.PROTEIN, filter.getProteinMax());
+
+            if (filter.getMinPrice() != null || filter.getMaxPrice() != null) {
+                result.and(columns.costBetween(filter.getMinPrice(), filter.getMaxPrice()));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Kiểm tra MỘT công thức (trạng thái hiện tại trong index) có thoả bộ lọc không,
+     * cùng ngữ nghĩa với match() nhưng không quét toàn bộ danh mục. Dùng để huỷ cache có chọn lọc.
+     */
+    public boolean matches(RecipeSearchFilter filter, String recipeId) {
+        lock.readLock().lock();
+        try {
+            Integer ord = ordinalById.get(recipeId);
+            if (ord == null || !live.get(ord)) return false;
+
+            String keyword = filter.getKeyword();
+            if (keyword != null && !keyword.trim().isEmpty()) {
+                String text = textIndex.text(ord);
+                for (String token : TextTokenizer.tokenize(TextTokenizer.fold(keyword))) {
+                    if (text != null && text.contains(token)) continue;
+                    int maxEdits = TokenVocabulary.maxEdits(token);
+                    if (filter.isFuzzy() && maxEdits > 0 && vocabulary.fuzzyMatch(token, maxEdits).get(ord)) continue;
+                    return false;
+                }
+            }
+
+            if (filter.getCuisines() != null && !filter.getCuisines().isEmpty()
+                    && Collections.disjoint(attributes.get(CUISINE).valuesOf(ord), filter.getCuisines())) {
+                return false;
+            }
+            if (filter.getDietaryTypes() != null && !filter.getDietaryTypes().isEmpty()
+                    && Collections.disjoint(attributes.get(DIETARY_TYPE).valuesOf(ord), filter.getDietaryTypes())) {
+                return false;
+            }
+
+            if (!atMost(ord, IntColumn.COOK_TIME, filter.getCookTimeMax())
+                    || !atMost(ord, IntColumn.CALORIES, filter.getCaloriesMax())
+                    || !atMost(ord, IntColumn.CARB, filter.getCarbMax())
+                    || !atMost(ord, IntColumn.FAT, filter.getFatMax())
+                    || !atMost(ord, IntColumn.PROTEIN, filter.getProteinMax())) {
+                return false;
+            }
+
+            if (filter.getMinPrice() != null || filter.getMaxPrice() != null) {
+                double cost = columns.totalCost(ord);
+                if (Double.isNaN(cost)) return false;
+                if (filter.getMinPrice() != null && cost < filter.getMinPrice()) return false;
+                if (filter.getMaxPrice() != null && cost > filter.getMaxPrice()) return false;
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Chọn tối đa limit ordinal trong matches theo thứ tự (createdAt DESC, id DESC),
+     * chỉ lấy các công thức đứng sau (afterCreatedAt, afterId) nếu afterId != null.
+     * Dùng heap giới hạn kích thước nên không phải sắp xếp toàn bộ tập khớp.
+     */
+    public List<Integer> newestFirst(BitSet matches, long afterCreatedAt, String afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            Comparator<Integer> order = (a, b) -> {
+                int cmp = Long.compare(columns.createdAt(b), columns.createdAt(a));
+                return cmp != 0 ? cmp : idByOrdinal.get(b).compareTo(idByOrdinal.get(a));
+            };
+            // Đỉnh heap là phần tử "cũ nhất" đang giữ -> bị đẩy ra khi vượt quá limit
+            PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, order.reversed());
+            for (int ord = matches.nextSetBit(0); ord >= 0; ord = matches.nextSetBit(ord + 1)) {
+                if (!live.get(ord)) continue;
+                if (afterId != null) {
+                    long createdAt = columns.createdAt(ord);
+                    if (createdAt > afterCreatedAt
+                            || (createdAt == afterCreatedAt && idByOrdinal.get(ord).compareTo(afterId) >= 0)) {
+                        continue;
+                    }
+                }
+                heap.offer(ord);
+                if (heap.size() > limit) heap.poll();
+            }
+            List<Integer> result = new ArrayList<>(heap);
+            result.sort(order);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Xếp hạng các công thức trong matches theo độ liên quan BM25 với keyword
+     * (tiêu đề > nguyên liệu > tags > mô tả), trả về tối đa k ordinal, điểm giảm dần.
+     */
+    public List<Integer> rankByRelevance(String keyword, BitSet matches, int k) {
+        List<String> tokens = TextTokenizer.tokenize(TextTokenizer.fold(keyword));
+        lock.readLock().lock();
+        try {
+            BitSet candidates = (BitSet) matches.clone();
+            candidates.and(live);
+            return relevance.topK(tokens, candidates, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Id công thức đã có mà recipe (chưa lưu, hoặc vừa sửa) gần như trùng nội dung (tiêu đề, nguyên liệu, các bước),
+     * null nếu không có; không tính chính recipe. Chỉ tra các bảng băm của SimHashIndex, không quét danh mục.
+     */
+    public String findNearDuplicate(Recipe recipe) {
+        Map<String, Integer> content = contentFeatures(recipe);
+        if (content.size() < MIN_FINGERPRINT_FEATURES) return null;
+        long fingerprint = SimHashIndex.fingerprint(content);
+        ensureReady();
+        lock.readLock().lock();
+        try {
+            Integer self = recipe.getId() != null ? ordinalById.get(recipe.getId()) : null;
+            int ord = fingerprints.nearest(fingerprint, self != null ? self : -1);
+            return ord >= 0 ? idByOrdinal.get(ord) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Kết quả pantry của một công thức: số nguyên liệu đã có / tổng, và tên các nguyên liệu còn thiếu. */
+    public record PantryHit(String recipeId, int matched, int total, List<String> missing) {}
+
+    /**
+     * Công thức xếp theo độ phủ nguyên liệu với danh sách nguyên liệu người dùng có.
+     * Gộp posting list của inverted index nguyên liệu (dạng chuẩn), chỉ chạm tới công thức có ít nhất một nguyên liệu khớp.
+     */
+    public List<PantryHit> pantry(Collection<String> owned, int limit, double minCoverage) {
+        Set<String> pantry = new HashSet<>();
+        for (String name : owned) {
+            String key = name != null ? canonicalIngredient(name) : "";
+            if (!key.isEmpty()) pantry.add(key);
+        }
+        ensureReady();
+        lock.readLock().lock();
+        try {
+            List<PantryHit> hits = new ArrayList<>();
+            for (IngredientIndex.Coverage c : ingredients.topCoverage(pantry, limit, minCoverage)) {
+                hits.add(new PantryHit(idByOrdinal.get(c.ordinal()), c.matched(), c.total(),
+                        ingredients.missing(c.ordinal(), pantry)));
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Mã chuẩn của tên nguyên liệu theo từ điển đồng nghĩa ("Thịt Heo" / "pork" -> "pork"); ngoài từ điển -> bỏ dấu, chữ thường. */
+    public static String canonicalIngredient(String name) {
+        return IngredientCanonicalizer.standard().canonicalize(name);
+    }
+
+    /** Mọi mã nguyên liệu chuẩn (kèm nhóm cha) nhắc tới trong các chuỗi: "Seafood", "tôm sú" -> seafood, shrimp, shellfish. */
+    public static Set<String> ingredientIds(Collection<String> texts) {
+        Set<String> ids = new LinkedHashSet<>();
+        if (texts == null) return ids;
+        IngredientCanonicalizer canonicalizer = IngredientCanonicalizer.standard();
+        for (String text : texts) ids.addAll(canonicalizer.canonicalIds(text));
+        return ids;
+    }
+
+    /** Mã nguyên liệu chuẩn khớp trực tiếp (không kèm nhóm cha), dùng cho dị ứng / món không thích của người dùng. */
+    public static Set<String> mentionedIngredientIds(Collection<String> texts) {
+        Set<String> ids = new LinkedHashSet<>();
+        if (texts == null) return ids;
+        IngredientCanonicalizer canonicalizer = IngredientCanonicalizer.standard();
+        for (String text : texts) {
+            if (text != null) ids.addAll(canonicalizer.matchedIds(text));
+        }
+        return ids;
+    }
+
+    public static boolean isPendingDuplicateReview(Recipe recipe) {
+        return recipe.getDuplicateOfId() != null && !recipe.isApproved();
+    }
+
+    /** Công thức có nhiều nguyên liệu / tags chung với recipeId nhất (MinHash + LSH, không quét toàn danh mục). */
+    public List<String> similarTo(String recipeId, int limit) {
+        ensureReady();
+        lock.readLock().lock();
+        try {
+            Integer ord = ordinalById.get(recipeId);
+            if (ord == null || !live.get(ord)) return Collections.emptyList();
+            List<String> ids = new ArrayList<>();
+            for (int other : similarity.similar(ord, limit, MIN_SIMILARITY)) {
+                ids.add(idByOrdinal.get(other));
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Số công thức trong within theo từng giá trị của attribute (giảm dần). */
+    public Map<String, Long> countByValue(String attribute, BitSet within) {
+        lock.readLock().lock();
+        try {
+            return attributes.get(attribute).countByValue(within);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Đếm công thức trong within theo các khoảng của một cột số (xem RecipeColumns.histogram). */
+    public long[] histogram(IntColumn column, int[] boundaries, BitSet within) {
+        lock.readLock().lock();
+        try {
+            return columns.histogram(column, boundaries, within);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Như histogram() nhưng cho totalCost. */
+    public long[] costHistogram(int[] boundaries, BitSet within) {
+        lock.readLock().lock();
+        try {
+            return columns.costHistogram(boundaries, within);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gợi ý tiêu đề / ẩm thực / nguyên liệu cho tiền tố đang gõ (không dấu, không phân biệt hoa thường).
+     * Đọc snapshot trie bất biến, không cần khoá -> đủ nhanh để gọi theo từng phím gõ.
+     */
+    public RecipeSuggestions suggest(String prefix, int limit) {
+        ensureReady();
+        String key = TermCounts.normalize(prefix);
+        RecipeSuggestions result = new RecipeSuggestions();
+        if (key.isEmpty()) return result;
+
+        int n = Math.max(1, Math.min(limit, SUGGEST_LIMIT));
+        Suggesters current = suggesters;
+        result.setTitles(current.titles().complete(key, n));
+        result.setCuisines(current.cuisines().complete(key, n));
+        result.setIngredients(current.ingredients().complete(key, n));
+        return result;
+    }
+
+    /** Bitset các công thức đang tồn tại (bản sao, được phép sửa). */
+    public BitSet liveRecipes() {
+        ensureReady();
+        lock.readLock().lock();
+        try {
+            return (BitSet) live.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Công thức có giá trị attribute đúng bằng value. */
+    public BitSet withValue(String attribute, String value) {
+        ensureReady();
+        lock.readLock().lock();
+        try {
+            return attributes.get(attribute).get(value);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Công thức có ít nhất một giá trị attribute thoả predicate (predicate chạy trên từ điển giá trị). */
+    public BitSet withAnyValue(String attribute, Predicate<String> valuePredicate) {
+        ensureReady();
+        lock.readLock().lock();
+        try {
+            return attributes.get(attribute).anyOf(valuePredicate);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Công thức có tên nguyên liệu chứa ít nhất một từ khoá của matcher (không phân biệt hoa thường).
+     * Mỗi công thức là một lượt quét tuyến tính trên tên nguyên liệu đã fold sẵn lúc index, không cấp phát.
+     */
+    public BitSet withIngredientMatching(KeywordMatcher matcher) {
+        ensureReady();
+        BitSet result = new BitSet();
+        if (matcher.isEmpty()) return result;
+        lock.readLock().lock();
+        try {
+            for (int ord = live.nextSetBit(0); ord >= 0; ord = live.nextSetBit(ord + 1)) {
+                if (matcher.matchesAny(foldedIngredients.get(ord))) result.set(ord);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Công thức có khai báo ít nhất một giá trị cho attribute. */
+    public BitSet withAnyValue(String attribute) {
+        ensureReady();
+        lock.readLock().lock();
+        try {
+            return attributes.get(attribute).withAnyValue();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Ordinal của công thức đang tồn tại, -1 nếu không có (hoặc đã bị xoá). */
+    public int ordinalOf(String recipeId) {
+        lock.readLock().lock();
+        try {
+            Integer ord = ordinalById.get(recipeId);
+            return ord != null && live.get(ord) ? ord : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Các giá trị attribute của một công thức theo ordinal. */
+    public List<String> valuesOf(String attribute, int ordinal) {
+        lock.readLock().lock();
+        try {
+            return attributes.get(attribute).valuesOf(ordinal);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Chuyển danh sách ordinal sang id công thức (bỏ qua ordinal đã bị xoá). */
+    public List<String> idsOf(List<Integer> ordinals) {
+        List<String> ids = new ArrayList<>(ordinals.size());
+        lock.readLock().lock();
+        try {
+            for (int ord : ordinals) {
+                String id = ord < idByOrdinal.size() ? idByOrdinal.get(ord) : null;
+                if (id != null) ids.add(id);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ids;
+    }
+
+    /** Lấy đầy đủ công thức từ Mongo theo danh sách id, giữ nguyên thứ tự của danh sách. */
+    public List<Recipe> loadInOrder(List<String> ids) {
+        if (ids.isEmpty()) return new ArrayList<>();
+        return inOrder(ids, recipeRepository.findAllById(ids), Recipe::getId);
+    }
+
+    /** Như loadInOrder() nhưng chỉ lấy các field của thẻ (RecipeCard), dùng cho danh sách. */
+    public List<RecipeCard> loadCardsInOrder(List<String> ids) {
+        if (ids.isEmpty()) return new ArrayList<>();
+        return inOrder(ids, recipeRepository.findByIdIn(ids), RecipeCard::getId);
+    }
+
+    /** Sắp xếp lại kết quả Mongo theo thứ tự của ids, bỏ qua id không còn tồn tại. */
+    public static <T> List<T> inOrder(List<String> ids, Iterable<T> loaded, Function<T, String> idOf) {
+        Map<String, T> byId = new HashMap<>();
+        for (T item : loaded) {
+            byId.put(idOf.apply(item), item);
+        }
+        List<T> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            T item = byId.get(id);
+            if (item != null) result.add(item);
+        }
+        return result;
+    }
+
+    // --- HELPER ---
+
+    private void load() {
+        List<Recipe> all = recipeRepository.findAll();
+        lock.writeLock().lock();
+        try {
+            ordinalById.clear();
+            idByOrdinal.clear();
+            live.clear();
+            textIndex.clear();
+            vocabulary.clear();
+            relevance.clear();
+            similarity.clear();
+            fingerprints.clear();
+            ingredients.clear();
+            foldedIngredients.clear();
+            attributes.values().forEach(AttributeBitmapIndex::clear);
+            columns.clear();
+            titleTerms.clear();
+            cuisineTerms.clear();
+            ingredientTerms.clear();
+            for (Recipe recipe : all) {
+                if (!isPendingDuplicateReview(recipe)) put(recipe);
+            }
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        rebuildSuggesters();
+        System.out.println("Recipe index loaded: " + all.size() + " recipes");
+        eventPublisher.publishEvent(new RecipeChangedEvent(null));
+    }
+
+    // Phải giữ write lock khi gọi; trả về true nếu số đếm cụm từ gợi ý thay đổi
+    private boolean put(Recipe recipe) {
+        Integer ordinal = ordinalById.get(recipe.getId());
+        if (ordinal == null) {
+            ordinal = idByOrdinal.size();
+            idByOrdinal.add(recipe.getId());
+            ordinalById.put(recipe.getId(), ordinal);
+        }
+        live.set(ordinal);
+        String text = searchableText(recipe);
+        textIndex.put(ordinal, text);
+        vocabulary.put(ordinal, TextTokenizer.tokenize(text));
+        relevance.put(ordinal, relevanceFields(recipe));
+        similarity.put(ordinal, similarityFeatures(recipe));
+        Map<String, Integer> content = contentFeatures(recipe);
+        if (content.size() >= MIN_FINGERPRINT_FEATURES) {
+            fingerprints.put(ordinal, SimHashIndex.fingerprint(content));
+        } else {
+            fingerprints.remove(ordinal);
+        }
+
+        attributes.get(CUISINE).put(ordinal, recipe.getCuisine() != null ? List.of(recipe.getCuisine()) : null);
+        attributes.get(DIETARY_TYPE).put(ordinal, recipe.getDietaryType());
+        attributes.get(MEAL_COURSE).put(ordinal, recipe.getMealCourse());
+        attributes.get(ALLERGENS).put(ordinal, recipe.getAllergens());
+        attributes.get(KITCHEN_TOOLS).put(ordinal, recipe.getKitchenTools());
+        List<String> names = ingredientNames(recipe);
+        ingredients.put(ordinal, names, names.stream().map(RecipeIndexService::canonicalIngredient).toList());
+        while (foldedIngredients.size() <= ordinal) foldedIngredients.add(null);
+        foldedIngredients.set(ordinal, KeywordMatcher.fold(names));
+        attributes.get(DIFFICULTY).put(ordinal, recipe.getDifficulty() != null ? List.of(recipe.getDifficulty()) : null);
+        Set<String> ingredientIds = ingredientIds(names);
+        if (recipe.getAllergens() != null) ingredientIds.addAll(ingredientIds(recipe.getAllergens()));
+        attributes.get(INGREDIENT_ID).put(ordinal, new ArrayList<>(ingredientIds));
+
+        boolean termsChanged = titleTerms.put(ordinal, recipe.getTitle() != null ? List.of(recipe.getTitle()) : null)
+                | cuisineTerms.put(ordinal, recipe.getCuisine() != null ? List.of(recipe.getCuisine()) : null)
+                | ingredientTerms.put(ordinal, names);
+
+        Recipe.Nutrition n = recipe.getNutrition();
+        columns.put(ordinal,
+                n != null ? n.getCalories() : 0, n != null ? n.getCarb() : 0,
+                n != null ? n.getFat() : 0, n != null ? n.getProtein() : 0, n != null,
+                recipe.getCookTime(), recipe.getTotalCost(),
+                recipe.getCreatedAt() != null ? recipe.getCreatedAt().getTime() : 0L);
+        return termsChanged;
+    }
+
+    // Gộp các lần ghi liên tiếp thành một lần dựng lại (đang có lịch thì không xếp thêm)
+    private void scheduleSuggesterRebuild() {
+        if (suggestersDirty.compareAndSet(false, true)) {
+            suggestRebuilder.schedule(this::rebuildSuggesters, SUGGEST_REBUILD_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Không giữ khoá index khi gọi: chỉ chụp số đếm dưới read lock, dựng trie sau khi nhả khoá.
+    // synchronized để bản chụp cũ không ghi đè bản mới hơn khi load() và lịch dựng lại chạy cùng lúc
+    private synchronized void rebuildSuggesters() {
+        // Xoá cờ trước khi chụp: lần ghi đến sau thời điểm này sẽ tự xếp một lần dựng mới
+        suggestersDirty.set(false);
+        PrefixTrie.Builder titles, cuisines, ingredientNames;
+        lock.readLock().lock();
+        try {
+            titles = titleTerms.trieBuilder();
+            cuisines = cuisineTerms.trieBuilder();
+            ingredientNames = ingredientTerms.trieBuilder();
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            suggesters = new Suggesters(
+                    titles.build(SUGGEST_LIMIT),
+                    cuisines.build(SUGGEST_LIMIT),
+                    ingredientNames.build(SUGGEST_LIMIT));
+        } catch (Exception e) {
+            System.err.println("Suggester rebuild failed: " + e.getMessage());
+        }
+    }
+
+    // Mỗi token khớp nếu là chuỗi con (như tìm thường) HOẶC gần đúng một token trong từ vựng
+    // ("phoo" -> "pho", "bun cah" -> "bun cha"); các token vẫn AND với nhau. Phải giữ read lock.
+    private BitSet fuzzySearch(List<String> tokens) {
+        BitSet result = null;
+        for (String token : tokens) {
+            BitSet matches = textIndex.search(List.of(token));
+            int maxEdits = TokenVocabulary.maxEdits(token);
+            if (maxEdits > 0) matches.or(vocabulary.fuzzyMatch(token, maxEdits));
+            if (result == null) result = matches;
+            else result.and(matches);
+            if (result.isEmpty()) break;
+        }
+        return result != null ? result : new BitSet();
+    }
+
+    // Giá trị <= 0 hoặc null = không lọc (giống bộ lọc Mongo)
+    private void andAtMost(BitSet result, IntColumn column, Integer max) {
+        if (max != null && max > 0) result.and(columns.atMost(column, max));
+    }
+
+    // Bản một-công-thức của andAtMost() / RecipeColumns.atMost()
+    private boolean atMost(int ord, IntColumn column, Integer max) {
+        if (max == null || max <= 0) return true;
+        if (column != IntColumn.COOK_TIME && !columns.hasNutrition(ord)) return false;
+        return columns.get(column, ord) <= max;
+    }
+
+    private static BitSet anyExact(AttributeBitmapIndex index, List<String> values) {
+        BitSet result = new BitSet();
+        for (String value : values) {
+            if (value != null) result.or(index.get(value));
+        }
+        return result;
+    }
+
+    private static List<String> ingredientNames(Recipe recipe) {
+        if (recipe.getIngredients() == null) return Collections.emptyList();
+        List<String> names = new ArrayList<>();
+        for (Recipe.Ingredient ing : recipe.getIngredients()) {
+            if (ing != null && ing.getName() != null) names.add(ing.getName());
+        }
+        return names;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String>[] relevanceFields(Recipe recipe) {
+        List<String>[] fields = new List[Bm25Index.FIELD_COUNT];
+        fields[Bm25Index.TITLE] = tokensOf(recipe.getTitle());
+        fields[Bm25Index.INGREDIENTS] = tokensOf(String.join("\n", ingredientNames(recipe)));
+        StringBuilder tags = new StringBuilder();
+        if (recipe.getCuisine() != null) tags.append(recipe.getCuisine()).append('\n');
+        appendAll(tags, recipe.getDietaryType());
+        appendAll(tags, recipe.getMealCourse());
+        fields[Bm25Index.TAGS] = tokensOf(tags.toString());
+        fields[Bm25Index.DESCRIPTION] = tokensOf(recipe.getDescription());
+        return fields;
+    }
+
+    // Tập đặc trưng cho MinHash: tên nguyên liệu và tags (ẩm thực, chế độ ăn, bữa) đã bỏ dấu, có tiền tố để không lẫn nhau
+    private static List<String> similarityFeatures(Recipe recipe) {
+        List<String> features = new ArrayList<>();
+        for (String name : ingredientNames(recipe)) {
+            String key = TermCounts.normalize(name);
+            if (!key.isEmpty()) features.add("i:" + key);
+        }
+        List<String> tags = new ArrayList<>();
+        if (recipe.getCuisine() != null) tags.add(recipe.getCuisine());
+        if (recipe.getDietaryType() != null) tags.addAll(recipe.getDietaryType());
+        if (recipe.getMealCourse() != null) tags.addAll(recipe.getMealCourse());
+        for (String tag : tags) {
+            String key = tag != null ? TermCounts.normalize(tag) : "";
+            if (!key.isEmpty()) features.add("t:" + key);
+        }
+        return features;
+    }
+
+    // Đặc trưng cho SimHash: từ của tiêu đề (x3), tên nguyên liệu (x2), cụm 3 từ liên tiếp trong các bước (x1)
+    private static Map<String, Integer> contentFeatures(Recipe recipe) {
+        Map<String, Integer> features = new HashMap<>();
+        for (String token : tokensOf(recipe.getTitle())) {
+            features.merge("t:" + token, 3, Integer::sum);
+        }
+        for (String name : ingredientNames(recipe)) {
+            String key = TermCounts.normalize(name);
+            if (!key.isEmpty()) features.merge("i:" + key, 2, Integer::sum);
+        }
+        if (recipe.getSteps() != null) {
+            StringBuilder steps = new StringBuilder();
+            for (Recipe.Step step : recipe.getSteps()) {
+                if (step != null && step.getContent() != null) steps.append(step.getContent()).append('\n');
+            }
+            List<String> words = tokensOf(steps.toString());
+            for (int i = 0; i + 2 < words.size(); i++) {
+                features.merge("s:" + words.get(i) + ' ' + words.get(i + 1) + ' ' + words.get(i + 2), 1, Integer::sum);
+            }
+        }
+        return features;
+    }
+
+    private static List<String> tokensOf(String text) {
+        return TextTokenizer.tokenize(TextTokenizer.fold(text));
+    }
+
+    // Văn bản tìm kiếm = tiêu đề + tên nguyên liệu + tags (ẩm thực, chế độ ăn, bữa ăn), đã bỏ dấu
+    private static String searchableText(Recipe recipe) {
+        StringBuilder sb = new StringBuilder();
+        if (recipe.getTitle() != null) sb.append(recipe.getTitle()).append('\n');
+        appendAll(sb, ingredientNames(recipe));
+        if (recipe.getCuisine() != null) sb.append(recipe.getCuisine()).append('\n');
+        appendAll(sb, recipe.getDietaryType());
+        appendAll(sb, recipe.getMealCourse());
+        return TextTokenizer.fold(sb.toString());
+    }
+
+    private static void appendAll(StringBuilder sb, List<String> values) {
+        if (values == null) return;
+        for (String v : values) {
+            if (v != null) sb.append(v).append('\n');
+        }
+    }
+}
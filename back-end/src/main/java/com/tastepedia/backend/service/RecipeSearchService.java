@@ -1,85 +1,431 @@
 package com.tastepedia.backend.service;
 
 import com.tastepedia.backend.model.Recipe;
-import com.tastepedia.backend.utils.StringUtils;
+import com.tastepedia.backend.payload.PantryMatch;
+import com.tastepedia.backend.payload.RecipeCard;
+import com.tastepedia.backend.payload.RecipeSearchFilter;
+import com.tastepedia.backend.payload.RecipeSearchPage;
+import com.tastepedia.backend.service.index.RecipeColumns.IntColumn;
+import com.tastepedia.backend.utils.AccentFolder;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
-import java.text.Normalizer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class RecipeSearchService {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
+    // Số kết quả tối đa của /search khi có keyword (xếp theo độ liên quan);
+    // bị cắt thì SearchResults.truncated = true và totalMatches vẫn là tổng số khớp
+    public static final int RELEVANCE_TOP_K = 200;
+
+    /** Kết quả /search: cards theo thứ tự, totalMatches = số công thức khớp trước khi cắt top-K. */
+    public record SearchResults(List<RecipeCard> cards, long totalMatches, boolean truncated) {}
+
+    // Đếm tối đa bao nhiêu kết quả cho estimatedTotal (tránh count toàn bộ collection)
+    private static final int COUNT_CAP = 1000;
+
+    // Mốc chia nhóm cho facet calories và giá (khớp với bộ lọc giá ở SearchPage)
+    private static final Object[] CALORIE_BOUNDARIES = {0, 300, 500, 800, 1200};
+    private static final Object[] PRICE_BOUNDARIES = {0, 10, 30};
+
     @Autowired
     private MongoTemplate mongoTemplate;
 
-    public List<Recipe> searchRecipes(String keyword, List<String> cuisines, List<String> dietaryTypes, Integer cookTimeMax, Integer caloriesMax, Integer carbMax, Integer fatMax, Integer proteinMax, Double minPrice, Double maxPrice) {
+    @Autowired
+    private RecipeIndexService recipeIndexService;
+
+    @Autowired
+    private SearchResultCache searchResultCache;
+
+    public SearchResults searchRecipes(String keyword, List<String> cuisines, List<String> dietaryTypes, Integer cookTimeMax, Integer caloriesMax, Integer carbMax, Integer fatMax, Integer proteinMax, Double minPrice, Double maxPrice, boolean fuzzy) {
+        RecipeSearchFilter filter = new RecipeSearchFilter();
+        filter.setKeyword(keyword);
+        filter.setCuisines(cuisines);
+        filter.setDietaryTypes(dietaryTypes);
+        filter.setCookTimeMax(cookTimeMax);
+        filter.setCaloriesMax(caloriesMax);
+        filter.setCarbMax(carbMax);
+        filter.setFatMax(fatMax);
+        filter.setProteinMax(proteinMax);
+        filter.setMinPrice(minPrice);
+        filter.setMaxPrice(maxPrice);
+        filter.setFuzzy(fuzzy);
+
+        if (recipeIndexService.isReady()) {
+            // Bộ lọc lặp lại (trang chủ, chọn lại cùng cuisine...) -> lấy danh sách id từ cache
+            RecipeSearchFilter key = SearchResultCache.canonicalKey(filter);
+            SearchResultCache.Result result = searchResultCache.get(key);
+            if (result == null) {
+                long generation = searchResultCache.generation();
+                // Lọc hoàn toàn trong bộ nhớ, Mongo chỉ lấy dữ liệu cho các id khớp.
+                // Có keyword -> xếp theo BM25 (top-K), không có -> giữ thứ tự tự nhiên
+                BitSet matches = recipeIndexService.match(filter);
+                List<Integer> ordinals = key.getKeyword() != null
+                        ? recipeIndexService.rankByRelevance(keyword, matches, RELEVANCE_TOP_K)
+                        : toList(matches);
+                result = new SearchResultCache.Result(recipeIndexService.idsOf(ordinals), matches.cardinality());
+                searchResultCache.put(key, result, generation);
+            }
+            return new SearchResults(recipeIndexService.loadCardsInOrder(result.ids()),
+                    result.totalMatches(), result.totalMatches() > result.ids().size());
+        }
+
+        List<Criteria> criteriaList = buildCriteria(filter);
+        if (SearchResultCache.canonicalKey(filter).getKeyword() != null) {
+            return searchByKeywordInMongo(keyword, criteriaList);
+        }
+
         Query query = new Query();
+        // Gộp các điều kiện lại (Dùng AND)
+        if (!criteriaList.isEmpty()) {
+            query.addCriteria(and(criteriaList));
+        }
+
+        List<RecipeCard> cards = findCards(query);
+        return new SearchResults(cards, cards.size(), false);
+    }
+
+    // Index chưa sẵn sàng: cùng giới hạn RELEVANCE_TOP_K với nhánh BM25, thứ tự xấp xỉ BM25
+    // (tiêu đề có boost cao nhất): khớp tiêu đề trước, sau đó khớp các trường khác, mỗi nhóm mới nhất trước
+    private SearchResults searchByKeywordInMongo(String keyword, List<Criteria> criteriaList) {
+        long total = mongoTemplate.count(new Query(and(criteriaList)), Recipe.class);
+        Sort newestFirst = Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id"));
+
+        List<Criteria> titleHits = new ArrayList<>(criteriaList);
+        titleHits.add(Criteria.where("title").regex(keyword, "i"));
+        List<RecipeCard> cards = new ArrayList<>(findCards(new Query(and(titleHits)).with(newestFirst).limit(RELEVANCE_TOP_K)));
+
+        if (cards.size() < RELEVANCE_TOP_K) {
+            List<Criteria> otherHits = new ArrayList<>(criteriaList);
+            otherHits.add(Criteria.where("title").not().regex(keyword, "i"));
+            cards.addAll(findCards(new Query(and(otherHits)).with(newestFirst).limit(RELEVANCE_TOP_K - cards.size())));
+        }
+        return new SearchResults(cards, total, total > cards.size());
+    }
+
+    /**
+     * Tìm kiếm có phân trang keyset theo (createdAt, id) giảm dần.
+     * cursor là chuỗi mờ (opaque) lấy từ nextCursor của trang trước, null = trang đầu.
+     * Chỉ trang đầu mới tính estimatedTotal.
+     */
+    public RecipeSearchPage searchPage(RecipeSearchFilter filter, int size, String cursor) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        if (recipeIndexService.isReady()) {
+            return searchPageInMemory(filter, pageSize, cursor);
+        }
+
+        RecipeSearchPage page = new RecipeSearchPage();
+        List<Criteria> criteriaList = buildCriteria(filter);
+        if (cursor == null) {
+            fillEstimatedTotal(page, criteriaList);
+            page.setFacets(computeFacets(criteriaList));
+        }
+
+        List<Criteria> pageCriteria = new ArrayList<>(criteriaList);
+        if (cursor != null) {
+            pageCriteria.add(afterCursor(cursor));
+        }
+
+        Query query = new Query();
+        if (!pageCriteria.isEmpty()) {
+            query.addCriteria(and(pageCriteria));
+        }
+        query.with(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id")));
+        // Lấy dư 1 bản ghi để biết còn trang sau hay không
+        query.limit(pageSize + 1);
+
+        List<RecipeCard> rows = findCards(query);
+        boolean hasMore = rows.size() > pageSize;
+        List<RecipeCard> items = hasMore ? new ArrayList<>(rows.subList(0, pageSize)) : rows;
+
+        page.setItems(items);
+        page.setNextCursor(hasMore ? encodeCursor(items.get(items.size() - 1)) : null);
+        return page;
+    }
+
+    /** "Nấu với những gì tôi có": công thức xếp theo tỉ lệ nguyên liệu đã có, kèm danh sách còn thiếu. */
+    public List<PantryMatch> pantrySearch(List<String> owned, int limit, double minCoverage) {
+        List<RecipeIndexService.PantryHit> hits = recipeIndexService.pantry(owned, limit, minCoverage);
+        Map<String, RecipeCard> cards = new HashMap<>();
+        for (RecipeCard card : recipeIndexService.loadCardsInOrder(hits.stream().map(RecipeIndexService.PantryHit::recipeId).toList())) {
+            cards.put(card.getId(), card);
+        }
+
+        List<PantryMatch> results = new ArrayList<>();
+        for (RecipeIndexService.PantryHit hit : hits) {
+            RecipeCard card = cards.get(hit.recipeId());
+            if (card == null) continue;
+            PantryMatch match = new PantryMatch();
+            match.setRecipe(card);
+            match.setMatchedCount(hit.matched());
+            match.setTotalCount(hit.total());
+            match.setCoverage(hit.total() == 0 ? 0 : (double) hit.matched() / hit.total());
+            match.setMissingIngredients(hit.missing());
+            results.add(match);
+        }
+        return results;
+    }
+
+    // Cùng kết quả với nhánh Mongo nhưng lọc, sắp xếp, đếm và facet đều chạy trên index;
+    // tổng số ở đây là chính xác (cardinality), không cần COUNT_CAP
+    private RecipeSearchPage searchPageInMemory(RecipeSearchFilter filter, int pageSize, String cursor) {
+        CursorPosition after = cursor != null ? decodeCursor(cursor) : null;
+        BitSet matches = recipeIndexService.match(filter);
+
+        RecipeSearchPage page = new RecipeSearchPage();
+        if (cursor == null) {
+            page.setEstimatedTotal((long) matches.cardinality());
+            page.setFacets(computeFacets(matches));
+        }
+
+        List<Integer> rows = after != null
+                ? recipeIndexService.newestFirst(matches, after.createdAt(), after.id(), pageSize + 1)
+                : recipeIndexService.newestFirst(matches, 0L, null, pageSize + 1);
+        boolean hasMore = rows.size() > pageSize;
+        List<Integer> pageRows = hasMore ? rows.subList(0, pageSize) : rows;
+
+        List<RecipeCard> items = recipeIndexService.loadCardsInOrder(recipeIndexService.idsOf(pageRows));
+        page.setItems(items);
+        page.setNextCursor(hasMore && !items.isEmpty() ? encodeCursor(items.get(items.size() - 1)) : null);
+        return page;
+    }
+
+    private Map<String, Map<String, Long>> computeFacets(BitSet matches) {
+        Map<String, Map<String, Long>> facets = new LinkedHashMap<>();
+        facets.put("cuisine", recipeIndexService.countByValue(RecipeIndexService.CUISINE, matches));
+        facets.put("dietaryType", recipeIndexService.countByValue(RecipeIndexService.DIETARY_TYPE, matches));
+        facets.put("mealCourse", recipeIndexService.countByValue(RecipeIndexService.MEAL_COURSE, matches));
+        facets.put("difficulty", recipeIndexService.countByValue(RecipeIndexService.DIFFICULTY, matches));
+        facets.put("calories", toCounts(recipeIndexService.histogram(IntColumn.CALORIES, toInts(CALORIE_BOUNDARIES), matches), CALORIE_BOUNDARIES));
+        facets.put("price", toCounts(recipeIndexService.costHistogram(toInts(PRICE_BOUNDARIES), matches), PRICE_BOUNDARIES));
+        return facets;
+    }
+
+    // Đếm theo khoảng -> cùng nhãn với $bucket ("0-300", ..., "1200+"), bỏ khoảng rỗng
+    private static Map<String, Long> toCounts(long[] bucketCounts, Object[] boundaries) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < bucketCounts.length; i++) {
+            if (bucketCounts[i] == 0) continue;
+            counts.put(bucketLabel(i < boundaries.length - 1 ? boundaries[i] : "other", boundaries), bucketCounts[i]);
+        }
+        return counts;
+    }
+
+    private static int[] toInts(Object[] boundaries) {
+        int[] result = new int[boundaries.length];
+        for (int i = 0; i < boundaries.length; i++) {
+            result[i] = ((Number) boundaries[i]).intValue();
+        }
+        return result;
+    }
+
+    private static List<Integer> toList(BitSet bits) {
+        List<Integer> result = new ArrayList<>(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            result.add(i);
+        }
+        return result;
+    }
+
+    /**
+     * Chuyển bộ lọc thành danh sách Criteria (AND).
+     * Chỉ dùng khi index trong bộ nhớ chưa sẵn sàng (khi đó fuzzy bị bỏ qua, regex không làm được).
+     */
+    private List<Criteria> buildCriteria(RecipeSearchFilter filter) {
         List<Criteria> criteriaList = new ArrayList<>();
+        String keyword = filter.getKeyword();
 
-        // 1. Tìm theo tên (keyword) - Dùng Shadow Field (searchText)
+        // 1. Tìm theo tên (keyword)
         if (keyword != null && !keyword.trim().isEmpty()) {
             // Chuyển từ khóa tìm kiếm sang không dấu: "Bánh" -> "banh"
-            String keywordNoAccent = StringUtils.removeAccent(keyword.trim()).toLowerCase();
-            
-            // Tìm trên trường searchText
+            String keywordNoAccent = AccentFolder.foldLowerCase(keyword.trim());
+
             // OR logic: Tìm trên title (cho chắc) HOẶC searchText
             Criteria titleCriteria = Criteria.where("title").regex(keyword, "i"); // Tìm có dấu
             Criteria shadowCriteria = Criteria.where("searchText").regex(keywordNoAccent, "i"); // Tìm không dấu (chính xác hơn)
-            
+
             criteriaList.add(new Criteria().orOperator(titleCriteria, shadowCriteria));
         }
 
         // 2. Tìm theo Quốc gia (cuisine) - Hỗ trợ nhiều quốc gia (OR logic inside category)
-        if (cuisines != null && !cuisines.isEmpty()) {
-            criteriaList.add(Criteria.where("cuisine").in(cuisines));
+        if (filter.getCuisines() != null && !filter.getCuisines().isEmpty()) {
+            criteriaList.add(Criteria.where("cuisine").in(filter.getCuisines()));
         }
 
         // 3. Tìm theo Loại ăn uống (dietaryType) - Hỗ trợ nhiều loại
-        if (dietaryTypes != null && !dietaryTypes.isEmpty()) {
-            criteriaList.add(Criteria.where("dietaryType").in(dietaryTypes));
+        if (filter.getDietaryTypes() != null && !filter.getDietaryTypes().isEmpty()) {
+            criteriaList.add(Criteria.where("dietaryType").in(filter.getDietaryTypes()));
         }
 
         // 4. Thời gian nấu tối đa
-        if (cookTimeMax != null && cookTimeMax > 0) {
-            criteriaList.add(Criteria.where("cookTime").lte(cookTimeMax));
+        if (filter.getCookTimeMax() != null && filter.getCookTimeMax() > 0) {
+            criteriaList.add(Criteria.where("cookTime").lte(filter.getCookTimeMax()));
         }
 
         // 5. Dinh dưỡng (Calories, Carb, Fat, Protein)
-        if (caloriesMax != null && caloriesMax > 0) {
-            criteriaList.add(Criteria.where("nutrition.calories").lte(caloriesMax));
+        if (filter.getCaloriesMax() != null && filter.getCaloriesMax() > 0) {
+            criteriaList.add(Criteria.where("nutrition.calories").lte(filter.getCaloriesMax()));
         }
-        if (carbMax != null && carbMax > 0) {
-            criteriaList.add(Criteria.where("nutrition.carb").lte(carbMax));
+        if (filter.getCarbMax() != null && filter.getCarbMax() > 0) {
+            criteriaList.add(Criteria.where("nutrition.carb").lte(filter.getCarbMax()));
         }
-        if (fatMax != null && fatMax > 0) {
-            criteriaList.add(Criteria.where("nutrition.fat").lte(fatMax));
+        if (filter.getFatMax() != null && filter.getFatMax() > 0) {
+            criteriaList.add(Criteria.where("nutrition.fat").lte(filter.getFatMax()));
         }
-        if (proteinMax != null && proteinMax > 0) {
-            criteriaList.add(Criteria.where("nutrition.protein").lte(proteinMax));
+        if (filter.getProteinMax() != null && filter.getProteinMax() > 0) {
+            criteriaList.add(Criteria.where("nutrition.protein").lte(filter.getProteinMax()));
         }
 
         // 6. Khoảng giá (totalCost)
-        if (minPrice != null || maxPrice != null) {
-            if (minPrice != null && maxPrice != null) {
-                criteriaList.add(Criteria.where("totalCost").gte(minPrice).lte(maxPrice));
-            } else if (minPrice != null) {
-                criteriaList.add(Criteria.where("totalCost").gte(minPrice));
-            } else if (maxPrice != null) {
-                criteriaList.add(Criteria.where("totalCost").lte(maxPrice));
-            }
+        Double minPrice = filter.getMinPrice();
+        Double maxPrice = filter.getMaxPrice();
+        if (minPrice != null && maxPrice != null) {
+            criteriaList.add(Criteria.where("totalCost").gte(minPrice).lte(maxPrice));
+        } else if (minPrice != null) {
+            criteriaList.add(Criteria.where("totalCost").gte(minPrice));
+        } else if (maxPrice != null) {
+            criteriaList.add(Criteria.where("totalCost").lte(maxPrice));
         }
 
-        // Gộp các điều kiện lại (Dùng AND)
+        return criteriaList;
+    }
+
+    // Không có bộ lọc -> dùng metadata của collection; có bộ lọc -> count giới hạn COUNT_CAP
+    private void fillEstimatedTotal(RecipeSearchPage page, List<Criteria> criteriaList) {
+        if (criteriaList.isEmpty()) {
+            page.setEstimatedTotal(mongoTemplate.estimatedCount(Recipe.class));
+            return;
+        }
+        Query countQuery = new Query(and(criteriaList)).limit(COUNT_CAP);
+        long count = mongoTemplate.count(countQuery, Recipe.class);
+        page.setEstimatedTotal(count);
+        page.setTotalCapped(count >= COUNT_CAP);
+    }
+
+    /**
+     * Tính tất cả facet cho bộ lọc hiện tại trong MỘT lần aggregation ($facet),
+     * thay vì mỗi facet một query riêng.
+     */
+    private Map<String, Map<String, Long>> computeFacets(List<Criteria> criteriaList) {
+        List<AggregationOperation> operations = new ArrayList<>();
         if (!criteriaList.isEmpty()) {
-            query.addCriteria(new Criteria().andOperator(criteriaList.toArray(new Criteria[0])));
+            operations.add(Aggregation.match(and(criteriaList)));
+        }
+        operations.add(Aggregation
+                .facet(Aggregation.sortByCount("cuisine")).as("cuisine")
+                .and(Aggregation.unwind("dietaryType"), Aggregation.sortByCount("dietaryType")).as("dietaryType")
+                .and(Aggregation.unwind("mealCourse"), Aggregation.sortByCount("mealCourse")).as("mealCourse")
+                .and(Aggregation.sortByCount("difficulty")).as("difficulty")
+                .and(Aggregation.match(Criteria.where("nutrition.calories").ne(null)),
+                        Aggregation.bucket("nutrition.calories").withBoundaries(CALORIE_BOUNDARIES).withDefaultBucket("other")).as("calories")
+                .and(Aggregation.match(Criteria.where("totalCost").ne(null)),
+                        Aggregation.bucket("totalCost").withBoundaries(PRICE_BOUNDARIES).withDefaultBucket("other")).as("price"));
+
+        Document result = mongoTemplate
+                .aggregate(Aggregation.newAggregation(operations), Recipe.class, Document.class)
+                .getUniqueMappedResult();
+
+        Map<String, Map<String, Long>> facets = new LinkedHashMap<>();
+        if (result == null) return facets;
+        for (String name : List.of("cuisine", "dietaryType", "mealCourse", "difficulty")) {
+            facets.put(name, toCounts(result.getList(name, Document.class), null));
+        }
+        facets.put("calories", toCounts(result.getList("calories", Document.class), CALORIE_BOUNDARIES));
+        facets.put("price", toCounts(result.getList("price", Document.class), PRICE_BOUNDARIES));
+        return facets;
+    }
+
+    // Kết quả $sortByCount / $bucket: [{ _id: <giá trị hoặc mốc dưới>, count: n }]
+    private static Map<String, Long> toCounts(List<Document> rows, Object[] boundaries) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        if (rows == null) return counts;
+        for (Document row : rows) {
+            Object key = row.get("_id");
+            if (key == null) continue;
+            long count = ((Number) row.get("count")).longValue();
+            counts.put(boundaries != null ? bucketLabel(key, boundaries) : key.toString(), count);
+        }
+        return counts;
+    }
+
+    // Mốc dưới 300 -> "300-500", bucket mặc định -> "1200+"
+    private static String bucketLabel(Object lowerBound, Object[] boundaries) {
+        String last = boundaries[boundaries.length - 1].toString();
+        if ("other".equals(lowerBound)) return last + "+";
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            if (((Number) boundaries[i]).doubleValue() == ((Number) lowerBound).doubleValue()) {
+                return boundaries[i] + "-" + boundaries[i + 1];
+            }
         }
+        return lowerBound.toString();
+    }
+
+    // Điều kiện "đứng sau cursor" theo thứ tự (createdAt DESC, id DESC)
+    private Criteria afterCursor(String cursor) {
+        CursorPosition after = decodeCursor(cursor);
+        Date createdAt = new Date(after.createdAt());
+        Object idValue = ObjectId.isValid(after.id()) ? new ObjectId(after.id()) : after.id();
+
+        return new Criteria().orOperator(
+                Criteria.where("createdAt").lt(createdAt),
+                new Criteria().andOperator(
+                        Criteria.where("createdAt").is(createdAt),
+                        Criteria.where("id").lt(idValue)
+                )
+        );
+    }
+
+    private record CursorPosition(long createdAt, String id) {}
+
+    private static CursorPosition decodeCursor(String cursor) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ");
+        }
+        int sep = decoded.indexOf(':');
+        if (sep <= 0 || sep == decoded.length() - 1) {
+            throw new IllegalArgumentException("Cursor không hợp lệ");
+        }
+        try {
+            return new CursorPosition(Long.parseLong(decoded.substring(0, sep)), decoded.substring(sep + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ");
+        }
+    }
+
+    // Chỉ lấy các field của thẻ (projection), không đọc cả document
+    private List<RecipeCard> findCards(Query query) {
+        return mongoTemplate.query(Recipe.class).as(RecipeCard.class).matching(query).all();
+    }
+
+    private static String encodeCursor(RecipeCard last) {
+        long createdAt = last.getCreatedAt() != null ? last.getCreatedAt().getTime() : 0L;
+        String raw = createdAt + ":" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
 
-        return mongoTemplate.find(query, Recipe.class);
+    private static Criteria and(List<Criteria> criteriaList) {
+        return new Criteria().andOperator(criteriaList.toArray(new Criteria[0]));
     }
 }
@@ -0,0 +1,325 @@
+package com.tastepedia.backend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Gợi ý công thức theo sở thích onboarding (diet, allergies, cuisines).
+ *
+ * Sở thích được chuẩn hoá thành một Profile (record -> equals/hashCode làm khoá).
+ * Mỗi profile giữ hai bitset (công thức phù hợp, công thức thuộc ẩm thực yêu thích) và
+ * danh sách top-N id đã xếp hạng; lần xem tiếp theo chỉ là một lần tra map.
+ * Khi một công thức thay đổi, chỉ bit của công thức đó được tính lại cho từng profile,
+ * và top-N chỉ được dựng lại nếu kết quả có thể đổi.
+ * Với user đã có món yêu thích, danh sách được trộn thêm tín hiệu đồng lưu từ CoFavoriteService.
+ */
+@Service
+public class RecommendationService {
+
+    public static final int TOP_N = 6;
+
+    // Số vị trí tối đa dành cho món "người khác cũng lưu" khi trộn
+    private static final int CO_FAVORITE_SLOTS = 3;
+
+    // Mỗi profile giữ dư ứng viên để còn đủ TOP_N sau khi trộn và bỏ trùng
+    private static final int RANKED_CANDIDATES = TOP_N * 2;
+
+    // Số profile tối đa giữ trong bộ nhớ (LRU)
+    private static final int MAX_PROFILES = 1000;
+
+    @Autowired
+    private RecipeIndexService recipeIndexService;
+
+    @Autowired
+    private CoFavoriteService coFavoriteService;
+
+    /** Sở thích đã chuẩn hoá: chữ thường, danh sách sắp xếp, không trùng. */
+    public record Profile(String diet, List<String> allergies, List<String> cuisines) {
+    }
+
+    private static class Entry {
+        final BitSet eligible;
+        final BitSet preferred;
+        // Thay nguyên list (bất biến) dưới khoá; recommend() đọc ngoài khoá nên cần volatile
+        volatile List<String> topIds;
+
+        Entry(BitSet eligible, BitSet preferred) {
+            this.eligible = eligible;
+            this.preferred = preferred;
+        }
+    }
+
+    private final Map<Profile, Entry> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Profile, Entry> eldest) {
+            return size() > MAX_PROFILES;
+        }
+    };
+
+    // Tăng mỗi lần có công thức thay đổi; profile tính từ thế hệ cũ sẽ không được ghi vào cache
+    private long generation = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong incrementalUpdates = new AtomicLong();
+    private final AtomicLong reranks = new AtomicLong();
+
+    /**
+     * Top-N id công thức cho sở thích này, đã xếp hạng (ẩm thực yêu thích trước), trộn thêm tín hiệu
+     * "người lưu món bạn thích cũng lưu":
+     * tối đa CO_FAVORITE_SLOTS vị trí đầu dành cho món đồng lưu điểm cao nhất (vẫn phải hợp sở thích),
+     * phần còn lại lấy từ danh sách theo profile.
+     */
+    public List<String> recommend(Map<String, Object> preferences, List<String> favoriteIds) {
+        Entry entry = entryFor(profileOf(preferences));
+        Map<String, Float> coScores = coFavoriteService.scoresFor(favoriteIds);
+
+        List<String> picks = new ArrayList<>(TOP_N);
+        if (!coScores.isEmpty()) {
+            List<Map.Entry<String, Float>> candidates = new ArrayList<>(coScores.entrySet());
+            candidates.sort(Map.Entry.<String, Float>comparingByValue().reversed());
+            synchronized (this) {
+                for (Map.Entry<String, Float> candidate : candidates) {
+                    if (picks.size() >= CO_FAVORITE_SLOTS) break;
+                    int ord = recipeIndexService.ordinalOf(candidate.getKey());
+                    if (ord >= 0 && entry.eligible.get(ord)) picks.add(candidate.getKey());
+                }
+            }
+        }
+        for (String id : entry.topIds) {
+            if (picks.size() >= TOP_N) break;
+            if (!picks.contains(id)) picks.add(id);
+        }
+        return picks;
+    }
+
+    @EventListener
+    public synchronized void onRecipeChanged(RecipeChangedEvent event) {
+        generation++;
+        if (event.recipeId() == null) {
+            entries.clear();
+            return;
+        }
+        int ord = recipeIndexService.ordinalOf(event.recipeId());
+        for (Map.Entry<Profile, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            boolean wasListed = entry.topIds.contains(event.recipeId());
+            if (ord < 0) {
+                // Đã bị xoá: bit cũ vô hại (topIds luôn AND với live), chỉ cần dựng lại nếu đang được gợi ý
+                if (wasListed) rerank(entry);
+                continue;
+            }
+            boolean eligible = isEligible(e.getKey(), ord);
+            boolean preferred = eligible && isPreferred(e.getKey(), ord);
+            entry.eligible.set(ord, eligible);
+            entry.preferred.set(ord, preferred);
+            if (wasListed || (eligible && wouldEnter(entry, ord, preferred))) rerank(entry);
+            incrementalUpdates.incrementAndGet();
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("profiles", entries.size());
+        stats.put("maxProfiles", MAX_PROFILES);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("incrementalUpdates", incrementalUpdates.get());
+        stats.put("reranks", reranks.get());
+        return stats;
+    }
+
+    public static Profile profileOf(Map<String, Object> preferences) {
+        Object diet = preferences.get("diet");
+        return new Profile(
+                diet != null ? diet.toString().toLowerCase() : null,
+                normalizedList(preferences.get("allergies")),
+                normalizedList(preferences.get("cuisines")));
+    }
+
+    // --- HELPER ---
+
+    private Entry entryFor(Profile profile) {
+        long computedAtGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(profile);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry;
+            }
+            misses.incrementAndGet();
+            computedAtGeneration = generation;
+        }
+
+        // Tính ngoài khoá để không chặn các request đã có trong cache
+        Entry computed = compute(profile);
+        synchronized (this) {
+            // Có công thức thay đổi trong lúc đang tính -> không cache, lần sau tính lại
+            if (computedAtGeneration != generation) return computed;
+            // Có thể đã có luồng khác tính xong trước
+            Entry existing = entries.putIfAbsent(profile, computed);
+            return existing != null ? existing : computed;
+        }
+    }
+
+    // Tính toàn bộ một profile bằng bitmap index: mỗi điều kiện là một phép AND / ANDNOT trên bitset
+    private Entry compute(Profile profile) {
+        BitSet eligible = recipeIndexService.liveRecipes();
+
+        // 1. Filter by Diet
+        // Công thức không khai báo dietaryType luôn được giữ lại (như logic cũ)
+        Predicate<String> dietMatches = dietPredicate(profile.diet());
+        if (dietMatches != null) {
+            BitSet excluded = recipeIndexService.withAnyValue(RecipeIndexService.DIETARY_TYPE);
+            excluded.andNot(recipeIndexService.withAnyValue(RecipeIndexService.DIETARY_TYPE, dietMatches));
+            eligible.andNot(excluded);
+        }
+
+        // 2. Filter by Allergies
+        if (!profile.allergies().isEmpty()) {
+            eligible.andNot(recipeIndexService.withAnyValue(RecipeIndexService.ALLERGENS, allergenPredicate(profile)));
+            Set<String> allergyIds = RecipeIndexService.mentionedIngredientIds(profile.allergies());
+            if (!allergyIds.isEmpty()) {
+                eligible.andNot(recipeIndexService.withAnyValue(RecipeIndexService.INGREDIENT_ID, allergyIds::contains));
+            }
+        }
+
+        // 3. Prioritize by Cuisine (but don't exclude)
+        BitSet preferred = new BitSet();
+        if (!profile.cuisines().isEmpty()) {
+            preferred = recipeIndexService.withAnyValue(RecipeIndexService.CUISINE, cuisinePredicate(profile));
+            preferred.and(eligible);
+        }
+
+        Entry entry = new Entry(eligible, preferred);
+        entry.topIds = rank(entry);
+        return entry;
+    }
+
+    // Món thuộc ẩm thực yêu thích lên trước, giữ nguyên thứ tự gốc trong từng nhóm, lấy RANKED_CANDIDATES
+    private List<String> rank(Entry entry) {
+        BitSet live = recipeIndexService.liveRecipes();
+        BitSet preferred = (BitSet) entry.preferred.clone();
+        preferred.and(live);
+        BitSet others = (BitSet) entry.eligible.clone();
+        others.and(live);
+        others.andNot(preferred);
+
+        List<Integer> top = new ArrayList<>(RANKED_CANDIDATES);
+        for (BitSet group : List.of(preferred, others)) {
+            for (int ord = group.nextSetBit(0); ord >= 0 && top.size() < RANKED_CANDIDATES; ord = group.nextSetBit(ord + 1)) {
+                top.add(ord);
+            }
+        }
+        return List.copyOf(recipeIndexService.idsOf(top));
+    }
+
+    private void rerank(Entry entry) {
+        entry.topIds = rank(entry);
+        reranks.incrementAndGet();
+    }
+
+    /**
+     * Công thức ord (chưa có trong topIds, phù hợp profile) có lọt vào danh sách nếu xếp lại không.
+     * rank() lấy nhóm ưu tiên trước rồi ordinal tăng dần, nên chỉ cần so với phần tử cuối:
+     * danh sách chưa đủ, hoặc ord đứng trước phần tử cuối theo đúng thứ tự đó.
+     */
+    private boolean wouldEnter(Entry entry, int ord, boolean preferred) {
+        List<String> top = entry.topIds;
+        if (top.size() < RANKED_CANDIDATES) return true;
+        int lastOrd = recipeIndexService.ordinalOf(top.get(top.size() - 1));
+        if (lastOrd < 0) return true; // Phần tử cuối đã bị xoá: xếp lại cho chắc
+        boolean lastPreferred = entry.preferred.get(lastOrd);
+        if (preferred != lastPreferred) return preferred;
+        return ord < lastOrd;
+    }
+
+    // Bản một-công-thức của compute(), dùng cùng các predicate
+    private boolean isEligible(Profile profile, int ord) {
+        Predicate<String> dietMatches = dietPredicate(profile.diet());
+        if (dietMatches != null) {
+            List<String> diets = recipeIndexService.valuesOf(RecipeIndexService.DIETARY_TYPE, ord);
+            if (!diets.isEmpty() && diets.stream().noneMatch(dietMatches)) return false;
+        }
+        if (!profile.allergies().isEmpty()) {
+            List<String> allergens = recipeIndexService.valuesOf(RecipeIndexService.ALLERGENS, ord);
+            if (allergens.stream().anyMatch(allergenPredicate(profile))) return false;
+            Set<String> allergyIds = RecipeIndexService.mentionedIngredientIds(profile.allergies());
+            List<String> ingredientIds = recipeIndexService.valuesOf(RecipeIndexService.INGREDIENT_ID, ord);
+            if (ingredientIds.stream().anyMatch(allergyIds::contains)) return false;
+        }
+        return true;
+    }
+
+    private boolean isPreferred(Profile profile, int ord) {
+        if (profile.cuisines().isEmpty()) return false;
+        return recipeIndexService.valuesOf(RecipeIndexService.CUISINE, ord).stream().anyMatch(cuisinePredicate(profile));
+    }
+
+    private static Predicate<String> dietPredicate(String diet) {
+        if (diet == null) return null;
+        return switch (diet) {
+            case "vegetarian" -> d -> d.toLowerCase().contains("vegetarian") || d.toLowerCase().contains("vegan");
+            case "vegan" -> d -> d.toLowerCase().contains("vegan");
+            case "keto" -> d -> d.toLowerCase().contains("keto") || d.toLowerCase().contains("low-carb");
+            default -> null; // omnivore hoặc chế độ khác: chấp nhận tất cả
+        };
+    }
+
+    private static Predicate<String> allergenPredicate(Profile profile) {
+        return a -> {
+            String lower = a.toLowerCase();
+            return profile.allergies().stream().anyMatch(lower::contains);
+        };
+    }
+
+    private static Predicate<String> cuisinePredicate(Profile profile) {
+        return c -> profile.cuisines().stream().anyMatch(code -> matchesCuisine(c, code));
+    }
+
+    // Helper method to map cuisine codes to full names
+    private static boolean matchesCuisine(String recipeCuisine, String cuisineCode) {
+        if (recipeCuisine == null || cuisineCode == null) return false;
+
+        String cuisineLower = recipeCuisine.toLowerCase();
+
+        // Mapping from onboarding codes to recipe cuisine names
+        return switch (cuisineCode) {
+            case "vn" -> cuisineLower.contains("viet") || cuisineLower.contains("vietnam");
+            case "it" -> cuisineLower.contains("ital");
+            case "jp" -> cuisineLower.contains("japan");
+            case "kr" -> cuisineLower.contains("korea");
+            case "cn" -> cuisineLower.contains("chin");
+            case "in" -> cuisineLower.contains("india");
+            case "th" -> cuisineLower.contains("thai");
+            case "mx" -> cuisineLower.contains("mexican");
+            case "fr" -> cuisineLower.contains("french");
+            case "us" -> cuisineLower.contains("american");
+            default -> false;
+        };
+    }
+
+    private static List<String> normalizedList(Object value) {
+        TreeSet<String> result = new TreeSet<>();
+        if (value instanceof List<?> list) {
+            for (Object item : list) {
+                if (item != null) result.add(item.toString().trim().toLowerCase());
+            }
+        }
+        return new ArrayList<>(result);
+    }
+}
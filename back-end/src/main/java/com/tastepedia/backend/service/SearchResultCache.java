@@ -0,0 +1,159 @@
+package com.tastepedia.backend.service;
+
+import com.tastepedia.backend.payload.RecipeSearchFilter;
+import com.tastepedia.backend.service.index.TextTokenizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache LRU (giới hạn số mục) cho kết quả /api/recipes/search.
+ * Khoá là bộ lọc đã chuẩn hoá (keyword bỏ dấu, danh sách sắp xếp, giá trị "không lọc" = null),
+ * giá trị là danh sách id theo đúng thứ tự kết quả (kèm tổng số công thức khớp trước khi cắt top-K), không giữ entity.
+ *
+ * Khi một công thức thay đổi (RecipeChangedEvent), chỉ huỷ các mục có chứa công thức đó
+ * hoặc mà phiên bản mới của công thức sẽ khớp; các mục khác giữ nguyên.
+ */
+@Service
+public class SearchResultCache {
+
+    private static final int MAX_ENTRIES = 500;
+
+    /** ids theo thứ tự trả về; totalMatches = số công thức khớp bộ lọc (có thể lớn hơn ids.size() khi bị cắt top-K). */
+    public record Result(List<String> ids, int totalMatches) {}
+
+    @Autowired
+    private RecipeIndexService recipeIndexService;
+
+    private final Map<RecipeSearchFilter, Result> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<RecipeSearchFilter, Result> eldest) {
+            if (size() > MAX_ENTRIES) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // Tăng mỗi lần có thay đổi; kết quả tính từ thế hệ cũ sẽ không được ghi vào cache
+    private long generation = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /** Kết quả đã cache cho khoá (đã chuẩn hoá), null nếu chưa có. */
+    public synchronized Result get(RecipeSearchFilter key) {
+        Result result = entries.get(key);
+        if (result != null) hits.incrementAndGet();
+        else misses.incrementAndGet();
+        return result;
+    }
+
+    /** Lấy trước khi tính kết quả, truyền lại cho put(). */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized void put(RecipeSearchFilter key, Result result, long computedAtGeneration) {
+        // Có công thức thay đổi trong lúc đang tính -> kết quả có thể đã cũ, bỏ qua
+        if (computedAtGeneration != generation) return;
+        entries.put(key, new Result(List.copyOf(result.ids()), result.totalMatches()));
+    }
+
+    /**
+     * Tăng thế hệ và chụp các mục dưới khoá; việc kiểm tra matches() (có thể chạy BK-tree với khoá fuzzy)
+     * làm ngoài khoá để get() trên /search không phải chờ. Mục nào được ghi sau lúc chụp đã tính
+     * ở thế hệ mới nên không cần xét; mục bị thay trong lúc kiểm tra thì giữ nguyên (remove theo cả giá trị).
+     */
+    @EventListener
+    public void onRecipeChanged(RecipeChangedEvent event) {
+        List<Map.Entry<RecipeSearchFilter, Result>> snapshot;
+        synchronized (this) {
+            generation++;
+            if (event.recipeId() == null) {
+                invalidations.addAndGet(entries.size());
+                entries.clear();
+                return;
+            }
+            snapshot = new ArrayList<>(entries.size());
+            for (Map.Entry<RecipeSearchFilter, Result> entry : entries.entrySet()) {
+                snapshot.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        List<Map.Entry<RecipeSearchFilter, Result>> stale = new ArrayList<>();
+        for (Map.Entry<RecipeSearchFilter, Result> entry : snapshot) {
+            if (entry.getValue().ids().contains(event.recipeId())
+                    || recipeIndexService.matches(entry.getKey(), event.recipeId())) {
+                stale.add(entry);
+            }
+        }
+        if (stale.isEmpty()) return;
+
+        synchronized (this) {
+            for (Map.Entry<RecipeSearchFilter, Result> entry : stale) {
+                if (entries.remove(entry.getKey(), entry.getValue())) invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", entries.size());
+        stats.put("maxSize", MAX_ENTRIES);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    /**
+     * Khoá chuẩn hoá: hai bộ lọc cho cùng kết quả thì cho cùng khoá
+     * ("Phở  Bò" = "pho bo", [Korean, Japanese] = [Japanese, Korean], caloriesMax=0 = không lọc).
+     */
+    public static RecipeSearchFilter canonicalKey(RecipeSearchFilter filter) {
+        RecipeSearchFilter key = new RecipeSearchFilter();
+        if (filter.getKeyword() != null) {
+            String keyword = String.join(" ", TextTokenizer.tokenize(TextTokenizer.fold(filter.getKeyword())));
+            key.setKeyword(keyword.isEmpty() ? null : keyword);
+        }
+        key.setCuisines(sortedDistinct(filter.getCuisines()));
+        key.setDietaryTypes(sortedDistinct(filter.getDietaryTypes()));
+        key.setCookTimeMax(positiveOrNull(filter.getCookTimeMax()));
+        key.setCaloriesMax(positiveOrNull(filter.getCaloriesMax()));
+        key.setCarbMax(positiveOrNull(filter.getCarbMax()));
+        key.setFatMax(positiveOrNull(filter.getFatMax()));
+        key.setProteinMax(positiveOrNull(filter.getProteinMax()));
+        key.setMinPrice(filter.getMinPrice());
+        key.setMaxPrice(filter.getMaxPrice());
+        key.setFuzzy(filter.isFuzzy() && key.getKeyword() != null);
+        return key;
+    }
+
+    private static List<String> sortedDistinct(List<String> values) {
+        if (values == null) return null;
+        TreeSet<String> sorted = new TreeSet<>();
+        for (String v : values) {
+            if (v != null) sorted.add(v);
+        }
+        return sorted.isEmpty() ? null : new ArrayList<>(sorted);
+    }
+
+    private static Integer positiveOrNull(Integer value) {
+        return value != null && value > 0 ? value : null;
+    }
+}
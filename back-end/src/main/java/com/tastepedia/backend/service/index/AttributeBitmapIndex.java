@@ -0,0 +1,123 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Bitmap index cho một thuộc tính phân loại (cuisine, dietaryType, allergens...).
+ * Giá trị được mã hoá từ điển (value -> id nhỏ), mỗi id có một BitSet theo ordinal công thức.
+ * Điều kiện lọc vì vậy chỉ là vài phép OR / AND / ANDNOT trên bitset.
+ * Không thread-safe, RecipeIndexService chịu trách nhiệm khoá.
+ */
+public class AttributeBitmapIndex {
+
+    private static final int[] NO_VALUES = new int[0];
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+    private final List<BitSet> bitmaps = new ArrayList<>();
+
+    // Công thức có ít nhất một giá trị cho thuộc tính này
+    private final BitSet hasAnyValue = new BitSet();
+
+    // Các value id đã gán cho từng ordinal, để xoá bit khi công thức được cập nhật
+    private final List<int[]> valueIdsByOrdinal = new ArrayList<>();
+
+    public void put(int ordinal, Collection<String> rawValues) {
+        remove(ordinal);
+        if (rawValues == null || rawValues.isEmpty()) return;
+
+        int[] ids = new int[rawValues.size()];
+        int count = 0;
+        for (String raw : rawValues) {
+            if (raw == null || raw.trim().isEmpty()) continue;
+            int id = dictionary.computeIfAbsent(raw.trim(), this::newValue);
+            bitmaps.get(id).set(ordinal);
+            ids[count++] = id;
+        }
+        if (count == 0) return;
+
+        hasAnyValue.set(ordinal);
+        while (valueIdsByOrdinal.size() <= ordinal) valueIdsByOrdinal.add(NO_VALUES);
+        valueIdsByOrdinal.set(ordinal, count == ids.length ? ids : Arrays.copyOf(ids, count));
+    }
+
+    public void remove(int ordinal) {
+        if (ordinal >= valueIdsByOrdinal.size()) return;
+        for (int id : valueIdsByOrdinal.get(ordinal)) {
+            bitmaps.get(id).clear(ordinal);
+        }
+        valueIdsByOrdinal.set(ordinal, NO_VALUES);
+        hasAnyValue.clear(ordinal);
+    }
+
+    public void clear() {
+        dictionary.clear();
+        values.clear();
+        bitmaps.clear();
+        hasAnyValue.clear();
+        valueIdsByOrdinal.clear();
+    }
+
+    /** Công thức có đúng giá trị này (so khớp chính xác như Mongo $in). */
+    public BitSet get(String value) {
+        Integer id = dictionary.get(value);
+        return id != null ? (BitSet) bitmaps.get(id).clone() : new BitSet();
+    }
+
+    /**
+     * OR bitmap của mọi giá trị trong từ điển thoả predicate.
+     * Predicate chỉ chạy một lần cho mỗi giá trị phân biệt, không phải cho mỗi công thức.
+     */
+    public BitSet anyOf(Predicate<String> valuePredicate) {
+        BitSet result = new BitSet();
+        for (int id = 0; id < values.size(); id++) {
+            if (valuePredicate.test(values.get(id))) {
+                result.or(bitmaps.get(id));
+            }
+        }
+        return result;
+    }
+
+    /** Số công thức trong within theo từng giá trị, sắp xếp giảm dần (bỏ giá trị có 0 công thức). */
+    public Map<String, Long> countByValue(BitSet within) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        for (int id = 0; id < values.size(); id++) {
+            BitSet bits = (BitSet) bitmaps.get(id).clone();
+            bits.and(within);
+            long count = bits.cardinality();
+            if (count > 0) entries.add(Map.entry(values.get(id), count));
+        }
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        Map<String, Long> counts = new LinkedHashMap<>();
+        entries.forEach(e -> counts.put(e.getKey(), e.getValue()));
+        return counts;
+    }
+
+    public BitSet withAnyValue() {
+        return (BitSet) hasAnyValue.clone();
+    }
+
+    /** Các giá trị của một công thức (theo thứ tự đã index). */
+    public List<String> valuesOf(int ordinal) {
+        List<String> result = new ArrayList<>();
+        if (ordinal >= valueIdsByOrdinal.size()) return result;
+        for (int id : valueIdsByOrdinal.get(ordinal)) {
+            result.add(values.get(id));
+        }
+        return result;
+    }
+
+    private int newValue(String value) {
+        values.add(value);
+        bitmaps.add(new BitSet());
+        return values.size() - 1;
+    }
+}
@@ -0,0 +1,130 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * BK-tree theo khoảng cách Levenshtein trên từ vựng token (đã bỏ dấu).
+ * Tìm các từ cách từ khoá không quá k phép sửa mà chỉ phải đo khoảng cách với
+ * một phần nhỏ từ vựng: tại mỗi node chỉ đi xuống các con có cạnh trong [d - k, d + k].
+ * Không hỗ trợ xoá; từ không còn công thức nào dùng được bên gọi lọc bỏ.
+ * Không thread-safe khi thêm, RecipeIndexService chịu trách nhiệm khoá.
+ */
+public class BkTree {
+
+    private static final int[] NO_CHILDREN = new int[0];
+
+    private final List<String> words = new ArrayList<>();
+    private final List<int[]> children = new ArrayList<>();   // children[node][d] = node con ở khoảng cách d, -1 = không có
+
+    public void add(String word) {
+        if (words.isEmpty()) {
+            newNode(word);
+            return;
+        }
+        int node = 0;
+        while (true) {
+            int d = distance(word, words.get(node));
+            if (d == 0) return;
+            int[] edges = children.get(node);
+            if (d >= edges.length || edges[d] < 0) {
+                int child = newNode(word);
+                if (d >= edges.length) {
+                    int oldLength = edges.length;
+                    edges = Arrays.copyOf(edges, d + 1);
+                    Arrays.fill(edges, oldLength, edges.length, -1);
+                    children.set(node, edges);
+                }
+                edges[d] = child;
+                return;
+            }
+            node = edges[d];
+        }
+    }
+
+    public void clear() {
+        words.clear();
+        children.clear();
+    }
+
+    public int size() {
+        return words.size();
+    }
+
+    /** Các từ có khoảng cách Levenshtein tới query <= maxDistance. */
+    public List<String> search(String query, int maxDistance) {
+        List<String> result = new ArrayList<>();
+        if (words.isEmpty()) return result;
+
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(0);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            int d = distance(query, words.get(node));
+            if (d <= maxDistance) result.add(words.get(node));
+
+            int[] edges = children.get(node);
+            int from = Math.max(1, d - maxDistance);
+            int to = Math.min(edges.length - 1, d + maxDistance);
+            for (int e = from; e <= to; e++) {
+                if (edges[e] >= 0) stack.push(edges[e]);
+            }
+        }
+        return result;
+    }
+
+    private int newNode(String word) {
+        words.add(word);
+        children.add(NO_CHILDREN);
+        return words.size() - 1;
+    }
+
+    /**
+     * Khoảng cách "optimal string alignment": như Levenshtein nhưng đảo hai ký tự kề nhau
+     * ("cah" -> "cha") chỉ tính 1 phép sửa. Không phải metric nên không dùng để dựng cây,
+     * chỉ để lọc lại kết quả search().
+     */
+    public static int osaDistance(String a, String b) {
+        int n = a.length(), m = b.length();
+        int[][] d = new int[n + 1][m + 1];
+        for (int i = 0; i <= n; i++) d[i][0] = i;
+        for (int j = 0; j <= m; j++) d[0][j] = j;
+        for (int i = 1; i <= n; i++) {
+            for (int j = 1; j <= m; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[n][m];
+    }
+
+    // Levenshtein chính xác (cần giá trị đúng để cắt nhánh), chỉ giữ hai hàng của bảng quy hoạch động
+    static int distance(String a, String b) {
+        if (a.equals(b)) return 0;
+        int n = a.length(), m = b.length();
+        if (n == 0) return m;
+        if (m == 0) return n;
+
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) previous[j] = j;
+        for (int i = 1; i <= n; i++) {
+            current[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m];
+    }
+}
@@ -0,0 +1,199 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Chấm điểm liên quan BM25F trên nhiều trường (tiêu đề, nguyên liệu, tags, mô tả) có hệ số boost.
+ * Thống kê giữ trong mảng nguyên thủy: độ dài trường theo ordinal, và với mỗi term một posting list
+ * (ordinal tăng dần) kèm tần suất theo từng trường gói trong một int (8 bit / trường).
+ * Không thread-safe, RecipeIndexService chịu trách nhiệm khoá.
+ */
+public class Bm25Index {
+
+    public static final int TITLE = 0;
+    public static final int INGREDIENTS = 1;
+    public static final int TAGS = 2;
+    public static final int DESCRIPTION = 3;
+    public static final int FIELD_COUNT = 4;
+
+    private static final float[] BOOST = {3.0f, 2.0f, 1.5f, 1.0f};
+    private static final float[] B = {0.75f, 0.75f, 0.5f, 0.75f};
+    private static final float K1 = 1.2f;
+    private static final int MAX_TF = 255;
+
+    // Token gõ dở (không phải term trọn vẹn) được mở rộng tối đa bấy nhiêu term cùng tiền tố
+    private static final int MAX_PREFIX_EXPANSION = 16;
+
+    private static final String[] NO_TERMS = new String[0];
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final List<String[]> termsByOrdinal = new ArrayList<>();
+    private int[][] fieldLength = new int[FIELD_COUNT][16];
+    private final long[] totalLength = new long[FIELD_COUNT];
+    private final BitSet indexed = new BitSet();
+
+    /** fieldTokens[f] = các token (đã bỏ dấu) của trường f. */
+    public void put(int ordinal, List<String>[] fieldTokens) {
+        remove(ordinal);
+        ensureCapacity(ordinal + 1);
+
+        Map<String, Integer> packed = new TreeMap<>();
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            List<String> tokens = fieldTokens[f];
+            fieldLength[f][ordinal] = tokens.size();
+            totalLength[f] += tokens.size();
+            for (String token : tokens) {
+                int shift = f * 8;
+                packed.merge(token, 1 << shift, (old, one) ->
+                        ((old >>> shift) & 0xFF) < MAX_TF ? old + one : old);
+            }
+        }
+        for (Map.Entry<String, Integer> e : packed.entrySet()) {
+            terms.computeIfAbsent(e.getKey(), t -> new Postings()).add(ordinal, e.getValue());
+        }
+        while (termsByOrdinal.size() <= ordinal) termsByOrdinal.add(NO_TERMS);
+        termsByOrdinal.set(ordinal, packed.keySet().toArray(NO_TERMS));
+        indexed.set(ordinal);
+    }
+
+    public void remove(int ordinal) {
+        if (!indexed.get(ordinal)) return;
+        for (String term : termsByOrdinal.get(ordinal)) {
+            Postings postings = terms.get(term);
+            if (postings == null) continue;
+            postings.remove(ordinal);
+            if (postings.size == 0) terms.remove(term);
+        }
+        termsByOrdinal.set(ordinal, NO_TERMS);
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            totalLength[f] -= fieldLength[f][ordinal];
+            fieldLength[f][ordinal] = 0;
+        }
+        indexed.clear(ordinal);
+    }
+
+    public void clear() {
+        terms.clear();
+        termsByOrdinal.clear();
+        for (int[] lengths : fieldLength) Arrays.fill(lengths, 0);
+        Arrays.fill(totalLength, 0L);
+        indexed.clear();
+    }
+
+    /**
+     * k ordinal trong candidates có điểm BM25 cao nhất cho các token truy vấn, điểm giảm dần
+     * (bằng điểm -> ordinal nhỏ trước). Chọn bằng heap kích thước k, không sắp xếp toàn bộ.
+     */
+    public List<Integer> topK(List<String> queryTokens, BitSet candidates, int k) {
+        float[] scores = new float[Math.max(candidates.length(), 1)];
+        int docCount = Math.max(indexed.cardinality(), 1);
+        float[] avgLength = new float[FIELD_COUNT];
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            avgLength[f] = Math.max(totalLength[f] / (float) docCount, 1f);
+        }
+
+        for (String token : queryTokens) {
+            for (String term : expand(token)) {
+                accumulate(terms.get(term), candidates, scores, docCount, avgLength);
+            }
+        }
+
+        Comparator<Integer> better = (a, b) -> {
+            int cmp = Float.compare(scores[b], scores[a]);
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        };
+        // Đỉnh heap = ứng viên tệ nhất đang giữ
+        PriorityQueue<Integer> heap = new PriorityQueue<>(k + 1, better.reversed());
+        for (int ord = candidates.nextSetBit(0); ord >= 0; ord = candidates.nextSetBit(ord + 1)) {
+            if (heap.size() < k) {
+                heap.offer(ord);
+            } else if (better.compare(ord, heap.peek()) < 0) {
+                heap.poll();
+                heap.offer(ord);
+            }
+        }
+        List<Integer> result = new ArrayList<>(heap);
+        result.sort(better);
+        return result;
+    }
+
+    // Term nguyên vẹn nếu có trong từ điển, ngược lại coi là tiền tố đang gõ dở
+    private List<String> expand(String token) {
+        if (terms.containsKey(token)) return List.of(token);
+        List<String> expanded = new ArrayList<>();
+        for (String term : terms.subMap(token, token + Character.MAX_VALUE).keySet()) {
+            expanded.add(term);
+            if (expanded.size() >= MAX_PREFIX_EXPANSION) break;
+        }
+        return expanded;
+    }
+
+    private void accumulate(Postings postings, BitSet candidates, float[] scores, int docCount, float[] avgLength) {
+        if (postings == null) return;
+        int df = postings.size;
+        float idf = (float) Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+
+        for (int i = 0; i < postings.size; i++) {
+            int ord = postings.ordinals[i];
+            if (!candidates.get(ord)) continue;
+            int packed = postings.tf[i];
+            // BM25F: gộp tf có chuẩn hoá độ dài theo từng trường, rồi bão hoà một lần
+            float tf = 0;
+            for (int f = 0; f < FIELD_COUNT; f++) {
+                int fieldTf = (packed >>> (f * 8)) & 0xFF;
+                if (fieldTf == 0) continue;
+                float norm = 1 - B[f] + B[f] * fieldLength[f][ord] / avgLength[f];
+                tf += BOOST[f] * fieldTf / norm;
+            }
+            scores[ord] += idf * tf / (K1 + tf);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= fieldLength[0].length) return;
+        int newLength = Math.max(capacity, fieldLength[0].length * 2);
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            fieldLength[f] = Arrays.copyOf(fieldLength[f], newLength);
+        }
+    }
+
+    // Posting list ordinal tăng dần + tần suất gói theo trường, hai mảng song song
+    private static final class Postings {
+        int[] ordinals = new int[4];
+        int[] tf = new int[4];
+        int size = 0;
+
+        void add(int ordinal, int packedTf) {
+            int pos = size > 0 && ordinals[size - 1] < ordinal ? -(size + 1) : Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (pos >= 0) {
+                tf[pos] = packedTf;
+                return;
+            }
+            int insertAt = -pos - 1;
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                tf = Arrays.copyOf(tf, size * 2);
+            }
+            System.arraycopy(ordinals, insertAt, ordinals, insertAt + 1, size - insertAt);
+            System.arraycopy(tf, insertAt, tf, insertAt + 1, size - insertAt);
+            ordinals[insertAt] = ordinal;
+            tf[insertAt] = packedTf;
+            size++;
+        }
+
+        void remove(int ordinal) {
+            int pos = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (pos < 0) return;
+            System.arraycopy(ordinals, pos + 1, ordinals, pos, size - pos - 1);
+            System.arraycopy(tf, pos + 1, tf, pos, size - pos - 1);
+            size--;
+        }
+    }
+}
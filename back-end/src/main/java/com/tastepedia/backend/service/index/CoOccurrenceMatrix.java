@@ -0,0 +1,158 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Ma trận đồng xuất hiện item-item (thưa) cho "người lưu món này cũng lưu".
+ * Mỗi hàng là hai mảng song song (item tăng dần, số lần cùng được lưu); count[item] = số user đã lưu item.
+ * Cập nhật tăng dần theo từng lượt thêm / bỏ yêu thích, không quét lại toàn bộ user.
+ * Top láng giềng (cosine, tối đa MAX_NEIGHBORS) được cache theo item và tính lại khi hàng thay đổi.
+ * Không thread-safe, bên gọi chịu trách nhiệm khoá.
+ */
+public class CoOccurrenceMatrix {
+
+    public static final int MAX_NEIGHBORS = 20;
+
+    /** Láng giềng của một item, điểm giảm dần. */
+    public record Neighbors(int[] items, float[] scores) {
+        public static final Neighbors EMPTY = new Neighbors(new int[0], new float[0]);
+    }
+
+    private Row[] rows = new Row[16];
+    private int[] count = new int[16];
+    private Neighbors[] top = new Neighbors[16];   // null = cần tính lại
+
+    /** Một user lưu thêm item, basket = các item user đó đã lưu trước đó. */
+    public void add(int item, int[] basket) {
+        ensureCapacity(item + 1);
+        count[item]++;
+        for (int other : basket) {
+            if (other == item) continue;
+            ensureCapacity(other + 1);
+            row(item).increment(other, 1);
+            row(other).increment(item, 1);
+            top[other] = null;
+        }
+        invalidateAround(item);
+    }
+
+    /** Một user bỏ lưu item, basket = các item user đó vẫn còn lưu. */
+    public void remove(int item, int[] basket) {
+        if (item >= count.length || count[item] == 0) return;
+        count[item]--;
+        for (int other : basket) {
+            if (other == item || other >= count.length) continue;
+            row(item).increment(other, -1);
+            row(other).increment(item, -1);
+            top[other] = null;
+        }
+        invalidateAround(item);
+    }
+
+    public void clear() {
+        Arrays.fill(rows, null);
+        Arrays.fill(count, 0);
+        Arrays.fill(top, null);
+    }
+
+    public int count(int item) {
+        return item < count.length ? count[item] : 0;
+    }
+
+    /** Top láng giềng theo cosine: co(a, b) / sqrt(count(a) * count(b)). */
+    public Neighbors neighbors(int item) {
+        if (item >= rows.length || rows[item] == null) return Neighbors.EMPTY;
+        if (top[item] == null) top[item] = computeNeighbors(item);
+        return top[item];
+    }
+
+    private Neighbors computeNeighbors(int item) {
+        Row row = rows[item];
+        if (row.size == 0 || count[item] == 0) return Neighbors.EMPTY;
+
+        float[] scores = new float[row.size];
+        for (int i = 0; i < row.size; i++) {
+            int other = row.items[i];
+            scores[i] = (float) (row.counts[i] / Math.sqrt((double) count[item] * Math.max(count[other], 1)));
+        }
+        // Chọn bằng heap kích thước MAX_NEIGHBORS (đỉnh = láng giềng yếu nhất đang giữ)
+        Comparator<Integer> better = (a, b) -> {
+            int cmp = Float.compare(scores[b], scores[a]);
+            return cmp != 0 ? cmp : Integer.compare(row.items[a], row.items[b]);
+        };
+        PriorityQueue<Integer> heap = new PriorityQueue<>(MAX_NEIGHBORS + 1, better.reversed());
+        for (int i = 0; i < row.size; i++) {
+            if (heap.size() < MAX_NEIGHBORS) {
+                heap.offer(i);
+            } else if (better.compare(i, heap.peek()) < 0) {
+                heap.poll();
+                heap.offer(i);
+            }
+        }
+        Integer[] picked = heap.toArray(new Integer[0]);
+        Arrays.sort(picked, better);
+        int[] items = new int[picked.length];
+        float[] best = new float[picked.length];
+        for (int i = 0; i < picked.length; i++) {
+            items[i] = row.items[picked[i]];
+            best[i] = scores[picked[i]];
+        }
+        return new Neighbors(items, best);
+    }
+
+    // count[item] đổi -> điểm cosine của item trong hàng của mọi láng giềng cũng đổi
+    private void invalidateAround(int item) {
+        top[item] = null;
+        Row row = rows[item];
+        if (row == null) return;
+        for (int i = 0; i < row.size; i++) {
+            top[row.items[i]] = null;
+        }
+    }
+
+    private Row row(int item) {
+        if (rows[item] == null) rows[item] = new Row();
+        return rows[item];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= count.length) return;
+        int newLength = Math.max(capacity, count.length * 2);
+        rows = Arrays.copyOf(rows, newLength);
+        count = Arrays.copyOf(count, newLength);
+        top = Arrays.copyOf(top, newLength);
+    }
+
+    // Hàng thưa: item tăng dần + số đếm, hai mảng song song; số đếm về 0 thì xoá khỏi hàng
+    private static final class Row {
+        int[] items = new int[4];
+        int[] counts = new int[4];
+        int size = 0;
+
+        void increment(int item, int delta) {
+            int pos = Arrays.binarySearch(items, 0, size, item);
+            if (pos >= 0) {
+                counts[pos] += delta;
+                if (counts[pos] <= 0) {
+                    System.arraycopy(items, pos + 1, items, pos, size - pos - 1);
+                    System.arraycopy(counts, pos + 1, counts, pos, size - pos - 1);
+                    size--;
+                }
+                return;
+            }
+            if (delta <= 0) return;
+            int insertAt = -pos - 1;
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            System.arraycopy(items, insertAt, items, insertAt + 1, size - insertAt);
+            System.arraycopy(counts, insertAt, counts, insertAt + 1, size - insertAt);
+            items[insertAt] = item;
+            counts[insertAt] = delta;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.tastepedia.backend.service.index;
+
+import com.tastepedia.backend.utils.AccentFolder;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Chuẩn hoá tên nguyên liệu viết tự do ("2 lạng Thịt Heo", "Peanuts", "tôm sú") về mã chuẩn
+ * ("pork", "peanut", "shrimp") theo từ điển đồng nghĩa Việt / Anh (resources/ingredient-synonyms.txt).
+ * Mọi cách viết được biên dịch thành một automaton Aho-Corasick lưu dạng mảng, nên một chuỗi bất kỳ
+ * chỉ cần một lượt duyệt: bỏ dấu, chữ thường và gộp ký tự phân cách được làm ngay trong lượt đó.
+ * Chỉ khớp nguyên từ; các khớp chồng nhau thì lấy cụm bắt đầu sớm nhất, dài nhất.
+ * Mỗi mã kéo theo các mã cha (shrimp -> shellfish -> seafood) để so dị ứng theo nhóm.
+ * Thread-safe sau khi build (chỉ đọc).
+ */
+public final class IngredientCanonicalizer {
+
+    private static final String RESOURCE = "/ingredient-synonyms.txt";
+
+    // Cách viết được bao bởi dấu cách hai đầu, chuỗi đầu vào cũng vậy -> khớp luôn nằm trên ranh giới từ
+    private static final char SEPARATOR = ' ';
+
+    private final String[] ids;
+    private final int[][] closure;     // closure[mã] = chính nó và mọi mã cha
+
+    // Automaton: cạnh ra của node nằm liên tiếp trong labels/targets, sắp theo ký tự -> binary search
+    private final int[] firstEdge;
+    private final int[] edgeCount;
+    private final char[] labels;
+    private final int[] targets;
+    private final int[] fail;
+    private final int[] output;        // Mã của cách viết kết thúc đúng tại node, -1 nếu không có
+    private final int[] outputLink;    // Node gần nhất theo chuỗi fail có output, -1 nếu không có
+    private final int[] depth;         // Độ dài chuỗi của node (kể cả dấu cách hai đầu)
+
+    private IngredientCanonicalizer(String[] ids, int[][] closure, int[] firstEdge, int[] edgeCount,
+                                    char[] labels, int[] targets, int[] fail, int[] output,
+                                    int[] outputLink, int[] depth) {
+        this.ids = ids;
+        this.closure = closure;
+        this.firstEdge = firstEdge;
+        this.edgeCount = edgeCount;
+        this.labels = labels;
+        this.targets = targets;
+        this.fail = fail;
+        this.output = output;
+        this.outputLink = outputLink;
+        this.depth = depth;
+    }
+
+    /** Từ điển mặc định, nạp một lần từ classpath. */
+    public static IngredientCanonicalizer standard() {
+        return Standard.INSTANCE;
+    }
+
+    private static final class Standard {
+        static final IngredientCanonicalizer INSTANCE = load();
+
+        private static IngredientCanonicalizer load() {
+            try (InputStream in = IngredientCanonicalizer.class.getResourceAsStream(RESOURCE)) {
+                if (in == null) {
+                    System.err.println("Không tìm thấy " + RESOURCE + ", bỏ qua chuẩn hoá nguyên liệu");
+                    return parse(Collections.emptyList());
+                }
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                IngredientCanonicalizer result = parse(reader.lines().toList());
+                System.out.println("Đã nạp từ điển nguyên liệu: " + result.ids.length + " mã");
+                return result;
+            } catch (Exception e) {
+                System.err.println("Lỗi nạp " + RESOURCE + ": " + e.getMessage());
+                return parse(Collections.emptyList());
+            }
+        }
+    }
+
+    /** Dựng từ các dòng "mã [< cha, cha]: cách viết, cách viết"; dòng trống và dòng "#" bị bỏ qua. */
+    public static IngredientCanonicalizer parse(List<String> lines) {
+        Builder builder = new Builder();
+        for (String raw : lines) {
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                System.err.println("Bỏ qua dòng từ điển nguyên liệu không hợp lệ: " + line);
+                continue;
+            }
+            String head = line.substring(0, colon);
+            int arrow = head.indexOf('<');
+            String id = (arrow < 0 ? head : head.substring(0, arrow)).trim();
+            if (id.isEmpty()) continue;
+            List<String> parents = new ArrayList<>();
+            if (arrow >= 0) {
+                for (String parent : head.substring(arrow + 1).split(",")) {
+                    if (!parent.isBlank()) parents.add(parent.trim());
+                }
+            }
+            builder.define(id, parents);
+            builder.add(id, id.replace('_', ' '));
+            for (String synonym : line.substring(colon + 1).split(",")) {
+                builder.add(id, synonym);
+            }
+        }
+        return builder.build();
+    }
+
+    /** Các mã chuẩn xuất hiện trong text (kèm mã cha), theo thứ tự xuất hiện, không trùng. */
+    public List<String> canonicalIds(String text) {
+        Set<String> result = new LinkedHashSet<>();
+        if (text == null) return new ArrayList<>(result);
+        int[] matches = select(scan(text));
+        for (int m = 0; m < matches.length; m += 3) {
+            for (int id : closure[matches[m + 2]]) result.add(ids[id]);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Chỉ các mã khớp trực tiếp, không kèm mã cha. Dùng cho phía truy vấn (dị ứng, món không thích):
+     * dị ứng "tôm" không được loại cả món cá chỉ vì cùng nhóm hải sản, còn dị ứng "hải sản"
+     * vẫn bắt được món tôm vì phía công thức đã được index kèm mã cha.
+     */
+    public List<String> matchedIds(String text) {
+        Set<String> result = new LinkedHashSet<>();
+        if (text == null) return new ArrayList<>(result);
+        int[] matches = select(scan(text));
+        for (int m = 0; m < matches.length; m += 3) result.add(ids[matches[m + 2]]);
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Mã chuẩn chính của một tên nguyên liệu: mã của cụm khớp dài nhất ("Trứng gà ta" -> "egg").
+     * Không khớp từ điển -> dạng bỏ dấu, chữ thường, gọn khoảng trắng ("Lá É" -> "la e").
+     */
+    public String canonicalize(String text) {
+        if (text == null) return "";
+        int[] matches = select(scan(text));
+        int best = -1;
+        int bestLength = 0;
+        for (int m = 0; m < matches.length; m += 3) {
+            int length = matches[m + 1] - matches[m];
+            if (length > bestLength) {
+                best = matches[m + 2];
+                bestLength = length;
+            }
+        }
+        return best >= 0 ? ids[best] : TermCounts.normalize(text);
+    }
+
+    // Một lượt qua text: mỗi khớp là bộ ba (đầu, cuối, mã) theo vị trí trong chuỗi đã chuẩn hoá
+    private int[] scan(String text) {
+        int[] found = new int[12];
+        int count = 0;
+        int state = step(0, SEPARATOR);
+        int position = 0;
+        boolean afterSeparator = true;
+        for (int i = 0; i <= text.length(); i++) {
+            char c;
+            if (i == text.length()) {
+                if (afterSeparator) break;
+                c = SEPARATOR;
+            } else {
+                c = AccentFolder.foldLowerCase(text.charAt(i));
+                if (c == 0) continue;
+                if (!Character.isLetterOrDigit(c)) {
+                    if (afterSeparator) continue;
+                    c = SEPARATOR;
+                }
+            }
+            afterSeparator = c == SEPARATOR;
+            state = step(state, c);
+            position++;
+            if (!afterSeparator) continue;
+            // Cách viết luôn kết thúc bằng dấu cách nên chỉ cần thu khớp ở đây
+            for (int node = output[state] >= 0 ? state : outputLink[state]; node >= 0; node = outputLink[node]) {
+                if (count + 3 > found.length) found = Arrays.copyOf(found, found.length * 2);
+                found[count++] = position - depth[node] + 1;
+                found[count++] = position;
+                found[count++] = output[node];
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    // Chọn khớp không chồng nhau: bắt đầu sớm nhất trước, cùng điểm bắt đầu thì dài nhất.
+    // Hai khớp kề nhau được dùng chung dấu cách ở giữa.
+    private static int[] select(int[] found) {
+        int n = found.length / 3;
+        Integer[] order = new Integer[n];
+        for (int m = 0; m < n; m++) order[m] = m;
+        Arrays.sort(order, (a, b) -> found[a * 3] != found[b * 3]
+                ? Integer.compare(found[a * 3], found[b * 3])
+                : Integer.compare(found[b * 3 + 1], found[a * 3 + 1]));
+        int[] chosen = new int[found.length];
+        int count = 0;
+        int lastEnd = -1;
+        for (int m : order) {
+            if (found[m * 3] < lastEnd) continue;
+            System.arraycopy(found, m * 3, chosen, count, 3);
+            count += 3;
+            lastEnd = found[m * 3 + 1];
+        }
+        return Arrays.copyOf(chosen, count);
+    }
+
+    private int step(int node, char c) {
+        while (true) {
+            int next = child(node, c);
+            if (next >= 0) return next;
+            if (node == 0) return 0;
+            node = fail[node];
+        }
+    }
+
+    private int child(int node, char c) {
+        int lo = firstEdge[node];
+        int hi = lo + edgeCount[node] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (labels[mid] < c) lo = mid + 1;
+            else if (labels[mid] > c) hi = mid - 1;
+            else return targets[mid];
+        }
+        return -1;
+    }
+
+    private static final class Builder {
+        private final Map<String, Integer> idIndex = new HashMap<>();
+        private final List<String> ids = new ArrayList<>();
+        private final List<List<Integer>> parents = new ArrayList<>();
+
+        private final List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        private final List<Integer> output = new ArrayList<>();
+        private final List<Integer> depth = new ArrayList<>();
+
+        Builder() {
+            newNode(0);
+        }
+
+        void define(String id, List<String> parentIds) {
+            int index = indexOf(id);
+            for (String parent : parentIds) parents.get(index).add(indexOf(parent));
+        }
+
+        void add(String id, String phrase) {
+            String normalized = TermCounts.normalize(phrase);
+            if (normalized.isEmpty()) return;
+            String key = SEPARATOR + normalized + SEPARATOR;
+            int node = 0;
+            for (int i = 0; i < key.length(); i++) {
+                Integer next = children.get(node).get(key.charAt(i));
+                if (next == null) {
+                    next = newNode(depth.get(node) + 1);
+                    children.get(node).put(key.charAt(i), next);
+                }
+                node = next;
+            }
+            // Cùng một cách viết cho hai mã -> giữ mã khai báo trước
+            if (output.get(node) < 0) output.set(node, indexOf(id));
+        }
+
+        IngredientCanonicalizer build() {
+            int nodes = children.size();
+            int[] firstEdge = new int[nodes];
+            int[] edgeCount = new int[nodes];
+            int edges = 0;
+            for (TreeMap<Character, Integer> c : children) edges += c.size();
+            char[] labels = new char[edges];
+            int[] targets = new int[edges];
+            int e = 0;
+            for (int node = 0; node < nodes; node++) {
+                firstEdge[node] = e;
+                edgeCount[node] = children.get(node).size();
+                for (Map.Entry<Character, Integer> edge : children.get(node).entrySet()) {
+                    labels[e] = edge.getKey();
+                    targets[e++] = edge.getValue();
+                }
+            }
+
+            // Fail link theo BFS: node con lấy fail của cha rồi lùi dần tới khi có cạnh cùng ký tự
+            int[] fail = new int[nodes];
+            int[] out = new int[nodes];
+            int[] outputLink = new int[nodes];
+            int[] depths = new int[nodes];
+            for (int node = 0; node < nodes; node++) {
+                out[node] = output.get(node);
+                depths[node] = depth.get(node);
+            }
+            outputLink[0] = -1;
+            Deque<Integer> queue = new ArrayDeque<>();
+            for (int child : children.get(0).values()) {
+                fail[child] = 0;
+                outputLink[child] = -1;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                for (Map.Entry<Character, Integer> edge : children.get(node).entrySet()) {
+                    char c = edge.getKey();
+                    int child = edge.getValue();
+                    int f = fail[node];
+                    while (f != 0 && !children.get(f).containsKey(c)) f = fail[f];
+                    Integer target = children.get(f).get(c);
+                    fail[child] = target != null && target != child ? target : 0;
+                    outputLink[child] = out[fail[child]] >= 0 ? fail[child] : outputLink[fail[child]];
+                    queue.add(child);
+                }
+            }
+
+            int[][] closure = new int[ids.size()][];
+            for (int id = 0; id < ids.size(); id++) {
+                Set<Integer> ancestors = new LinkedHashSet<>();
+                collectAncestors(id, ancestors);
+                closure[id] = ancestors.stream().mapToInt(Integer::intValue).toArray();
+            }
+            return new IngredientCanonicalizer(ids.toArray(new String[0]), closure, firstEdge, edgeCount,
+                    labels, targets, fail, out, outputLink, depths);
+        }
+
+        private void collectAncestors(int id, Set<Integer> into) {
+            if (!into.add(id)) return;
+            for (int parent : parents.get(id)) collectAncestors(parent, into);
+        }
+
+        private int indexOf(String id) {
+            Integer index = idIndex.get(id);
+            if (index != null) return index;
+            idIndex.put(id, ids.size());
+            ids.add(id);
+            parents.add(new ArrayList<>());
+            return ids.size() - 1;
+        }
+
+        private int newNode(int nodeDepth) {
+            children.add(new TreeMap<>());
+            output.add(-1);
+            depth.add(nodeDepth);
+            return children.size() - 1;
+        }
+    }
+}
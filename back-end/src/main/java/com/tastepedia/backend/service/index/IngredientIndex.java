@@ -0,0 +1,148 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Inverted index tên nguyên liệu (dạng chuẩn) -> các ordinal công thức dùng nguyên liệu đó.
+ * Dùng cho "nấu với những gì tôi có": gộp posting list của các nguyên liệu người dùng có để đếm
+ * số nguyên liệu khớp của từng công thức, rồi chọn top-K theo độ phủ (khớp / tổng) bằng heap.
+ * Chỉ các công thức có ít nhất một nguyên liệu khớp được chạm tới, không duyệt toàn bộ danh mục.
+ * Không thread-safe, RecipeIndexService chịu trách nhiệm khoá.
+ */
+public class IngredientIndex {
+
+    private static final String[] NO_NAMES = new String[0];
+
+    /** Kết quả của một công thức: số nguyên liệu (phân biệt) có sẵn / tổng số. */
+    public record Coverage(int ordinal, int matched, int total) {
+        public double ratio() {
+            return total == 0 ? 0 : (double) matched / total;
+        }
+    }
+
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    // Theo ordinal: dạng chuẩn và dạng hiển thị (cùng thứ tự), để liệt kê nguyên liệu còn thiếu
+    private final List<String[]> canonicalByOrdinal = new ArrayList<>();
+    private final List<String[]> displayByOrdinal = new ArrayList<>();
+
+    /** names = tên nguyên liệu hiển thị, canonical = dạng chuẩn tương ứng (cùng kích thước). */
+    public void put(int ordinal, List<String> names, List<String> canonical) {
+        remove(ordinal);
+        while (canonicalByOrdinal.size() <= ordinal) {
+            canonicalByOrdinal.add(NO_NAMES);
+            displayByOrdinal.add(NO_NAMES);
+        }
+        // Bỏ trùng theo dạng chuẩn, giữ tên hiển thị đầu tiên
+        Map<String, String> distinct = new LinkedHashMap<>();
+        for (int i = 0; i < canonical.size(); i++) {
+            String key = canonical.get(i);
+            if (key != null && !key.isEmpty()) distinct.putIfAbsent(key, names.get(i));
+        }
+        for (String key : distinct.keySet()) postings.computeIfAbsent(key, x -> new Postings()).add(ordinal);
+        canonicalByOrdinal.set(ordinal, distinct.keySet().toArray(NO_NAMES));
+        displayByOrdinal.set(ordinal, distinct.values().toArray(NO_NAMES));
+    }
+
+    public void remove(int ordinal) {
+        if (ordinal >= canonicalByOrdinal.size()) return;
+        for (String key : canonicalByOrdinal.get(ordinal)) {
+            Postings list = postings.get(key);
+            if (list == null) continue;
+            list.remove(ordinal);
+            if (list.size == 0) postings.remove(key);
+        }
+        canonicalByOrdinal.set(ordinal, NO_NAMES);
+        displayByOrdinal.set(ordinal, NO_NAMES);
+    }
+
+    public void clear() {
+        postings.clear();
+        canonicalByOrdinal.clear();
+        displayByOrdinal.clear();
+    }
+
+    /**
+     * k công thức có độ phủ cao nhất với tập nguyên liệu có sẵn (dạng chuẩn).
+     * Bằng độ phủ -> thiếu ít nguyên liệu hơn trước -> ordinal nhỏ trước.
+     */
+    public List<Coverage> topCoverage(Collection<String> pantry, int k, double minCoverage) {
+        // Gộp các posting list: matched[ord] = số nguyên liệu có sẵn của ord, touched = các ord đã chạm tới
+        int[] matched = new int[canonicalByOrdinal.size()];
+        int[] touched = new int[16];
+        int touchedCount = 0;
+        for (String key : pantry) {
+            Postings list = postings.get(key);
+            if (list == null) continue;
+            for (int i = 0; i < list.size; i++) {
+                int ord = list.ordinals[i];
+                if (matched[ord]++ == 0) {
+                    if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+                    touched[touchedCount++] = ord;
+                }
+            }
+        }
+
+        Comparator<Coverage> better = Comparator.comparingDouble(Coverage::ratio).reversed()
+                .thenComparingInt(c -> c.total() - c.matched())
+                .thenComparingInt(Coverage::ordinal);
+        PriorityQueue<Coverage> heap = new PriorityQueue<>(k + 1, better.reversed());
+        for (int t = 0; t < touchedCount; t++) {
+            int ord = touched[t];
+            Coverage coverage = new Coverage(ord, matched[ord], canonicalByOrdinal.get(ord).length);
+            if (coverage.ratio() < minCoverage) continue;
+            if (heap.size() < k) {
+                heap.offer(coverage);
+            } else if (better.compare(coverage, heap.peek()) < 0) {
+                heap.poll();
+                heap.offer(coverage);
+            }
+        }
+        List<Coverage> result = new ArrayList<>(heap);
+        result.sort(better);
+        return result;
+    }
+
+    /** Tên hiển thị các nguyên liệu của ordinal không có trong pantry (dạng chuẩn). */
+    public List<String> missing(int ordinal, Set<String> pantry) {
+        List<String> result = new ArrayList<>();
+        String[] keys = canonicalByOrdinal.get(ordinal);
+        String[] names = displayByOrdinal.get(ordinal);
+        for (int i = 0; i < keys.length; i++) {
+            if (!pantry.contains(keys[i])) result.add(names[i]);
+        }
+        return result;
+    }
+
+    // Posting list ordinal tăng dần
+    private static final class Postings {
+        int[] ordinals = new int[2];
+        int size = 0;
+
+        void add(int ordinal) {
+            int pos = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (pos >= 0) return;
+            int insertAt = -pos - 1;
+            if (size == ordinals.length) ordinals = Arrays.copyOf(ordinals, size * 2);
+            System.arraycopy(ordinals, insertAt, ordinals, insertAt + 1, size - insertAt);
+            ordinals[insertAt] = ordinal;
+            size++;
+        }
+
+        void remove(int ordinal) {
+            int pos = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (pos < 0) return;
+            System.arraycopy(ordinals, pos + 1, ordinals, pos, size - pos - 1);
+            size--;
+        }
+    }
+}
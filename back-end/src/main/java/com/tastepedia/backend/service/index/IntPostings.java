@@ -0,0 +1,79 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Danh sách ordinal đã sắp xếp tăng dần (posting list) lưu trong mảng int nguyên thủy.
+ * Ordinal mới luôn lớn nhất nên add() hầu như chỉ là append.
+ */
+public class IntPostings {
+
+    private int[] values = new int[4];
+    private int size = 0;
+
+    public void add(int ordinal) {
+        if (size > 0 && values[size - 1] < ordinal) {
+            append(ordinal);
+            return;
+        }
+        int pos = Arrays.binarySearch(values, 0, size, ordinal);
+        if (pos >= 0) return;
+        int insertAt = -pos - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+        values[insertAt] = ordinal;
+        size++;
+    }
+
+    public void remove(int ordinal) {
+        int pos = Arrays.binarySearch(values, 0, size, ordinal);
+        if (pos < 0) return;
+        System.arraycopy(values, pos + 1, values, pos, size - pos - 1);
+        size--;
+    }
+
+    public boolean contains(int ordinal) {
+        return Arrays.binarySearch(values, 0, size, ordinal) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public void addTo(BitSet target) {
+        for (int i = 0; i < size; i++) {
+            target.set(values[i]);
+        }
+    }
+
+    /** Giữ lại trong target những ordinal có mặt trong posting list này. */
+    public void retainIn(BitSet target) {
+        int last = -1;
+        for (int i = 0; i < size; i++) {
+            int ord = values[i];
+            if (ord > last + 1) target.clear(last + 1, ord);
+            last = ord;
+        }
+        target.clear(last + 1, Math.max(last + 1, target.length()));
+    }
+
+    private void append(int ordinal) {
+        ensureCapacity(size + 1);
+        values[size++] = ordinal;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+        }
+    }
+}
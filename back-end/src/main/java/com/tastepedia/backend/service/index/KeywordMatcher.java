@@ -0,0 +1,162 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Automaton Aho-Corasick cho một nhóm từ khoá (dị ứng + món không thích của một yêu cầu).
+ * Dựng một lần cho mỗi yêu cầu, sau đó kiểm tra "văn bản có chứa từ khoá nào không" bằng
+ * một lượt duyệt tuyến tính, không cấp phát. Văn bản phải được fold() sẵn (lúc index),
+ * từ khoá được fold theo cùng cách nên so khớp không phân biệt hoa thường, giống contains() cũ.
+ * Thread-safe sau khi build (chỉ đọc).
+ */
+public final class KeywordMatcher {
+
+    /** Ký tự ngăn cách các mục khi nối nhiều tên vào một văn bản; từ khoá không bao giờ chứa nó. */
+    public static final char SEPARATOR = '\n';
+
+    public static final KeywordMatcher EMPTY = compile(List.of());
+
+    // Cạnh ra của node nằm liên tiếp trong labels/targets, sắp theo ký tự -> binary search
+    private final int[] firstEdge;
+    private final int[] edgeCount;
+    private final char[] labels;
+    private final int[] targets;
+    private final int[] fail;
+    private final boolean[] accepting;  // Có từ khoá kết thúc tại node hoặc tại một node trên chuỗi fail
+
+    private KeywordMatcher(int[] firstEdge, int[] edgeCount, char[] labels, int[] targets,
+                           int[] fail, boolean[] accepting) {
+        this.firstEdge = firstEdge;
+        this.edgeCount = edgeCount;
+        this.labels = labels;
+        this.targets = targets;
+        this.fail = fail;
+        this.accepting = accepting;
+    }
+
+    /** Chuẩn hoá một ký tự (chữ thường); dùng chung cho văn bản và từ khoá. */
+    public static char fold(char c) {
+        return Character.toLowerCase(c);
+    }
+
+    /** Nối các mục thành một văn bản đã fold, ngăn cách bởi SEPARATOR (để index giữ sẵn). */
+    public static char[] fold(Collection<String> items) {
+        StringBuilder sb = new StringBuilder();
+        for (String item : items) {
+            if (item == null) continue;
+            if (sb.length() > 0) sb.append(SEPARATOR);
+            for (int i = 0; i < item.length(); i++) {
+                char c = item.charAt(i);
+                sb.append(c == SEPARATOR ? ' ' : fold(c));
+            }
+        }
+        char[] text = new char[sb.length()];
+        sb.getChars(0, sb.length(), text, 0);
+        return text;
+    }
+
+    /** Dựng automaton; từ khoá được trim, bỏ trống. */
+    public static KeywordMatcher compile(Collection<String> keywords) {
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        children.add(new TreeMap<>());
+        terminal.add(false);
+        for (String raw : keywords) {
+            if (raw == null || raw.trim().isEmpty()) continue;
+            String keyword = raw.trim();
+            int node = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = fold(keyword.charAt(i));
+                Integer next = children.get(node).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<>());
+                    terminal.add(false);
+                    children.get(node).put(c, next);
+                }
+                node = next;
+            }
+            terminal.set(node, true);
+        }
+
+        int nodes = children.size();
+        int[] firstEdge = new int[nodes];
+        int[] edgeCount = new int[nodes];
+        int edges = 0;
+        for (TreeMap<Character, Integer> c : children) edges += c.size();
+        char[] labels = new char[edges];
+        int[] targets = new int[edges];
+        int e = 0;
+        for (int node = 0; node < nodes; node++) {
+            firstEdge[node] = e;
+            edgeCount[node] = children.get(node).size();
+            for (Map.Entry<Character, Integer> edge : children.get(node).entrySet()) {
+                labels[e] = edge.getKey();
+                targets[e++] = edge.getValue();
+            }
+        }
+
+        // Fail link theo BFS; node chấp nhận nếu chính nó hoặc node fail của nó chấp nhận
+        int[] fail = new int[nodes];
+        boolean[] accepting = new boolean[nodes];
+        for (int node = 0; node < nodes; node++) accepting[node] = terminal.get(node);
+        Deque<Integer> queue = new ArrayDeque<>(children.get(0).values());
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (Map.Entry<Character, Integer> edge : children.get(node).entrySet()) {
+                int child = edge.getValue();
+                if (node != 0) {
+                    int f = fail[node];
+                    while (f != 0 && !children.get(f).containsKey(edge.getKey())) f = fail[f];
+                    Integer target = children.get(f).get(edge.getKey());
+                    fail[child] = target != null ? target : 0;
+                }
+                accepting[child] |= accepting[fail[child]];
+                queue.add(child);
+            }
+        }
+        return new KeywordMatcher(firstEdge, edgeCount, labels, targets, fail, accepting);
+    }
+
+    public boolean isEmpty() {
+        return labels.length == 0;
+    }
+
+    /** Văn bản (đã fold) có chứa ít nhất một từ khoá không. Một lượt, dừng ngay ở khớp đầu tiên. */
+    public boolean matchesAny(char[] text) {
+        if (text == null || isEmpty()) return false;
+        int state = 0;
+        for (char c : text) {
+            state = step(state, c);
+            if (accepting[state]) return true;
+        }
+        return false;
+    }
+
+    private int step(int node, char c) {
+        while (true) {
+            int next = child(node, c);
+            if (next >= 0) return next;
+            if (node == 0) return 0;
+            node = fail[node];
+        }
+    }
+
+    private int child(int node, char c) {
+        int lo = firstEdge[node];
+        int hi = lo + edgeCount[node] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (labels[mid] < c) lo = mid + 1;
+            else if (labels[mid] > c) hi = mid - 1;
+            else return targets[mid];
+        }
+        return -1;
+    }
+}
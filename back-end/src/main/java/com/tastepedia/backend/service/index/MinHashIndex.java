@@ -0,0 +1,185 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Tìm công thức tương tự bằng MinHash + LSH banding trên tập đặc trưng (nguyên liệu, tags đã bỏ dấu).
+ * Chữ ký NUM_HASHES giá trị được tính một lần lúc index; chữ ký chia thành BANDS dải, mỗi dải băm vào một bucket.
+ * Hai công thức có Jaccard cao gần như chắc chắn chung ít nhất một bucket, nên tra cứu chỉ xét
+ * các công thức cùng bucket thay vì so từng cặp với toàn bộ danh mục.
+ * Không thread-safe, RecipeIndexService chịu trách nhiệm khoá.
+ */
+public class MinHashIndex {
+
+    // 32 dải x 2 hàng: xác suất thành ứng viên ~73% ở Jaccard 0.2, ~99% ở Jaccard 0.4
+    private static final int BANDS = 32;
+    private static final int ROWS = 2;
+    public static final int NUM_HASHES = BANDS * ROWS;
+
+    // Bucket của đặc trưng quá phổ biến có thể rất lớn; chỉ xét tối đa bấy nhiêu ứng viên
+    private static final int MAX_CANDIDATES = 2000;
+
+    private static final long[] SEEDS = new long[NUM_HASHES];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_7A57E_9EDL);
+        for (int i = 0; i < NUM_HASHES; i++) SEEDS[i] = random.nextLong();
+    }
+
+    private final List<int[]> signatures = new ArrayList<>();   // null = công thức không có đặc trưng
+    private final Map<Long, Bucket> buckets = new HashMap<>();
+
+    public void put(int ordinal, Collection<String> features) {
+        remove(ordinal);
+        while (signatures.size() <= ordinal) signatures.add(null);
+        if (features == null || features.isEmpty()) return;
+
+        int[] signature = signatureOf(features);
+        signatures.set(ordinal, signature);
+        for (int band = 0; band < BANDS; band++) {
+            buckets.computeIfAbsent(bandKey(signature, band), k -> new Bucket()).add(ordinal);
+        }
+    }
+
+    public void remove(int ordinal) {
+        if (ordinal >= signatures.size()) return;
+        int[] signature = signatures.get(ordinal);
+        if (signature == null) return;
+        for (int band = 0; band < BANDS; band++) {
+            long key = bandKey(signature, band);
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) continue;
+            bucket.remove(ordinal);
+            if (bucket.size == 0) buckets.remove(key);
+        }
+        signatures.set(ordinal, null);
+    }
+
+    public void clear() {
+        signatures.clear();
+        buckets.clear();
+    }
+
+    /**
+     * k công thức giống ordinal nhất (Jaccard ước lượng = tỉ lệ giá trị chữ ký trùng nhau),
+     * chỉ lấy những công thức có độ giống >= minSimilarity. Độ giống giảm dần, bằng nhau -> ordinal nhỏ trước.
+     */
+    public List<Integer> similar(int ordinal, int k, double minSimilarity) {
+        List<Integer> result = new ArrayList<>();
+        if (ordinal >= signatures.size() || signatures.get(ordinal) == null) return result;
+        int[] signature = signatures.get(ordinal);
+
+        BitSet seen = new BitSet();
+        seen.set(ordinal);
+        List<Integer> candidates = new ArrayList<>();
+        for (int band = 0; band < BANDS && candidates.size() < MAX_CANDIDATES; band++) {
+            Bucket bucket = buckets.get(bandKey(signature, band));
+            if (bucket == null) continue;
+            for (int i = 0; i < bucket.size && candidates.size() < MAX_CANDIDATES; i++) {
+                int other = bucket.ordinals[i];
+                if (seen.get(other)) continue;
+                seen.set(other);
+                candidates.add(other);
+            }
+        }
+        if (candidates.isEmpty()) return result;
+
+        // Số giá trị chữ ký trùng nhau với từng ứng viên
+        int[] scores = new int[candidates.size()];
+        for (int c = 0; c < candidates.size(); c++) {
+            int[] other = signatures.get(candidates.get(c));
+            for (int h = 0; h < NUM_HASHES; h++) {
+                if (signature[h] == other[h]) scores[c]++;
+            }
+        }
+
+        int minAgreement = Math.max((int) Math.ceil(minSimilarity * NUM_HASHES), 1);
+        Comparator<Integer> better = (a, b) -> {
+            int cmp = Integer.compare(scores[b], scores[a]);
+            return cmp != 0 ? cmp : Integer.compare(candidates.get(a), candidates.get(b));
+        };
+        PriorityQueue<Integer> heap = new PriorityQueue<>(k + 1, better.reversed());
+        for (int c = 0; c < candidates.size(); c++) {
+            if (scores[c] < minAgreement) continue;
+            if (heap.size() < k) {
+                heap.offer(c);
+            } else if (better.compare(c, heap.peek()) < 0) {
+                heap.poll();
+                heap.offer(c);
+            }
+        }
+        List<Integer> picked = new ArrayList<>(heap);
+        picked.sort(better);
+        for (int c : picked) result.add(candidates.get(c));
+        return result;
+    }
+
+    private static int[] signatureOf(Collection<String> features) {
+        int[] signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (String feature : features) {
+            long base = hash64(feature);
+            for (int h = 0; h < NUM_HASHES; h++) {
+                int value = (int) (mix64(base ^ SEEDS[h]) >>> 33);
+                if (value < signature[h]) signature[h] = value;
+            }
+        }
+        return signature;
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int r = 0; r < ROWS; r++) {
+            key = mix64(key * 31 + signature[band * ROWS + r]);
+        }
+        return key;
+    }
+
+    // Hash 64 bit của chuỗi (FNV-1a rồi trộn SplitMix64), dùng chung với SimHashIndex
+    static long hash64(String s) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001B3L;
+        }
+        return mix64(h);
+    }
+
+    // Bộ trộn bit của SplitMix64
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Danh sách ordinal tăng dần trong một bucket
+    private static final class Bucket {
+        int[] ordinals = new int[2];
+        int size = 0;
+
+        void add(int ordinal) {
+            int pos = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (pos >= 0) return;
+            int insertAt = -pos - 1;
+            if (size == ordinals.length) ordinals = Arrays.copyOf(ordinals, size * 2);
+            System.arraycopy(ordinals, insertAt, ordinals, insertAt + 1, size - insertAt);
+            ordinals[insertAt] = ordinal;
+            size++;
+        }
+
+        void remove(int ordinal) {
+            int pos = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (pos < 0) return;
+            System.arraycopy(ordinals, pos + 1, ordinals, pos, size - pos - 1);
+            size--;
+        }
+    }
+}
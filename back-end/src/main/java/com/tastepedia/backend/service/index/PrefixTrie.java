@@ -0,0 +1,261 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Trie tiền tố (radix, đã nén các chuỗi node một con) bất biến, lưu dạng mảng, không có object node.
+ * Con của mỗi node nằm liên tiếp (thứ tự BFS) và được sắp theo ký tự đầu cạnh -> tra bằng binary search;
+ * nhãn cạnh nằm chung trong một mảng char.
+ * Mỗi node giữ sẵn top-N mục (theo trọng số) trong cây con của nó, nên một lần gợi ý
+ * chỉ tốn O(độ dài tiền tố + N), không phụ thuộc số lượng mục.
+ * Thread-safe sau khi build (chỉ đọc).
+ */
+public final class PrefixTrie {
+
+    public static final PrefixTrie EMPTY = new Builder().build(1);
+
+    private final String[] texts;      // Văn bản hiển thị của từng mục
+    private final char[] edges;        // Nhãn của mọi cạnh, nối liền
+    private final int[] edgeStart;     // Cạnh đi vào node = edges[edgeStart, edgeStart + edgeLength)
+    private final int[] edgeLength;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[][] top;         // Chỉ số mục tốt nhất trong cây con, đã sắp xếp
+
+    private PrefixTrie(String[] texts, char[] edges, int[] edgeStart, int[] edgeLength,
+                       int[] firstChild, int[] childCount, int[][] top) {
+        this.texts = texts;
+        this.edges = edges;
+        this.edgeStart = edgeStart;
+        this.edgeLength = edgeLength;
+        this.firstChild = firstChild;
+        this.childCount = childCount;
+        this.top = top;
+    }
+
+    /** Tối đa limit mục có khoá bắt đầu bằng prefix (prefix đã chuẩn hoá giống khoá). */
+    public List<String> complete(String prefix, int limit) {
+        int node = 0;
+        int i = 0;
+        while (i < prefix.length()) {
+            node = child(node, prefix.charAt(i));
+            if (node < 0) return Collections.emptyList();
+            // Tiền tố có thể kết thúc giữa cạnh
+            int end = Math.min(edgeLength[node], prefix.length() - i);
+            for (int k = 0; k < end; k++) {
+                if (edges[edgeStart[node] + k] != prefix.charAt(i + k)) return Collections.emptyList();
+            }
+            i += end;
+        }
+        int[] best = top[node];
+        List<String> result = new ArrayList<>(Math.min(limit, best.length));
+        for (int k = 0; k < best.length && k < limit; k++) {
+            result.add(texts[best[k]]);
+        }
+        return result;
+    }
+
+    private int child(int node, char c) {
+        int lo = firstChild[node];
+        int hi = lo + childCount[node] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char label = edges[edgeStart[mid]];
+            if (label < c) lo = mid + 1;
+            else if (label > c) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    public static class Builder {
+        private final List<String> texts = new ArrayList<>();
+        private final List<Integer> weights = new ArrayList<>();
+        private final List<String> keys = new ArrayList<>();
+        private final List<Integer> keyEntries = new ArrayList<>();
+
+        /** Thêm một mục hiển thị, trả về chỉ số của mục để gắn khoá. */
+        public int addEntry(String text, int weight) {
+            texts.add(text);
+            weights.add(weight);
+            return texts.size() - 1;
+        }
+
+        /** Một mục có thể có nhiều khoá (vd. mỗi vị trí bắt đầu từ trong tiêu đề). */
+        public void addKey(String key, int entry) {
+            keys.add(key);
+            keyEntries.add(entry);
+        }
+
+        /** Dựng trie; topN = số mục giữ sẵn ở mỗi node (giới hạn trên của complete()). */
+        public PrefixTrie build(int topN) {
+            int n = keys.size();
+            KeyRef[] refs = new KeyRef[n];
+            for (int i = 0; i < n; i++) refs[i] = new KeyRef(keys.get(i), keyEntries.get(i));
+            Arrays.sort(refs);
+            String[] sortedKeys = new String[n];
+            int[] sortedEntries = new int[n];
+            for (int i = 0; i < n; i++) {
+                sortedKeys[i] = refs[i].key();
+                sortedEntries[i] = refs[i].entry();
+            }
+
+            // Thứ hạng: trọng số giảm dần, rồi chuỗi ngắn hơn, rồi theo chữ cái.
+            // Xếp hạng một lần, sau đó top-N chỉ là so sánh số nguyên
+            Integer[] byRank = new Integer[texts.size()];
+            for (int i = 0; i < byRank.length; i++) byRank[i] = i;
+            Arrays.sort(byRank, Comparator.<Integer>comparingInt(e -> -weights.get(e))
+                    .thenComparingInt(e -> texts.get(e).length())
+                    .thenComparing(texts::get));
+            int[] rankOf = new int[byRank.length];
+            for (int r = 0; r < byRank.length; r++) rankOf[byRank[r]] = r;
+
+            StringBuilder edgeChars = new StringBuilder();
+            IntList edgeStarts = new IntList();
+            IntList edgeLengths = new IntList();
+            IntList firstChildren = new IntList();
+            IntList childCounts = new IntList();
+            List<int[]> terminal = new ArrayList<>();      // Thứ hạng các mục có khoá kết thúc đúng tại node
+
+            // Hàng đợi BFS: {rangeStart, rangeEnd, depth, nodeIndex}
+            Deque<int[]> queue = new ArrayDeque<>();
+            addNode(edgeStarts, edgeLengths, firstChildren, childCounts, terminal, 0, 0);
+            queue.add(new int[]{0, n, 0, 0});
+
+            while (!queue.isEmpty()) {
+                int[] item = queue.poll();
+                int start = item[0], end = item[1], depth = item[2], node = item[3];
+
+                // Khoá kết thúc tại node này đứng đầu dải (sắp xếp theo chuỗi)
+                int i = start;
+                while (i < end && sortedKeys[i].length() == depth) i++;
+                int[] ending = new int[i - start];
+                for (int k = start; k < i; k++) ending[k - start] = rankOf[sortedEntries[k]];
+                terminal.set(node, ending);
+
+                firstChildren.set(node, edgeStarts.size());
+                int count = 0;
+                while (i < end) {
+                    String firstKey = sortedKeys[i];
+                    int j = groupEnd(sortedKeys, i, end, depth, firstKey.charAt(depth));
+
+                    // Nén: cạnh kéo dài tới hết tiền tố chung của cả nhóm (dải đã sắp xếp -> so đầu và cuối)
+                    int childDepth = depth + commonPrefix(firstKey, sortedKeys[j - 1], depth);
+                    int childIndex = edgeStarts.size();
+                    addNode(edgeStarts, edgeLengths, firstChildren, childCounts, terminal,
+                            edgeChars.length(), childDepth - depth);
+                    edgeChars.append(firstKey, depth, childDepth);
+                    queue.add(new int[]{i, j, childDepth, childIndex});
+                    count++;
+                    i = j;
+                }
+                childCounts.set(node, count);
+            }
+
+            int size = edgeStarts.size();
+            int[] firstChild = firstChildren.toArray();
+            int[] childCount = childCounts.toArray();
+            char[] edges = new char[edgeChars.length()];
+            edgeChars.getChars(0, edges.length, edges, 0);
+
+            // Con luôn có chỉ số lớn hơn cha (BFS) -> duyệt ngược để gộp top-N từ dưới lên
+            int[][] top = new int[size][];
+            for (int node = size - 1; node >= 0; node--) {
+                int[] ending = terminal.get(node);
+                int total = ending.length;
+                for (int c = firstChild[node]; c < firstChild[node] + childCount[node]; c++) {
+                    total += top[c].length;
+                }
+                int[] candidates = Arrays.copyOf(ending, total);
+                int n2 = ending.length;
+                for (int c = firstChild[node]; c < firstChild[node] + childCount[node]; c++) {
+                    System.arraycopy(top[c], 0, candidates, n2, top[c].length);
+                    n2 += top[c].length;
+                }
+                top[node] = bestRanks(candidates, topN);
+            }
+            // Đổi thứ hạng về chỉ số mục
+            for (int[] ranks : top) {
+                for (int k = 0; k < ranks.length; k++) ranks[k] = byRank[ranks[k]];
+            }
+            return new PrefixTrie(texts.toArray(new String[0]), edges, edgeStarts.toArray(), edgeLengths.toArray(),
+                    firstChild, childCount, top);
+        }
+
+        private record KeyRef(String key, int entry) implements Comparable<KeyRef> {
+            @Override
+            public int compareTo(KeyRef other) {
+                return key.compareTo(other.key);
+            }
+        }
+
+        private static void addNode(IntList edgeStarts, IntList edgeLengths, IntList firstChildren,
+                                    IntList childCounts, List<int[]> terminal, int edgeStart, int edgeLength) {
+            edgeStarts.add(edgeStart);
+            edgeLengths.add(edgeLength);
+            firstChildren.add(0);
+            childCounts.add(0);
+            terminal.add(null);
+        }
+
+        // Trong dải đã sắp xếp có chung tiền tố độ dài depth, ký tự tại depth không giảm
+        // -> tìm nhị phân vị trí đầu tiên có ký tự khác c
+        private static int groupEnd(String[] sortedKeys, int from, int end, int depth, char c) {
+            int lo = from + 1, hi = end;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sortedKeys[mid].charAt(depth) == c) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        private static int commonPrefix(String a, String b, int from) {
+            int max = Math.min(a.length(), b.length());
+            int i = from;
+            while (i < max && a.charAt(i) == b.charAt(i)) i++;
+            return i - from;
+        }
+
+        // topN thứ hạng nhỏ nhất, không trùng (một mục có thể đến từ nhiều khoá / nhiều nhánh)
+        private static int[] bestRanks(int[] candidates, int topN) {
+            Arrays.sort(candidates);
+            int[] best = new int[Math.min(topN, candidates.length)];
+            int count = 0;
+            for (int i = 0; i < candidates.length && count < best.length; i++) {
+                if (count > 0 && best[count - 1] == candidates[i]) continue;
+                best[count++] = candidates[i];
+            }
+            return count == best.length ? best : Arrays.copyOf(best, count);
+        }
+    }
+
+    // Mảng int tự giãn, tránh boxing khi dựng trie lớn
+    private static final class IntList {
+        private int[] values = new int[64];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
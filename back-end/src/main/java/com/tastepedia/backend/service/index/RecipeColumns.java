@@ -0,0 +1,138 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Bản chụp dạng cột các trường số của công thức, căn theo ordinal.
+ * Lọc khoảng (calories <= x, totalCost trong [a, b]...) là một vòng lặp tuần tự trên
+ * mảng int[] / double[] ghi thẳng ra các word của bitset, không đụng tới đối tượng Recipe.
+ * Không thread-safe, RecipeIndexService chịu trách nhiệm khoá.
+ */
+public class RecipeColumns {
+
+    public enum IntColumn { CALORIES, CARB, FAT, PROTEIN, COOK_TIME }
+
+    private int[][] ints = new int[IntColumn.values().length][16];
+    private double[] totalCost = new double[16];   // NaN = không có giá
+    private long[] createdAt = new long[16];        // epoch millis, 0 = không có
+    private final BitSet hasNutrition = new BitSet();
+    private int size = 0;                           // = ordinal lớn nhất + 1
+
+    public RecipeColumns() {
+        Arrays.fill(totalCost, Double.NaN);
+    }
+
+    public void put(int ordinal, int calories, int carb, int fat, int protein, boolean nutritionPresent,
+                    int cookTime, Double cost, long createdAtMillis) {
+        ensureCapacity(ordinal + 1);
+        ints[IntColumn.CALORIES.ordinal()][ordinal] = calories;
+        ints[IntColumn.CARB.ordinal()][ordinal] = carb;
+        ints[IntColumn.FAT.ordinal()][ordinal] = fat;
+        ints[IntColumn.PROTEIN.ordinal()][ordinal] = protein;
+        ints[IntColumn.COOK_TIME.ordinal()][ordinal] = cookTime;
+        hasNutrition.set(ordinal, nutritionPresent);
+        totalCost[ordinal] = cost != null ? cost : Double.NaN;
+        createdAt[ordinal] = createdAtMillis;
+        size = Math.max(size, ordinal + 1);
+    }
+
+    public void clear() {
+        for (int[] column : ints) Arrays.fill(column, 0);
+        Arrays.fill(totalCost, Double.NaN);
+        Arrays.fill(createdAt, 0L);
+        hasNutrition.clear();
+        size = 0;
+    }
+
+    public int get(IntColumn column, int ordinal) {
+        return ints[column.ordinal()][ordinal];
+    }
+
+    public double totalCost(int ordinal) {
+        return totalCost[ordinal];
+    }
+
+    public long createdAt(int ordinal) {
+        return createdAt[ordinal];
+    }
+
+    public boolean hasNutrition(int ordinal) {
+        return hasNutrition.get(ordinal);
+    }
+
+    /**
+     * Các ordinal có giá trị cột <= max.
+     * Với cột dinh dưỡng, công thức không có nutrition bị loại (giống Mongo: trường thiếu không khớp $lte).
+     */
+    public BitSet atMost(IntColumn column, int max) {
+        int[] values = ints[column.ordinal()];
+        long[] words = new long[(size + 63) >>> 6];
+        for (int i = 0; i < size; i++) {
+            words[i >>> 6] |= (values[i] <= max ? 1L : 0L) << i;
+        }
+        BitSet result = BitSet.valueOf(words);
+        if (column != IntColumn.COOK_TIME) result.and(hasNutrition);
+        return result;
+    }
+
+    /** Các ordinal có totalCost trong [min, max]; null = không giới hạn phía đó. Không có giá -> loại. */
+    public BitSet costBetween(Double min, Double max) {
+        double lo = min != null ? min : Double.NEGATIVE_INFINITY;
+        double hi = max != null ? max : Double.POSITIVE_INFINITY;
+        long[] words = new long[(size + 63) >>> 6];
+        for (int i = 0; i < size; i++) {
+            double v = totalCost[i];
+            // NaN so sánh luôn false -> tự động bị loại
+            words[i >>> 6] |= (v >= lo && v <= hi ? 1L : 0L) << i;
+        }
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Đếm số ordinal (trong within) rơi vào từng khoảng [b[i], b[i+1]); phần tử cuối = >= b[last].
+     * Giống $bucket của Mongo: công thức không có nutrition không được đếm.
+     */
+    public long[] histogram(IntColumn column, int[] boundaries, BitSet within) {
+        int[] values = ints[column.ordinal()];
+        long[] counts = new long[boundaries.length];
+        for (int ord = within.nextSetBit(0); ord >= 0 && ord < size; ord = within.nextSetBit(ord + 1)) {
+            if (column != IntColumn.COOK_TIME && !hasNutrition.get(ord)) continue;
+            int bucket = bucketOf(values[ord], boundaries);
+            if (bucket >= 0) counts[bucket]++;
+        }
+        return counts;
+    }
+
+    /** Như histogram() nhưng cho totalCost; công thức không có giá không được đếm. */
+    public long[] costHistogram(int[] boundaries, BitSet within) {
+        long[] counts = new long[boundaries.length];
+        for (int ord = within.nextSetBit(0); ord >= 0 && ord < size; ord = within.nextSetBit(ord + 1)) {
+            double v = totalCost[ord];
+            if (Double.isNaN(v)) continue;
+            int bucket = bucketOf(v, boundaries);
+            if (bucket >= 0) counts[bucket]++;
+        }
+        return counts;
+    }
+
+    private static int bucketOf(double value, int[] boundaries) {
+        if (value < boundaries[0]) return -1;
+        for (int i = boundaries.length - 1; i >= 0; i--) {
+            if (value >= boundaries[i]) return i;
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= totalCost.length) return;
+        int newLength = Math.max(capacity, totalCost.length * 2);
+        for (int c = 0; c < ints.length; c++) {
+            ints[c] = Arrays.copyOf(ints[c], newLength);
+        }
+        int oldLength = totalCost.length;
+        totalCost = Arrays.copyOf(totalCost, newLength);
+        Arrays.fill(totalCost, oldLength, newLength, Double.NaN);
+        createdAt = Arrays.copyOf(createdAt, newLength);
+    }
+}
@@ -0,0 +1,134 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Phát hiện công thức gần trùng bằng SimHash 64 bit (vân tay nội dung: tiêu đề, nguyên liệu, các bước).
+ * Sửa vài chữ chỉ lật vài bit, nên "gần trùng" = khoảng cách Hamming <= MAX_DISTANCE.
+ * Vân tay chia thành BLOCKS = MAX_DISTANCE + 2 khối (7-8 bit); hai vân tay cách nhau <= MAX_DISTANCE bit
+ * chắc chắn trùng nguyên ít nhất hai khối (nguyên lý chuồng bồ câu). Mỗi cặp khối là một bảng băm
+ * với khoá 14-16 bit, nên mỗi lần tra chỉ gặp vài ứng viên kể cả khi danh mục lớn.
+ * Không thread-safe, RecipeIndexService chịu trách nhiệm khoá.
+ */
+public class SimHashIndex {
+
+    // Công thức ngắn (vài chục đặc trưng) sửa tiêu đề + một nguyên liệu + một câu thường lệch 4-9 bit;
+    // hai công thức khác nhau thật sự thường lệch > 15 bit
+    public static final int MAX_DISTANCE = 7;
+
+    private static final int BLOCKS = MAX_DISTANCE + 2;
+    private static final int TABLES = BLOCKS * (BLOCKS - 1) / 2;
+
+    // Khối b gồm các bit [BLOCK_START[b], BLOCK_START[b + 1])
+    private static final int[] BLOCK_START = new int[BLOCKS + 1];
+    // Bảng t ghép khối TABLE_FIRST[t] với khối TABLE_SECOND[t]
+    private static final int[] TABLE_FIRST = new int[TABLES];
+    private static final int[] TABLE_SECOND = new int[TABLES];
+
+    static {
+        for (int b = 0; b <= BLOCKS; b++) {
+            BLOCK_START[b] = b * 64 / BLOCKS;
+        }
+        int t = 0;
+        for (int first = 0; first < BLOCKS; first++) {
+            for (int second = first + 1; second < BLOCKS; second++) {
+                TABLE_FIRST[t] = first;
+                TABLE_SECOND[t] = second;
+                t++;
+            }
+        }
+    }
+
+    private long[] fingerprints = new long[16];
+    private final BitSet present = new BitSet();
+
+    // Khoá = (bảng << 32) | giá trị hai khối ghép lại, giá trị = các ordinal có cặp khối đó
+    private final Map<Long, IntPostings> tables = new HashMap<>();
+
+    public void put(int ordinal, long fingerprint) {
+        remove(ordinal);
+        if (ordinal >= fingerprints.length) {
+            fingerprints = Arrays.copyOf(fingerprints, Math.max(ordinal + 1, fingerprints.length * 2));
+        }
+        fingerprints[ordinal] = fingerprint;
+        present.set(ordinal);
+        for (int table = 0; table < TABLES; table++) {
+            tables.computeIfAbsent(tableKey(fingerprint, table), k -> new IntPostings()).add(ordinal);
+        }
+    }
+
+    public void remove(int ordinal) {
+        if (!present.get(ordinal)) return;
+        long fingerprint = fingerprints[ordinal];
+        for (int table = 0; table < TABLES; table++) {
+            long key = tableKey(fingerprint, table);
+            IntPostings ordinals = tables.get(key);
+            if (ordinals == null) continue;
+            ordinals.remove(ordinal);
+            if (ordinals.isEmpty()) tables.remove(key);
+        }
+        present.clear(ordinal);
+    }
+
+    public void clear() {
+        tables.clear();
+        present.clear();
+    }
+
+    /** Ordinal có vân tay gần nhất trong phạm vi MAX_DISTANCE bit, -1 nếu không có. */
+    public int nearest(long fingerprint) {
+        return nearest(fingerprint, -1);
+    }
+
+    /** Như nearest(fingerprint) nhưng bỏ qua excludedOrdinal (vd. chính công thức đang sửa). */
+    public int nearest(long fingerprint, int excludedOrdinal) {
+        int best = -1;
+        int bestDistance = MAX_DISTANCE + 1;
+        for (int table = 0; table < TABLES; table++) {
+            IntPostings ordinals = tables.get(tableKey(fingerprint, table));
+            if (ordinals == null) continue;
+            for (int i = 0; i < ordinals.size(); i++) {
+                int ordinal = ordinals.get(i);
+                if (ordinal == excludedOrdinal) continue;
+                int distance = Long.bitCount(fingerprints[ordinal] ^ fingerprint);
+                if (distance < bestDistance || (distance == bestDistance && ordinal < best)) {
+                    best = ordinal;
+                    bestDistance = distance;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** SimHash của tập đặc trưng có trọng số: bit b = dấu của tổng (±trọng số) theo bit b của hash từng đặc trưng. */
+    public static long fingerprint(Map<String, Integer> weightedFeatures) {
+        int[] votes = new int[64];
+        for (Map.Entry<String, Integer> e : weightedFeatures.entrySet()) {
+            long hash = MinHashIndex.hash64(e.getKey());
+            int weight = e.getValue();
+            for (int b = 0; b < 64; b++) {
+                votes[b] += ((hash >>> b) & 1L) != 0 ? weight : -weight;
+            }
+        }
+        long fingerprint = 0;
+        for (int b = 0; b < 64; b++) {
+            if (votes[b] > 0) fingerprint |= 1L << b;
+        }
+        return fingerprint;
+    }
+
+    private static long tableKey(long fingerprint, int table) {
+        int second = TABLE_SECOND[table];
+        int secondBits = BLOCK_START[second + 1] - BLOCK_START[second];
+        long combined = (block(fingerprint, TABLE_FIRST[table]) << secondBits) | block(fingerprint, second);
+        return ((long) table << 32) | combined;
+    }
+
+    private static long block(long fingerprint, int block) {
+        int bits = BLOCK_START[block + 1] - BLOCK_START[block];
+        return (fingerprint >>> BLOCK_START[block]) & ((1L << bits) - 1);
+    }
+}
@@ -0,0 +1,93 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Đếm số công thức dùng mỗi cụm từ (tiêu đề, ẩm thực, nguyên liệu), theo dạng đã bỏ dấu.
+ * Số đếm là độ phổ biến để xếp hạng gợi ý; put / remove báo có thay đổi hay không để chỉ dựng lại PrefixTrie khi cần.
+ * Không thread-safe, RecipeIndexService chịu trách nhiệm khoá.
+ */
+public class TermCounts {
+
+    private static final String[] NO_TERMS = new String[0];
+
+    private static class Term {
+        final String display;   // Dạng có dấu của lần xuất hiện đầu tiên
+        int count;
+
+        Term(String display) {
+            this.display = display;
+        }
+    }
+
+    private final Map<String, Term> terms = new HashMap<>();
+    private final List<String[]> keysByOrdinal = new ArrayList<>();
+
+    /** Trả về true nếu số đếm thay đổi (công thức cập nhật mà giữ nguyên các cụm từ thì không). */
+    public boolean put(int ordinal, Collection<String> displays) {
+        Map<String, String> keys = new LinkedHashMap<>();
+        if (displays != null) {
+            for (String display : displays) {
+                if (display == null) continue;
+                String key = normalize(display);
+                if (!key.isEmpty()) keys.putIfAbsent(key, display.trim());
+            }
+        }
+        String[] newKeys = keys.keySet().toArray(NO_TERMS);
+        if (ordinal < keysByOrdinal.size() && Arrays.equals(keysByOrdinal.get(ordinal), newKeys)) return false;
+
+        remove(ordinal);
+        for (Map.Entry<String, String> e : keys.entrySet()) {
+            terms.computeIfAbsent(e.getKey(), k -> new Term(e.getValue())).count++;
+        }
+        while (keysByOrdinal.size() <= ordinal) keysByOrdinal.add(NO_TERMS);
+        keysByOrdinal.set(ordinal, newKeys);
+        return true;
+    }
+
+    /** Trả về true nếu công thức có cụm từ nào (số đếm thay đổi). */
+    public boolean remove(int ordinal) {
+        if (ordinal >= keysByOrdinal.size()) return false;
+        String[] keys = keysByOrdinal.get(ordinal);
+        for (String key : keys) {
+            Term term = terms.get(key);
+            if (term != null && --term.count <= 0) terms.remove(key);
+        }
+        keysByOrdinal.set(ordinal, NO_TERMS);
+        return keys.length > 0;
+    }
+
+    public void clear() {
+        terms.clear();
+        keysByOrdinal.clear();
+    }
+
+    /**
+     * Chụp các cụm từ hiện tại vào một PrefixTrie.Builder để dựng trie gợi ý: mỗi cụm từ có một khoá
+     * cho mỗi vị trí bắt đầu từ, để "bo" gợi ý được cả "Phở Bò" chứ không chỉ các cụm bắt đầu bằng "bo".
+     * Bước này chỉ sao chép (giữ khoá đọc); build() tốn kém chạy sau khi đã nhả khoá.
+     */
+    public PrefixTrie.Builder trieBuilder() {
+        PrefixTrie.Builder builder = new PrefixTrie.Builder();
+        for (Map.Entry<String, Term> e : terms.entrySet()) {
+            int entry = builder.addEntry(e.getValue().display, e.getValue().count);
+            String key = e.getKey();
+            builder.addKey(key, entry);
+            for (int i = key.indexOf(' '); i >= 0; i = key.indexOf(' ', i + 1)) {
+                builder.addKey(key.substring(i + 1), entry);
+            }
+        }
+        return builder;
+    }
+
+    /** Bỏ dấu, chữ thường, các từ cách nhau đúng một khoảng trắng. Dùng chung cho khoá và tiền tố tra cứu. */
+    public static String normalize(String text) {
+        return String.join(" ", TextTokenizer.tokenize(TextTokenizer.fold(text)));
+    }
+}
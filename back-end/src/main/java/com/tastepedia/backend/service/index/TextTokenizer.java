@@ -0,0 +1,36 @@
+package com.tastepedia.backend.service.index;
+
+import com.tastepedia.backend.utils.AccentFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chuẩn hoá và tách từ dùng chung cho việc index và truy vấn:
+ * bỏ dấu tiếng Việt, chuyển chữ thường, tách theo ký tự không phải chữ/số.
+ */
+public final class TextTokenizer {
+
+    private TextTokenizer() {}
+
+    public static String fold(String s) {
+        return AccentFolder.foldLowerCase(s);
+    }
+
+    /** Tách chuỗi ĐÃ fold thành các token (chỉ gồm chữ và số). */
+    public static List<String> tokenize(String folded) {
+        List<String> tokens = new ArrayList<>();
+        if (folded == null) return tokens;
+        int start = -1;
+        for (int i = 0; i < folded.length(); i++) {
+            if (Character.isLetterOrDigit(folded.charAt(i))) {
+                if (start < 0) start = i;
+            } else if (start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) tokens.add(folded.substring(start));
+        return tokens;
+    }
+}
@@ -0,0 +1,78 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Từ vựng token (đã bỏ dấu) của toàn bộ công thức: posting list theo từng token
+ * và một BK-tree để mở rộng token gõ sai thành các token gần đúng.
+ * Không thread-safe, RecipeIndexService chịu trách nhiệm khoá.
+ */
+public class TokenVocabulary {
+
+    private static final String[] NO_TOKENS = new String[0];
+
+    private final Map<String, IntPostings> postings = new HashMap<>();
+    private final BkTree tree = new BkTree();
+    private final List<String[]> tokensByOrdinal = new ArrayList<>();
+
+    public void put(int ordinal, Collection<String> tokens) {
+        remove(ordinal);
+        Set<String> distinct = new LinkedHashSet<>(tokens);
+        for (String token : distinct) {
+            IntPostings list = postings.get(token);
+            if (list == null) {
+                list = new IntPostings();
+                postings.put(token, list);
+                tree.add(token);
+            }
+            list.add(ordinal);
+        }
+        while (tokensByOrdinal.size() <= ordinal) tokensByOrdinal.add(NO_TOKENS);
+        tokensByOrdinal.set(ordinal, distinct.toArray(NO_TOKENS));
+    }
+
+    // Token hết công thức vẫn nằm trong BK-tree (không xoá được), chỉ posting list bị bỏ
+    public void remove(int ordinal) {
+        if (ordinal >= tokensByOrdinal.size()) return;
+        for (String token : tokensByOrdinal.get(ordinal)) {
+            IntPostings list = postings.get(token);
+            if (list != null) list.remove(ordinal);
+        }
+        tokensByOrdinal.set(ordinal, NO_TOKENS);
+    }
+
+    public void clear() {
+        postings.clear();
+        tree.clear();
+        tokensByOrdinal.clear();
+    }
+
+    /**
+     * Công thức chứa ít nhất một token cách token đã cho không quá maxEdits phép sửa
+     * (đảo hai ký tự kề nhau tính là 1). Một lần đảo = 2 phép sửa Levenshtein, nên tìm trên cây
+     * với bán kính maxEdits + 1 rồi lọc lại bằng osaDistance.
+     */
+    public BitSet fuzzyMatch(String token, int maxEdits) {
+        BitSet result = new BitSet();
+        for (String candidate : tree.search(token, maxEdits + 1)) {
+            IntPostings list = postings.get(candidate);
+            if (list == null || list.isEmpty()) continue;
+            if (BkTree.osaDistance(token, candidate) <= maxEdits) list.addTo(result);
+        }
+        return result;
+    }
+
+    /** Số phép sửa cho phép theo độ dài token: từ rất ngắn mà sửa thì khớp gần như mọi thứ. */
+    public static int maxEdits(String token) {
+        if (token.length() <= 2) return 0;
+        if (token.length() <= 5) return 1;
+        return 2;
+    }
+}
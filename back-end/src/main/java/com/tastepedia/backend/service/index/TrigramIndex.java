@@ -0,0 +1,119 @@
+package com.tastepedia.backend.service.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index theo trigram trên văn bản đã bỏ dấu của từng công thức.
+ * Cho phép tìm chuỗi con (giống regex không neo cũ) mà không phải quét toàn bộ:
+ * giao các posting list của trigram trong từ khoá rồi kiểm tra lại bằng contains().
+ * Chuỗi con 1-2 ký tự cũng có posting list riêng (từ khoá ngắn như "bo", "ga", "ca" rất hay gặp),
+ * tra một lần là ra kết quả chính xác, không cần kiểm tra lại.
+ * Không thread-safe, RecipeIndexService chịu trách nhiệm khoá.
+ */
+public class TrigramIndex {
+
+    private final Map<String, IntPostings> postings = new HashMap<>();
+    private final List<String> docs = new ArrayList<>();
+
+    public void put(int ordinal, String foldedText) {
+        remove(ordinal);
+        while (docs.size() <= ordinal) docs.add(null);
+        docs.set(ordinal, foldedText);
+        for (String gram : grams(foldedText)) {
+            postings.computeIfAbsent(gram, g -> new IntPostings()).add(ordinal);
+        }
+    }
+
+    public void remove(int ordinal) {
+        if (ordinal >= docs.size()) return;
+        String old = docs.get(ordinal);
+        if (old == null) return;
+        for (String gram : grams(old)) {
+            IntPostings list = postings.get(gram);
+            if (list != null) {
+                list.remove(ordinal);
+                if (list.isEmpty()) postings.remove(gram);
+            }
+        }
+        docs.set(ordinal, null);
+    }
+
+    public String text(int ordinal) {
+        return ordinal < docs.size() ? docs.get(ordinal) : null;
+    }
+
+    public void clear() {
+        postings.clear();
+        docs.clear();
+    }
+
+    /** Trả về các ordinal mà văn bản chứa TẤT CẢ token (dạng chuỗi con). */
+    public BitSet search(List<String> tokens) {
+        // Token dài chọn lọc hơn: giao trước để sớm rỗng và dừng
+        List<String> ordered = new ArrayList<>(tokens);
+        ordered.sort((a, b) -> Integer.compare(b.length(), a.length()));
+        BitSet result = null;
+        for (String token : ordered) {
+            BitSet matches = searchToken(token);
+            if (result == null) result = matches;
+            else result.and(matches);
+            if (result.isEmpty()) break;
+        }
+        return result != null ? result : new BitSet();
+    }
+
+    private BitSet searchToken(String token) {
+        BitSet matches = new BitSet(docs.size());
+        if (token.length() < 3) {
+            // Posting list của chính chuỗi con ngắn đã là đáp án chính xác
+            IntPostings list = postings.get(token);
+            if (list != null) list.addTo(matches);
+            return matches;
+        }
+
+        // Bắt đầu từ posting list ngắn nhất để giao nhanh nhất
+        List<IntPostings> lists = new ArrayList<>();
+        for (String gram : trigrams(token)) {
+            IntPostings list = postings.get(gram);
+            if (list == null) return matches;
+            lists.add(list);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        lists.get(0).addTo(matches);
+        for (int i = 1; i < lists.size() && !matches.isEmpty(); i++) {
+            lists.get(i).retainIn(matches);
+        }
+
+        // Trigram chỉ là điều kiện cần -> xác nhận lại chuỗi con
+        for (int ord = matches.nextSetBit(0); ord >= 0; ord = matches.nextSetBit(ord + 1)) {
+            if (!docs.get(ord).contains(token)) matches.clear(ord);
+        }
+        return matches;
+    }
+
+    // Mọi chuỗi con dài 1, 2 và 3 ký tự: khoá khác độ dài nên dùng chung một map
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int n = 1; n <= 3; n++) {
+            for (int i = 0; i + n <= text.length(); i++) {
+                grams.add(text.substring(i, i + n));
+            }
+        }
+        return grams;
+    }
+
+    private static Set<String> trigrams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            grams.add(text.substring(i, i + 3));
+        }
+        return grams;
+    }
+}
@@ -0,0 +1,103 @@
+package com.tastepedia.backend.utils;
+
+import java.text.Normalizer;
+
+/**
+ * Bỏ dấu tiếng Việt / Latin bằng bảng tra ký tự -> ký tự.
+ * Bảng được dựng một lần khi nạp class (NFD từng ký tự, bỏ dấu kết hợp, thêm đ/Đ),
+ * sau đó mỗi lần gọi chỉ là một vòng lặp tra mảng: không Normalizer, không regex,
+ * không chuỗi trung gian. Chuỗi không có dấu được trả lại nguyên vẹn (không cấp phát).
+ */
+public final class AccentFolder {
+
+    // Bao phủ Latin-1, Latin Extended A/B, IPA, dấu kết hợp, Hy Lạp, Cyrillic,
+    // Latin Extended Additional (toàn bộ chữ tiếng Việt có dấu nằm ở U+1EA0..U+1EF9)
+    private static final int TABLE_SIZE = 0x2000;
+
+    // 0 = bỏ ký tự (dấu kết hợp U+0300..U+036F)
+    private static final char[] FOLD = new char[TABLE_SIZE];
+    private static final char[] FOLD_LOWER = new char[TABLE_SIZE];
+
+    static {
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            char folded = foldSlow((char) c);
+            FOLD[c] = folded;
+            FOLD_LOWER[c] = folded == 0 ? 0 : Character.toLowerCase(folded);
+        }
+    }
+
+    private AccentFolder() {}
+
+    /** Bỏ dấu, giữ nguyên hoa/thường. "Phở Bò Đặc Biệt" -> "Pho Bo Dac Biet". */
+    public static String fold(String s) {
+        return fold(s, FOLD, false);
+    }
+
+    /** Bỏ dấu và chuyển chữ thường trong cùng một lượt. "Phở Bò" -> "pho bo". */
+    public static String foldLowerCase(String s) {
+        return fold(s, FOLD_LOWER, true);
+    }
+
+    /** Như foldLowerCase() nhưng ghi vào buffer do người gọi quản lý (dùng lại được giữa các lần gọi). */
+    public static StringBuilder foldLowerCase(CharSequence s, StringBuilder out) {
+        for (int i = 0; i < s.length(); i++) {
+            char mapped = mapLower(s.charAt(i));
+            if (mapped != 0) out.append(mapped);
+        }
+        return out;
+    }
+
+    /** Bỏ dấu + chữ thường một ký tự; trả về 0 nếu ký tự bị bỏ (dấu kết hợp). Dùng cho các vòng quét không cấp phát. */
+    public static char foldLowerCase(char c) {
+        return mapLower(c);
+    }
+
+    private static String fold(String s, char[] table, boolean lower) {
+        if (s == null) return "";
+        int length = s.length();
+
+        // Tìm ký tự đầu tiên cần đổi; không có -> trả lại chính chuỗi đầu vào
+        int first = 0;
+        while (first < length) {
+            char c = s.charAt(first);
+            if (map(c, table, lower) != c) break;
+            first++;
+        }
+        if (first == length) return s;
+
+        char[] buffer = new char[length];
+        s.getChars(0, first, buffer, 0);
+        int n = first;
+        for (int i = first; i < length; i++) {
+            char mapped = map(s.charAt(i), table, lower);
+            if (mapped != 0) buffer[n++] = mapped;
+        }
+        return new String(buffer, 0, n);
+    }
+
+    private static char map(char c, char[] table, boolean lower) {
+        if (c < TABLE_SIZE) return table[c];
+        return lower ? Character.toLowerCase(c) : c;
+    }
+
+    private static char mapLower(char c) {
+        return c < TABLE_SIZE ? FOLD_LOWER[c] : Character.toLowerCase(c);
+    }
+
+    // Chỉ dùng khi dựng bảng
+    private static char foldSlow(char c) {
+        if (c >= 0x0300 && c <= 0x036F) return 0;
+        if (c == 'đ') return 'd';
+        if (c == 'Đ') return 'D';
+        if (Character.isSurrogate(c)) return c;
+
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        StringBuilder base = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char d = decomposed.charAt(i);
+            if (d < 0x0300 || d > 0x036F) base.append(d);
+        }
+        // Ký tự tách ra nhiều hơn một chữ cơ sở -> giữ nguyên
+        return base.length() == 1 ? base.charAt(0) : c;
+    }
+}
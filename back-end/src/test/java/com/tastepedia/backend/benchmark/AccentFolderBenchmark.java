@@ -0,0 +1,105 @@
+package com.tastepedia.backend.benchmark;
+
+import com.tastepedia.backend.utils.AccentFolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.text.Normalizer;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * So sánh cách bỏ dấu cũ (NFD + regex) với AccentFolder trên tiêu đề công thức thật.
+ * Không chạy cùng mvn test. Chạy bằng main() từ IDE, hoặc:
+ *   mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat cp.txt) com.tastepedia.backend.benchmark.AccentFolderBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccentFolderBenchmark {
+
+    private static final String[] TITLES = {
+            "Phở Bò Tái Nạm Hà Nội",
+            "Bún Chả Hà Nội Truyền Thống",
+            "Cơm Tấm Sườn Bì Chả Sài Gòn",
+            "Bánh Xèo Miền Tây Giòn Rụm",
+            "Gỏi Cuốn Tôm Thịt Chấm Nước Mắm Chua Ngọt",
+            "Canh Chua Cá Lóc Nấu Me",
+            "Thịt Kho Trứng Nước Dừa",
+            "Chè Đậu Đỏ Nước Cốt Dừa",
+            "Đậu Hũ Sốt Cà Chua",
+            "Mì Quảng Gà Đà Nẵng",
+            "Spaghetti Carbonara",
+            "Chicken Tikka Masala",
+            "Crème Brûlée à la Vanille",
+            "Bibimbap Hàn Quốc",
+    };
+
+    // Cài đặt cũ của StringUtils.removeAccent, giữ lại làm mốc so sánh
+    private static String legacyRemoveAccent(String s) {
+        if (s == null) return "";
+        String temp = Normalizer.normalize(s, Normalizer.Form.NFD);
+        Pattern pattern = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+        return pattern.matcher(temp).replaceAll("").replace('đ', 'd').replace('Đ', 'D');
+    }
+
+    private final StringBuilder buffer = new StringBuilder(128);
+
+    @Benchmark
+    public void legacyFoldLowerCase(Blackhole bh) {
+        for (String title : TITLES) {
+            bh.consume(legacyRemoveAccent(title).toLowerCase());
+        }
+    }
+
+    @Benchmark
+    public void tableFoldLowerCase(Blackhole bh) {
+        for (String title : TITLES) {
+            bh.consume(AccentFolder.foldLowerCase(title));
+        }
+    }
+
+    @Benchmark
+    public void tableFoldLowerCaseIntoBuffer(Blackhole bh) {
+        for (String title : TITLES) {
+            buffer.setLength(0);
+            bh.consume(AccentFolder.foldLowerCase(title, buffer).length());
+        }
+    }
+
+    @Benchmark
+    public void legacyFold(Blackhole bh) {
+        for (String title : TITLES) {
+            bh.consume(legacyRemoveAccent(title));
+        }
+    }
+
+    @Benchmark
+    public void tableFold(Blackhole bh) {
+        for (String title : TITLES) {
+            bh.consume(AccentFolder.fold(title));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AccentFolderBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,255 @@
+package com.tastepedia.backend.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmGatewayTest {
+
+	private final AtomicLong now = new AtomicLong(1_000_000);
+	private final LlmGateway gateway = new LlmGateway(now::get);
+
+	// /ok trả 200, /fail trả 500, /block giữ kết nối tới khi unblock được mở
+	private final CountDownLatch unblock = new CountDownLatch(1);
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger blocked = new AtomicInteger();
+	private final ExecutorService serverThreads = Executors.newCachedThreadPool();
+	private HttpServer server;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/ok", exchange -> respond(exchange, 200));
+		server.createContext("/fail", exchange -> respond(exchange, 500));
+		server.createContext("/block", exchange -> {
+			blocked.incrementAndGet();
+			try {
+				unblock.await(30, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			respond(exchange, 200);
+		});
+		server.setExecutor(serverThreads);
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		unblock.countDown();
+		server.stop(0);
+		serverThreads.shutdownNow();
+	}
+
+	@Test
+	void opensAfterThresholdConsecutiveFailures() {
+		for (int i = 0; i < LlmGateway.FAILURE_THRESHOLD - 1; i++) {
+			assertThrows(HttpServerErrorException.class, () -> post("/fail"));
+		}
+		assertEquals("CLOSED", stat("circuit"));
+
+		assertThrows(HttpServerErrorException.class, () -> post("/fail"));
+		assertEquals("OPEN", stat("circuit"));
+		assertFalse(gateway.isAvailable(LlmGateway.GEMINI));
+
+		// Mạch mở: không gọi tới provider nữa
+		IllegalStateException rejected = assertThrows(IllegalStateException.class, () -> post("/ok"));
+		assertTrue(rejected.getMessage().contains("circuit open"), rejected.getMessage());
+		assertEquals(LlmGateway.FAILURE_THRESHOLD, hits.get());
+		assertEquals(1L, stat("rejectedByBreaker"));
+
+		now.addAndGet(LlmGateway.OPEN_MILLIS);
+		assertTrue(gateway.isAvailable(LlmGateway.GEMINI));
+		assertEquals("ok", post("/ok"));
+		assertEquals("CLOSED", stat("circuit"));
+	}
+
+	@Test
+	void allowsASingleHalfOpenTrial() throws Exception {
+		trip();
+		now.addAndGet(LlmGateway.OPEN_MILLIS);
+
+		AtomicReference<RuntimeException> trialError = new AtomicReference<>();
+		Thread trial = startCall("/block", trialError);
+		awaitInFlight(1);
+		assertEquals("HALF_OPEN", stat("circuit"));
+
+		IllegalStateException rejected = assertThrows(IllegalStateException.class, () -> post("/ok"));
+		assertTrue(rejected.getMessage().contains("circuit open"), rejected.getMessage());
+
+		unblock.countDown();
+		trial.join(5_000);
+		assertNull(trialError.get());
+		assertEquals("CLOSED", stat("circuit"));
+		assertEquals("ok", post("/ok"));
+	}
+
+	@Test
+	void cancelledCallLeavesBreakerUntouched() throws Exception {
+		for (int i = 0; i < LlmGateway.FAILURE_THRESHOLD - 1; i++) {
+			assertThrows(HttpServerErrorException.class, () -> post("/fail"));
+		}
+
+		AtomicReference<RuntimeException> error = new AtomicReference<>();
+		Thread call = startCall("/block", error);
+		awaitInFlight(1);
+		call.interrupt();
+		call.join(5_000);
+
+		assertNotNull(error.get(), "lời gọi bị huỷ phải ném lỗi");
+		assertEquals(1L, stat("cancelled"));
+		assertEquals((long) LlmGateway.FAILURE_THRESHOLD - 1, stat("failures"));
+		assertEquals("CLOSED", stat("circuit"));
+
+		// Lời gọi huỷ không xoá chuỗi lỗi liên tiếp cũng không cộng thêm vào đó
+		assertThrows(HttpServerErrorException.class, () -> post("/fail"));
+		assertEquals("OPEN", stat("circuit"));
+	}
+
+	@Test
+	void cancelledHalfOpenTrialReturnsTheTrial() throws Exception {
+		trip();
+		now.addAndGet(LlmGateway.OPEN_MILLIS);
+
+		AtomicReference<RuntimeException> error = new AtomicReference<>();
+		Thread trial = startCall("/block", error);
+		awaitInFlight(1);
+		trial.interrupt();
+		trial.join(5_000);
+
+		assertNotNull(error.get(), "lời gọi bị huỷ phải ném lỗi");
+		assertEquals("HALF_OPEN", stat("circuit"));
+		assertEquals("ok", post("/ok"));
+		assertEquals("CLOSED", stat("circuit"));
+	}
+
+	@Test
+	void fullBulkheadRejectsWithoutCountingAFailure() throws Exception {
+		int max = gateway.maxConcurrent(LlmGateway.GROK);
+		List<Thread> calls = new ArrayList<>();
+		for (int i = 0; i < max; i++) calls.add(startCall(LlmGateway.GROK, "/block", new AtomicReference<>()));
+		awaitInFlight(LlmGateway.GROK, max);
+
+		IllegalStateException rejected = assertThrows(IllegalStateException.class,
+				() -> gateway.post(LlmGateway.GROK, url("/ok"), new HttpHeaders(), "{}"));
+		assertTrue(rejected.getMessage().contains("bulkhead full"), rejected.getMessage());
+
+		unblock.countDown();
+		for (Thread call : calls) call.join(5_000);
+		Map<String, Object> grok = stats(LlmGateway.GROK);
+		assertEquals(1L, grok.get("rejectedByBulkhead"));
+		assertEquals(0L, grok.get("failures"));
+		assertEquals("CLOSED", grok.get("circuit"));
+	}
+
+	@Test
+	void bulkheadRejectionReleasesTheHalfOpenTrial() {
+		trip();
+		now.addAndGet(LlmGateway.OPEN_MILLIS);
+
+		// Half-open chỉ cho một lời gọi qua mạch nên không lấp đầy bulkhead bằng lời gọi thật được;
+		// bị ngắt khi chờ permit đi đúng nhánh từ chối của bulkhead sau khi đã giữ lượt thử
+		Thread.currentThread().interrupt();
+		IllegalStateException rejected;
+		try {
+			rejected = assertThrows(IllegalStateException.class, () -> post("/ok"));
+		} finally {
+			assertTrue(Thread.interrupted());
+		}
+		assertTrue(rejected.getMessage().contains("bulkhead full"), rejected.getMessage());
+		assertEquals(1L, stat("rejectedByBulkhead"));
+		assertEquals("HALF_OPEN", stat("circuit"));
+
+		assertEquals("ok", post("/ok"));
+		assertEquals("CLOSED", stat("circuit"));
+	}
+
+	private void trip() {
+		for (int i = 0; i < LlmGateway.FAILURE_THRESHOLD; i++) {
+			assertThrows(HttpServerErrorException.class, () -> post("/fail"));
+		}
+		assertEquals("OPEN", stat("circuit"));
+	}
+
+	private String post(String path) {
+		return gateway.post(LlmGateway.GEMINI, url(path), new HttpHeaders(), "{}");
+	}
+
+	private Thread startCall(String path, AtomicReference<RuntimeException> error) {
+		return startCall(LlmGateway.GEMINI, path, error);
+	}
+
+	private Thread startCall(String provider, String path, AtomicReference<RuntimeException> error) {
+		Thread thread = new Thread(() -> {
+			try {
+				gateway.post(provider, url(path), new HttpHeaders(), "{}");
+			} catch (RuntimeException e) {
+				error.set(e);
+			}
+		});
+		thread.start();
+		return thread;
+	}
+
+	private void awaitInFlight(int expected) throws InterruptedException {
+		awaitInFlight(LlmGateway.GEMINI, expected);
+	}
+
+	private void awaitInFlight(String provider, int expected) throws InterruptedException {
+		// Chờ provider nhận đủ request để chắc lời gọi đã qua mạch và bulkhead
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (blocked.get() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(expected, gateway.inFlight(provider));
+	}
+
+	private Object stat(String key) {
+		return stats(LlmGateway.GEMINI).get(key);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> stats(String provider) {
+		return (Map<String, Object>) gateway.stats().get(provider);
+	}
+
+	private String url(String path) {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+	}
+
+	private void respond(HttpExchange exchange, int status) throws IOException {
+		hits.incrementAndGet();
+		byte[] body = (status == 200 ? "ok" : "error").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "text/plain");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.tastepedia.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.tastepedia.backend.model.Recipe;
+import com.tastepedia.backend.payload.MealPlanRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MealPlanSolverTest {
+
+	private static final double CHEAP = 20_000;
+	private static final double EXPENSIVE = 200_000;
+
+	private final MealPlanSolver solver = new MealPlanSolver();
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	void neverRepeatsARecipeInsideTheWindow() throws Exception {
+		List<Recipe> pool = new ArrayList<>();
+		for (int i = 0; i < 4; i++) pool.add(recipe("breakfast-" + i, "Breakfast", 550, CHEAP));
+		for (int i = 0; i < 7; i++) pool.add(recipe("main-" + i, "Lunch", 700, CHEAP));
+
+		List<List<String>> days = plannedIds(solver.solve(request("Healthy Living", "Standard"), pool));
+
+		assertNoRepeatInWindow(days);
+	}
+
+	@Test
+	void keepsFixedDaysAndAvoidsRepeatingThemAtTheSeam() throws Exception {
+		List<Recipe> pool = new ArrayList<>();
+		for (int i = 0; i < 4; i++) pool.add(recipe("breakfast-" + i, "Breakfast", 550, CHEAP));
+		for (int i = 0; i < 7; i++) pool.add(recipe("main-" + i, "Lunch", 700, CHEAP));
+		// Hai ngày đã stream dùng những món solver lập cả tuần sẽ đặt vào ngày thứ ba: ghép thẳng sẽ lặp món ở chỗ nối
+		List<ObjectNode> fixed = List.of(
+				day("Thứ Hai", "breakfast-2", "main-4", "main-5"),
+				day("Thứ Ba", "breakfast-3", "main-6", "main-0"));
+
+		List<List<String>> days = plannedIds(solver.solve(request("Healthy Living", "Standard"), pool, fixed));
+
+		assertEquals(List.of("breakfast-2", "main-4", "main-5"), days.get(0));
+		assertEquals(List.of("breakfast-3", "main-6", "main-0"), days.get(1));
+		assertNoRepeatInWindow(days);
+	}
+
+	private static void assertNoRepeatInWindow(List<List<String>> days) {
+		assertEquals(MealPlanSolver.DAYS, days.size());
+		for (int d = 0; d < days.size(); d++) {
+			assertEquals(3, days.get(d).size());
+			List<String> window = new ArrayList<>();
+			for (int d2 = d; d2 < Math.min(days.size(), d + MealPlanSolver.REPEAT_WINDOW_DAYS); d2++) {
+				window.addAll(days.get(d2));
+			}
+			assertEquals(window.size(), window.stream().distinct().count(), "ngày " + d + ": " + window);
+		}
+	}
+
+	@Test
+	void economyBudgetPicksCheapRecipesWhenNutritionIsEqual() throws Exception {
+		// Món đắt có id xếp trước và dinh dưỡng y hệt: chỉ ràng buộc ngân sách mới loại được chúng
+		List<Recipe> pool = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			pool.add(recipe("a-breakfast-" + i, "Breakfast", 550, EXPENSIVE));
+			pool.add(recipe("b-breakfast-" + i, "Breakfast", 550, CHEAP));
+		}
+		for (int i = 0; i < 7; i++) {
+			pool.add(recipe("a-main-" + i, "Lunch", 700, EXPENSIVE));
+			pool.add(recipe("b-main-" + i, "Lunch", 700, CHEAP));
+		}
+
+		List<String> economy = plannedIds(solver.solve(request("Healthy Living", "Economy"), pool))
+				.stream().flatMap(List::stream).toList();
+		assertTrue(economy.stream().allMatch(id -> id.startsWith("b-")), economy.toString());
+
+		List<String> premium = plannedIds(solver.solve(request("Healthy Living", "Premium"), pool))
+				.stream().flatMap(List::stream).toList();
+		assertFalse(premium.stream().allMatch(id -> id.startsWith("b-")), premium.toString());
+	}
+
+	private List<List<String>> plannedIds(String json) throws Exception {
+		JsonNode root = mapper.readTree(json);
+		assertEquals(MealPlanSolver.SOURCE, root.path("source").asText());
+		List<List<String>> days = new ArrayList<>();
+		for (JsonNode day : root.path("days")) {
+			List<String> ids = new ArrayList<>();
+			for (JsonNode meal : day.path("meals")) ids.add(meal.path("recipeId").asText());
+			days.add(ids);
+		}
+		return days;
+	}
+
+	private ObjectNode day(String name, String breakfast, String lunch, String dinner) {
+		ObjectNode day = mapper.createObjectNode();
+		day.put("day", name);
+		ArrayNode meals = day.putArray("meals");
+		meals.addObject().put("type", "Bữa Sáng").put("recipeId", breakfast).put("calories", 550);
+		meals.addObject().put("type", "Bữa Trưa").put("recipeId", lunch).put("calories", 700);
+		meals.addObject().put("type", "Bữa Tối").put("recipeId", dinner).put("calories", 700);
+		return day;
+	}
+
+	private static MealPlanRequest request(String goal, String budget) {
+		MealPlanRequest request = new MealPlanRequest();
+		request.setGoal(goal);
+		request.setActivityLevel("Sedentary");
+		request.setBudget(budget);
+		request.setMealSchedule(List.of("Breakfast", "Lunch", "Dinner"));
+		return request;
+	}
+
+	private static Recipe recipe(String id, String course, int calories, double cost) {
+		Recipe recipe = new Recipe();
+		recipe.setId(id);
+		recipe.setTitle(id);
+		recipe.setMealCourse(List.of(course));
+		Recipe.Nutrition nutrition = new Recipe.Nutrition();
+		nutrition.setCalories(calories);
+		nutrition.setProtein(calories / 20);
+		nutrition.setCarb(calories / 8);
+		nutrition.setFat(calories / 30);
+		recipe.setNutrition(nutrition);
+		recipe.setTotalCost(cost);
+		return recipe;
+	}
+}
@@ -0,0 +1,59 @@
+package com.tastepedia.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MealPlanStreamParserTest {
+
+	private static final String DAY_1 = "{\"day\": \"Thứ Hai\", \"meals\": [{\"type\": \"Bữa Sáng\", \"recipeName\": \"Bánh mì {trứng}\"}]}";
+	private static final String DAY_2 = "{\"day\": \"Thứ Ba\", \"meals\": [{\"type\": \"Bữa Tối\", \"reason\": \"Có \\\"ngoặc\\\" ] và \\\\\"}]}";
+	private static final String ANALYSIS = "\"Nhận xét: {ít} [dầu], \\\"nhẹ\\\"\"";
+
+	private static final String PLAN = "```json\n{\"analysis\": " + ANALYSIS + ",\n \"days\": [" + DAY_1 + ", " + DAY_2 + "]}\n```";
+
+	@Test
+	void emitsEachDayAndAnalysisForEveryChunkSize() {
+		for (int chunkSize = 1; chunkSize <= PLAN.length(); chunkSize++) {
+			List<String> analysis = new ArrayList<>();
+			List<String> days = new ArrayList<>();
+			MealPlanStreamParser parser = new MealPlanStreamParser(analysis::add, days::add);
+
+			for (int start = 0; start < PLAN.length(); start += chunkSize) {
+				parser.feed(PLAN.substring(start, Math.min(PLAN.length(), start + chunkSize)));
+			}
+
+			assertEquals(List.of(ANALYSIS), analysis, "chunk " + chunkSize);
+			assertEquals(List.of(DAY_1, DAY_2), days, "chunk " + chunkSize);
+			assertTrue(parser.isFinished(), "chunk " + chunkSize);
+		}
+	}
+
+	@Test
+	void reportsDayBeforeTheRestOfTheResponseArrives() {
+		List<String> days = new ArrayList<>();
+		MealPlanStreamParser parser = new MealPlanStreamParser(a -> { }, days::add);
+
+		parser.feed("{\"analysis\": \"ok\", \"days\": [" + DAY_1.substring(0, 20));
+		assertTrue(days.isEmpty());
+		parser.feed(DAY_1.substring(20) + ", {\"day\": ");
+		assertEquals(List.of(DAY_1), days);
+		assertFalse(parser.isFinished());
+	}
+
+	@Test
+	void ignoresObjectsOutsideTheDaysArray() {
+		List<String> days = new ArrayList<>();
+		MealPlanStreamParser parser = new MealPlanStreamParser(a -> { }, days::add);
+
+		parser.feed("{\"targets\": {\"days\": [{\"x\": 1}]}, \"note\": \"days\", \"days\": [" + DAY_1 + "]}");
+
+		assertEquals(List.of(DAY_1), days);
+		assertTrue(parser.isFinished());
+	}
+}
@@ -0,0 +1,97 @@
+package com.tastepedia.backend.service.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimHashIndexTest {
+
+	private static final int CATALOG = 2000;
+
+	@Test
+	void findsEveryFingerprintWithinMaxDistance() {
+		Random random = new Random(42);
+		SimHashIndex index = new SimHashIndex();
+		long[] catalog = new long[CATALOG];
+		for (int i = 0; i < CATALOG; i++) {
+			catalog[i] = random.nextLong();
+			index.put(i, catalog[i]);
+		}
+
+		for (int trial = 0; trial < 5000; trial++) {
+			int ordinal = random.nextInt(CATALOG);
+			int flips = 1 + random.nextInt(SimHashIndex.MAX_DISTANCE);
+			long query = flipBits(catalog[ordinal], flips, random);
+			assertEquals(ordinal, index.nearest(query), "lệch " + flips + " bit");
+		}
+	}
+
+	@Test
+	void ignoresFingerprintsBeyondMaxDistance() {
+		Random random = new Random(7);
+		SimHashIndex index = new SimHashIndex();
+		long fingerprint = random.nextLong();
+		index.put(0, fingerprint);
+
+		assertEquals(0, index.nearest(fingerprint));
+		assertEquals(-1, index.nearest(flipBits(fingerprint, SimHashIndex.MAX_DISTANCE + 1, random)));
+		assertEquals(-1, index.nearest(~fingerprint));
+	}
+
+	@Test
+	void removeAndReplaceUpdateTheTables() {
+		SimHashIndex index = new SimHashIndex();
+		long fingerprint = 0x0123_4567_89AB_CDEFL;
+		index.put(3, fingerprint);
+		index.put(5, fingerprint ^ 0b11);
+
+		assertEquals(3, index.nearest(fingerprint));
+		// Sửa công thức 3: không được tự coi là bản trùng của chính nó
+		assertEquals(5, index.nearest(fingerprint, 3));
+		index.remove(3);
+		assertEquals(5, index.nearest(fingerprint));
+
+		// Sửa công thức: vân tay mới thay hẳn vân tay cũ
+		index.put(5, ~fingerprint);
+		assertEquals(-1, index.nearest(fingerprint));
+		assertEquals(5, index.nearest(~fingerprint));
+
+		index.clear();
+		assertEquals(-1, index.nearest(~fingerprint));
+	}
+
+	@Test
+	void smallEditsKeepFingerprintsClose() {
+		Map<String, Integer> original = new HashMap<>();
+		for (String word : "phở bò tái nạm gầu".split(" ")) original.put("t:" + word, 3);
+		for (String ingredient : new String[]{"bánh phở", "thịt bò", "hành tây", "gừng", "quế", "hoa hồi", "nước mắm", "rau thơm"}) {
+			original.put("i:" + ingredient, 2);
+		}
+		for (int i = 0; i < 30; i++) original.put("s:bước nấu số " + i, 1);
+
+		Map<String, Integer> edited = new HashMap<>(original);
+		edited.remove("s:bước nấu số 29");
+		edited.put("s:bước nấu cuối", 1);
+
+		Map<String, Integer> unrelated = new HashMap<>();
+		for (String word : "gà nướng mật ong".split(" ")) unrelated.put("t:" + word, 3);
+		for (int i = 0; i < 30; i++) unrelated.put("s:ướp gà bước " + i, 1);
+
+		long fingerprint = SimHashIndex.fingerprint(original);
+		long edit = Long.bitCount(fingerprint ^ SimHashIndex.fingerprint(edited));
+		long other = Long.bitCount(fingerprint ^ SimHashIndex.fingerprint(unrelated));
+		assertTrue(edit <= SimHashIndex.MAX_DISTANCE, "sửa một bước lệch " + edit + " bit");
+		assertTrue(other > SimHashIndex.MAX_DISTANCE, "công thức khác lệch " + other + " bit");
+	}
+
+	private static long flipBits(long fingerprint, int count, Random random) {
+		long mask = 0;
+		while (Long.bitCount(mask) < count) mask |= 1L << random.nextInt(64);
+		return fingerprint ^ mask;
+	}
+}
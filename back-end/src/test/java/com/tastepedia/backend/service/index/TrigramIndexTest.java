@@ -0,0 +1,49 @@
+package com.tastepedia.backend.service.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TrigramIndexTest {
+
+	private static final List<String> DOCS = List.of(
+			"pho bo tai nam", "com ga xoi mo", "ca kho to", "bun bo hue", "banh mi ga nuong", "goi cuon tom thit");
+
+	@Test
+	void matchesSubstringsOfEveryLength() {
+		TrigramIndex index = new TrigramIndex();
+		for (int i = 0; i < DOCS.size(); i++) index.put(i, DOCS.get(i));
+
+		for (String token : List.of("b", "o", "bo", "ga", "ca", "o t", "kho", "nuong", "xyz", "q")) {
+			assertEquals(bruteForce(List.of(token)), index.search(List.of(token)), token);
+		}
+		assertEquals(bruteForce(List.of("bo", "hue")), index.search(List.of("bo", "hue")));
+		assertEquals(bruteForce(List.of("ga", "com")), index.search(List.of("ga", "com")));
+	}
+
+	@Test
+	void removeAndReplaceDropOldShortGrams() {
+		TrigramIndex index = new TrigramIndex();
+		index.put(0, "com ga");
+		index.put(1, "ca kho");
+
+		assertEquals(BitSet.valueOf(new long[]{0b01}), index.search(List.of("ga")));
+		index.put(0, "pho bo");
+		assertEquals(new BitSet(), index.search(List.of("ga")));
+		assertEquals(BitSet.valueOf(new long[]{0b01}), index.search(List.of("bo")));
+		index.remove(1);
+		assertEquals(new BitSet(), index.search(List.of("ca")));
+	}
+
+	private static BitSet bruteForce(List<String> tokens) {
+		BitSet matches = new BitSet();
+		for (int i = 0; i < DOCS.size(); i++) {
+			String doc = DOCS.get(i);
+			if (tokens.stream().allMatch(doc::contains)) matches.set(i);
+		}
+		return matches;
+	}
+}
@@ -42,6 +42,8 @@ export function SearchPage({ onNavigate, initialQuery = '' }: SearchPageProps) {
     rating?: number; // Mock if not in DB
   }
   const [searchResults, setSearchResults] = useState<Recipe[]>([]);
+  // Keyword search returns only the top matches; totalMatches is set when the list was cut
+  const [totalMatches, setTotalMatches] = useState<number | null>(null);
   const [isLoading, setIsLoading] = useState(false);
   const [isFilterOpen, setIsFilterOpen] = useState(false);
 
@@ -114,6 +116,8 @@ export function SearchPage({ onNavigate, initialQuery = '' }: SearchPageProps) {
             rating: 4.5
           }));
           setSearchResults(mapped);
+          const total = Number(res.headers.get('X-Total-Count'));
+          setTotalMatches(res.headers.get('X-Results-Truncated') === 'true' && total > mapped.length ? total : null);
         }
       } catch (error) {
         console.error("Search error:", error);
@@ -411,8 +415,15 @@ export function SearchPage({ onNavigate, initialQuery = '' }: SearchPageProps) {
                 {searchQuery ? `Results for "${searchQuery}"` : "Explore Recipes"}
               </h1>
               <p className="text-gray-600">
-                {searchResults.length} result{searchResults.length !== 1 && 's'} found
+                {totalMatches !== null
+                  ? `Showing the ${searchResults.length} best matches of ${totalMatches} results`
+                  : `${searchResults.length} result${searchResults.length !== 1 ? 's' : ''} found`}
               </p>
+              {totalMatches !== null && (
+                <p className="text-sm text-gray-500 mt-1">
+                  Add more words or filters to narrow down the list.
+                </p>
+              )}
             </div>
 
             {/* Results Grid */}